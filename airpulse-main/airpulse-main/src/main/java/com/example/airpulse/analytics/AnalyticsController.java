@@ -1,12 +1,15 @@
 package com.example.airpulse.analytics;
 
 import com.example.airpulse.analytics.dto.AlertsCountResponseDto;
+import com.example.airpulse.analytics.dto.AverageMatrixResponseDto;
 import com.example.airpulse.analytics.dto.AverageValueResponseDto;
+import com.example.airpulse.analytics.dto.PercentilesResponseDto;
 import com.example.airpulse.analytics.dto.RegionAnalyticsDto;
 import com.example.airpulse.model.SensorType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -14,6 +17,8 @@ import java.util.Optional;
 @RequestMapping("/api")
 public class AnalyticsController {
 
+    private static final int MAX_MATRIX_CELLS = 10_000;
+
     private final AnalyticsService analyticsService;
 
     public AnalyticsController(AnalyticsService analyticsService) {
@@ -29,6 +34,33 @@ public class AnalyticsController {
         return averageDto.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    // e.g. /api/average/matrix?regions=North,South&types=PM25,O3&minutes=10,60,1440
+    @GetMapping("/average/matrix")
+    public ResponseEntity<AverageMatrixResponseDto> getAverageMatrix(
+            @RequestParam List<String> regions,
+            @RequestParam List<SensorType> types,
+            @RequestParam(defaultValue = "10") List<Long> minutes) {
+        if (regions.isEmpty() || types.isEmpty() || minutes.isEmpty()
+                || regions.size() * types.size() * minutes.size() > MAX_MATRIX_CELLS
+                || minutes.stream().anyMatch(window -> window <= 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.getAverageMatrix(regions, types, minutes));
+    }
+
+    @GetMapping("/percentiles")
+    public ResponseEntity<PercentilesResponseDto> getPercentiles(
+            @RequestParam SensorType type,
+            @RequestParam String region,
+            @RequestParam(defaultValue = "60") long minutes) {
+        if (minutes <= 0 || !analyticsService.percentilesWithinHorizon(minutes)) {
+            // Windows beyond the sketches' horizon (or with sketches disabled) are not answered
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<PercentilesResponseDto> percentilesDto = analyticsService.getPercentiles(type, region, minutes);
+        return percentilesDto.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/alerts/count")
     public ResponseEntity<AlertsCountResponseDto> getAlertsCount(
             @RequestParam String severity,
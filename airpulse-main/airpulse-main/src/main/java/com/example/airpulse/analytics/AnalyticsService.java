@@ -1,54 +1,122 @@
 package com.example.airpulse.analytics;
 
 import com.example.airpulse.analytics.dto.AlertsCountResponseDto;
+import com.example.airpulse.analytics.dto.AverageMatrixResponseDto;
 import com.example.airpulse.analytics.dto.AverageValueResponseDto;
+import com.example.airpulse.analytics.dto.PercentilesResponseDto;
 import com.example.airpulse.analytics.dto.RegionAnalyticsDto;
 import com.example.airpulse.analytics.dto.SensorReadingSnapshotDto;
 import com.example.airpulse.consumer.AqiEvaluator;
+import com.example.airpulse.consumer.RollingAqiWindows;
 import com.example.airpulse.model.*;
 import com.example.airpulse.repository.AlertRepository;
-import com.example.airpulse.repository.CityRepository;
-import com.example.airpulse.repository.RegionRepository;
 import com.example.airpulse.repository.SensorDataRepository;
+import com.example.airpulse.repository.WindowTotals;
+import com.example.airpulse.rollup.RollupService;
+import com.example.airpulse.service.LatestReadings;
+import com.example.airpulse.service.QuantileSketch;
+import com.example.airpulse.service.QuantileSketches;
+import com.example.airpulse.service.SensorDataTopologyBackfill;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import com.example.airpulse.service.SlidingWindowAggregates;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class AnalyticsService {
 
+    // Totals over [?, ?) of the given regions and types, grouped by region and type, for the average matrix
+    private static final String READING_TOTALS_SQL = "SELECT region_id, type, SUM(\"value\"), COUNT(*) FROM sensor_data "
+            + "WHERE region_id = ANY (?) AND type = ANY (?) AND \"timestamp\" >= ? AND \"timestamp\" < ? GROUP BY region_id, type";
+    private static final String MINUTE_ROLLUP_TOTALS_SQL = "SELECT region_id, type, SUM(value_sum), SUM(reading_count) "
+            + "FROM sensor_data_rollup_minute WHERE region_id = ANY (?) AND type = ANY (?) "
+            + "AND bucket_start >= ? AND bucket_start < ? GROUP BY region_id, type";
+    private static final String HOUR_ROLLUP_TOTALS_SQL = "SELECT region_id, type, SUM(value_sum), SUM(reading_count) "
+            + "FROM sensor_data_rollup_hour WHERE region_id = ANY (?) AND type = ANY (?) "
+            + "AND bucket_start >= ? AND bucket_start < ? GROUP BY region_id, type";
+
     private final SensorDataRepository sensorDataRepository;
+    private final JdbcTemplate jdbcTemplate;
     private final AlertRepository alertRepository;
-    private final CityRepository cityRepository;
-    private final RegionRepository regionRepository;
+    private final SensorTopologyCache topologyCache;
     private final AqiEvaluator aqiEvaluator;
+    private final RollingAqiWindows rollingWindows;
+    private final SlidingWindowAggregates windowAggregates;
+    private final RollupService rollupService;
+    private final LatestReadings latestReadings;
+    private final QuantileSketches quantileSketches;
+    private final SensorDataTopologyBackfill topologyBackfill;
 
     public AnalyticsService(SensorDataRepository sensorDataRepository,
+                            JdbcTemplate jdbcTemplate,
                             AlertRepository alertRepository,
-                            CityRepository cityRepository,
-                            RegionRepository regionRepository,
-                            AqiEvaluator aqiEvaluator) {
+                            SensorTopologyCache topologyCache,
+                            AqiEvaluator aqiEvaluator,
+                            RollingAqiWindows rollingWindows,
+                            SlidingWindowAggregates windowAggregates,
+                            RollupService rollupService,
+                            LatestReadings latestReadings,
+                            QuantileSketches quantileSketches,
+                            SensorDataTopologyBackfill topologyBackfill) {
         this.sensorDataRepository = sensorDataRepository;
+        this.jdbcTemplate = jdbcTemplate;
         this.alertRepository = alertRepository;
-        this.cityRepository = cityRepository;
-        this.regionRepository = regionRepository;
+        this.topologyCache = topologyCache;
         this.aqiEvaluator = aqiEvaluator;
+        this.rollingWindows = rollingWindows;
+        this.windowAggregates = windowAggregates;
+        this.rollupService = rollupService;
+        this.latestReadings = latestReadings;
+        this.quantileSketches = quantileSketches;
+        this.topologyBackfill = topologyBackfill;
     }
 
-    @Cacheable(value = "averageByTypeAndRegion", key = "{#type.name() + '-' + #region + '-' + #minutes}")
+    // Windows within the in-memory aggregates' horizon are answered from memory and not cached. Longer ones
+    // are keyed by time bucket, so repeated requests within a bucket share one entry, and by the series
+    // generation, so ingest for this region and type invalidates them. Synchronized, so concurrent misses
+    // share one query and an outdated entry is served while the new one is computed
+    @Cacheable(value = "averageByTypeAndRegion", sync = true,
+               key = "@cacheTimeBuckets.key(#type.name() + '-' + #region + '-' + #minutes,"
+                       + " @analyticsCacheInvalidation.seriesGeneration(#type, #region))",
+               condition = "!@slidingWindowAggregates.covers(#minutes)")
     public Optional<AverageValueResponseDto> getAverageReading(SensorType type, String region, long minutes) {
         LocalDateTime endTime = LocalDateTime.now();
         LocalDateTime startTime = endTime.minus(minutes, ChronoUnit.MINUTES);
 
-        Double average = sensorDataRepository.findAverageValueBySensorTypeAndRegionInTimeRange(
-                type, region, startTime, endTime);
+        Double average;
+        SensorTopology topology = topologyCache.current();
+        int regionOrdinal = topology.regionOrdinal(region);
+        if (regionOrdinal < 0) {
+            average = null;
+        } else if (windowAggregates.covers(minutes)) {
+            double windowed = windowAggregates.average(regionOrdinal, type, startTime, endTime);
+            average = Double.isNaN(windowed) ? null : windowed;
+        } else if (!topologyBackfill.covers(startTime)) {
+            // Older readings may not have their region yet
+            List<UUID> sensors = sensorsOf(topology, regionOrdinal, type);
+            average = sensors.isEmpty() ? null
+                    : sensorDataRepository.findAverageValueBySensorsInTimeRange(sensors, startTime, endTime);
+        } else if (rollupService.covers(startTime)) {
+            average = averageFromRollups(type, topology.regionId(regionOrdinal), startTime, endTime);
+        } else {
+            average = sensorDataRepository.findAverageValueBySensorTypeAndRegionInTimeRange(
+                    type, topology.regionId(regionOrdinal), startTime, endTime);
+        }
 
         if (average == null) {
             return Optional.empty();
@@ -58,10 +126,119 @@ public class AnalyticsService {
                 .sensorType(type.name())
                 .regionName(region)
                 .averageValue(average)
+                .averageAqi(aqiOf(null, type, average))
                 .build());
     }
 
-    @Cacheable(value = "alertCount", key = "{#severity + '-' + #minutes}")
+    /**
+     * Averages of every (region, type, window) combination, each window routed like
+     * {@link #getAverageReading}: windows covered by the in-memory aggregates are answered with one pass over
+     * each series' buckets; windows the rollups cover with a few queries over the rollups grouped by region
+     * and type; the remaining ones with a single scan of {@code sensor_data} grouped by region and type that
+     * totals every window at once. Windows reaching back before the region columns were backfilled total
+     * the regions' current sensors instead. Unknown regions and combinations without readings are null.
+     */
+    public AverageMatrixResponseDto getAverageMatrix(List<String> regions, List<SensorType> types, List<Long> minutes) {
+        LocalDateTime endTime = LocalDateTime.now();
+        SensorTopology topology = topologyCache.current();
+        int[] regionOrdinals = regions.stream().mapToInt(topology::regionOrdinal).toArray();
+        Double[][][] averages = new Double[regions.size()][types.size()][minutes.size()];
+
+        List<Integer> inMemory = new ArrayList<>();
+        List<Integer> bySensor = new ArrayList<>();
+        List<Integer> fromRollups = new ArrayList<>();
+        List<Integer> byRegion = new ArrayList<>();
+        for (int w = 0; w < minutes.size(); w++) {
+            LocalDateTime start = endTime.minusMinutes(minutes.get(w));
+            if (windowAggregates.covers(minutes.get(w))) {
+                inMemory.add(w);
+            } else if (!topologyBackfill.covers(start)) {
+                bySensor.add(w); // Older readings may not have their region yet
+            } else if (rollupService.covers(start)) {
+                fromRollups.add(w);
+            } else {
+                byRegion.add(w);
+            }
+        }
+
+        if (!inMemory.isEmpty()) {
+            LocalDateTime[] starts = inMemory.stream().map(w -> endTime.minusMinutes(minutes.get(w))).toArray(LocalDateTime[]::new);
+            double[] out = new double[starts.length];
+            for (int r = 0; r < regionOrdinals.length; r++) {
+                if (regionOrdinals[r] < 0) {
+                    continue;
+                }
+                for (int t = 0; t < types.size(); t++) {
+                    windowAggregates.averages(regionOrdinals[r], types.get(t), starts, endTime, out);
+                    for (int i = 0; i < starts.length; i++) {
+                        averages[r][t][inMemory.get(i)] = Double.isNaN(out[i]) ? null : out[i];
+                    }
+                }
+            }
+        }
+
+        MatrixTotals totals = new MatrixTotals(topology, regionOrdinals, types, minutes.size());
+        if (totals.hasRegions()) {
+            if (!bySensor.isEmpty()) {
+                totalsBySensor(topology, regionOrdinals, types, minutes, bySensor, endTime, totals);
+            }
+            for (int w : fromRollups) {
+                totalsFromRollups(endTime.minusMinutes(minutes.get(w)), endTime, w, totals);
+            }
+            if (!byRegion.isEmpty()) {
+                totalsByRegion(minutes, byRegion, endTime, totals);
+            }
+            totals.fill(averages);
+        }
+
+        return AverageMatrixResponseDto.builder()
+                .regions(regions)
+                .sensorTypes(types.stream().map(SensorType::name).toList())
+                .minutes(minutes)
+                .averages(averages)
+                .build();
+    }
+
+    /**
+     * Distribution of the region's readings of the type over the last {@code minutes}, merged from the
+     * in-memory quantile sketches, or binned in the database while the sketches do not cover the window yet.
+     * Empty for unknown regions and windows without readings.
+     */
+    public Optional<PercentilesResponseDto> getPercentiles(SensorType type, String region, long minutes) {
+        SensorTopology topology = topologyCache.current();
+        int regionOrdinal = topology.regionOrdinal(region);
+        if (regionOrdinal < 0) {
+            return Optional.empty();
+        }
+        LocalDateTime endTime = LocalDateTime.now();
+        LocalDateTime startTime = endTime.minusMinutes(minutes);
+        QuantileSketch sketch = quantileSketches.covers(minutes)
+                ? quantileSketches.sketch(regionOrdinal, type, startTime, endTime)
+                : quantileSketches.sketchFromDatabase(sensorsOf(topology, regionOrdinal, type), startTime, endTime);
+        if (sketch.count() == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(PercentilesResponseDto.builder()
+                .sensorType(type.name())
+                .regionName(region)
+                .minutes(minutes)
+                .readings(sketch.count())
+                .min(sketch.min())
+                .p50(sketch.quantile(0.50))
+                .p95(sketch.quantile(0.95))
+                .p99(sketch.quantile(0.99))
+                .max(sketch.max())
+                .build());
+    }
+
+    /** Whether percentiles are served for a window of the given length, i.e. it is within the sketches' horizon. */
+    public boolean percentilesWithinHorizon(long minutes) {
+        return quantileSketches.withinHorizon(minutes);
+    }
+
+    @Cacheable(value = "alertCount", sync = true,
+               key = "@cacheTimeBuckets.key(#severity + '-' + #minutes,"
+                       + " @analyticsCacheInvalidation.severityGeneration(#severity))")
     public AlertsCountResponseDto getAlertsCount(String severity, long minutes) {
         LocalDateTime endTime = LocalDateTime.now();
         LocalDateTime startTime = endTime.minus(minutes, ChronoUnit.MINUTES);
@@ -72,38 +249,43 @@ public class AnalyticsService {
                 .build();
     }
 
-    @Cacheable(value = "summaryByCity", key = "#city")
+    // Served from the live LatestReadings state, so it is neither cached nor read from the database
     public Optional<Map<String, RegionAnalyticsDto>> getCitySummary(String city) {
-        Optional<City> cityOptional = cityRepository.findByName(city);
-        if (cityOptional.isEmpty()) {
+        SensorTopology topology = topologyCache.current();
+        int cityOrdinal = topology.cityOrdinal(city);
+        if (cityOrdinal < 0) {
             return Optional.empty();
         }
 
-        List<Region> regions = regionRepository.findByCityId(cityOptional.get().getId());
         Map<String, RegionAnalyticsDto> summary = new HashMap<>();
 
-        for (Region region : regions) {
-            Optional<SensorData> latestReadingOpt = sensorDataRepository.findTopBySensorLocationRegionIdOrderByTimestampDesc(region.getId());
+        for (int region : topology.regionsOf(cityOrdinal)) {
+            String regionName = topology.regionName(region);
+            LatestReadings.Reading latestReading = latestReadings.latestOfRegion(region);
 
-            if (latestReadingOpt.isPresent()) {
-                SensorData latestReading = latestReadingOpt.get();
-                String aqiSeverity = aqiEvaluator.evaluateAqi(latestReading.getType(), latestReading.getValue()).name();
+            if (latestReading != null) {
+                int sensor = latestReading.sensor();
+                SensorType sensorType = topology.sensorType(sensor);
+                LocationType locationType = topology.locationType(topology.locationOf(sensor));
+                double aqiInput = aqiInput(sensor, sensorType, latestReading.value());
+                String aqiSeverity = aqiEvaluator.evaluateAqi(locationType, sensorType, aqiInput).name();
 
                 SensorReadingSnapshotDto snapshot = SensorReadingSnapshotDto.builder()
-                        .sensorId(latestReading.getSensorId())
-                        .sensorType(latestReading.getType())
-                        .value(latestReading.getValue())
-                        .timestamp(latestReading.getTimestamp())
+                        .sensorId(topology.sensorId(sensor))
+                        .sensorType(sensorType)
+                        .value(latestReading.value())
+                        .timestamp(latestReading.timestamp())
                         .build();
 
-                summary.put(region.getName(), RegionAnalyticsDto.builder()
-                        .regionName(region.getName())
+                summary.put(regionName, RegionAnalyticsDto.builder()
+                        .regionName(regionName)
                         .currentAqiSeverity(aqiSeverity)
+                        .currentAqi(aqiOf(locationType, sensorType, aqiInput))
                         .latestReading(snapshot)
                         .build());
             } else {
-                summary.put(region.getName(), RegionAnalyticsDto.builder()
-                        .regionName(region.getName())
+                summary.put(regionName, RegionAnalyticsDto.builder()
+                        .regionName(regionName)
                         .currentAqiSeverity("NO_DATA")
                         .latestReading(null)
                         .build());
@@ -112,13 +294,274 @@ public class AnalyticsService {
         return Optional.of(summary);
     }
 
+    // One scan: per sensor in scope, COUNT and SUM filtered to each window, from the oldest window start
+    private void totalsBySensor(SensorTopology topology, int[] regionOrdinals, List<SensorType> types,
+                                List<Long> minutes, List<Integer> windows, LocalDateTime endTime, MatrixTotals totals) {
+        // Cells of each sensor in the matrix, as region and type index; a sensor has several when the
+        // request names its region or type more than once
+        Map<UUID, List<int[]>> cells = new HashMap<>();
+        for (int sensor = 0; sensor < topology.sensorCount(); sensor++) {
+            for (int r = 0; r < regionOrdinals.length; r++) {
+                if (regionOrdinals[r] < 0 || topology.regionOf(sensor) != regionOrdinals[r]) {
+                    continue;
+                }
+                for (int t = 0; t < types.size(); t++) {
+                    if (types.get(t) == topology.sensorType(sensor)) {
+                        cells.computeIfAbsent(topology.sensorId(sensor), id -> new ArrayList<>()).add(new int[]{r, t});
+                    }
+                }
+            }
+        }
+        if (cells.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT sensor_id");
+        LocalDateTime[] starts = windowStarts(minutes, windows, endTime, sql);
+        sql.append(" FROM sensor_data WHERE sensor_id = ANY (?) AND \"timestamp\" >= ? AND \"timestamp\" <= ? GROUP BY sensor_id");
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString());
+            int parameter = bindWindowStarts(statement, starts);
+            statement.setArray(parameter++, connection.createArrayOf("uuid", cells.keySet().toArray()));
+            statement.setTimestamp(parameter++, Timestamp.valueOf(oldest(starts, endTime)));
+            statement.setTimestamp(parameter, Timestamp.valueOf(endTime));
+            return statement;
+        }, row -> {
+            for (int[] cell : cells.get(row.getObject(1, UUID.class))) {
+                for (int i = 0; i < starts.length; i++) {
+                    totals.add(cell[0], cell[1], windows.get(i), row.getDouble(3 + 2 * i), row.getLong(2 + 2 * i));
+                }
+            }
+        });
+    }
+
+    // One scan over the covering region index: per region and type, COUNT and SUM filtered to each window
+    private void totalsByRegion(List<Long> minutes, List<Integer> windows, LocalDateTime endTime, MatrixTotals totals) {
+        StringBuilder sql = new StringBuilder("SELECT region_id, type");
+        LocalDateTime[] starts = windowStarts(minutes, windows, endTime, sql);
+        sql.append(" FROM sensor_data WHERE region_id = ANY (?) AND type = ANY (?)"
+                + " AND \"timestamp\" >= ? AND \"timestamp\" <= ? GROUP BY region_id, type");
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString());
+            int parameter = bindWindowStarts(statement, starts);
+            statement.setArray(parameter++, connection.createArrayOf("uuid", totals.regionIds()));
+            statement.setArray(parameter++, connection.createArrayOf("varchar", totals.typeNames()));
+            statement.setTimestamp(parameter++, Timestamp.valueOf(oldest(starts, endTime)));
+            statement.setTimestamp(parameter, Timestamp.valueOf(endTime));
+            return statement;
+        }, row -> {
+            UUID regionId = row.getObject(1, UUID.class);
+            SensorType type = SensorType.valueOf(row.getString(2));
+            for (int i = 0; i < starts.length; i++) {
+                totals.add(regionId, type, windows.get(i), row.getDouble(4 + 2 * i), row.getLong(3 + 2 * i));
+            }
+        });
+    }
+
+    // The window's rollup parts (see rollupParts), each one query grouped by region and type
+    private void totalsFromRollups(LocalDateTime start, LocalDateTime end, int window, MatrixTotals totals) {
+        for (RollupPart part : rollupParts(start, end)) {
+            String sql = switch (part.source()) {
+                case READINGS -> READING_TOTALS_SQL;
+                case MINUTES -> MINUTE_ROLLUP_TOTALS_SQL;
+                case HOURS -> HOUR_ROLLUP_TOTALS_SQL;
+            };
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setArray(1, connection.createArrayOf("uuid", totals.regionIds()));
+                statement.setArray(2, connection.createArrayOf("varchar", totals.typeNames()));
+                statement.setTimestamp(3, Timestamp.valueOf(part.start()));
+                statement.setTimestamp(4, Timestamp.valueOf(part.end()));
+                return statement;
+            }, row -> {
+                totals.add(row.getObject(1, UUID.class), SensorType.valueOf(row.getString(2)), window,
+                        row.getDouble(3), row.getLong(4));
+            });
+        }
+    }
+
+    // Appends a COUNT and SUM filtered to each window's start to the select list and returns the starts
+    private static LocalDateTime[] windowStarts(List<Long> minutes, List<Integer> windows, LocalDateTime endTime,
+                                                StringBuilder sql) {
+        LocalDateTime[] starts = new LocalDateTime[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            starts[i] = endTime.minusMinutes(minutes.get(windows.get(i)));
+            sql.append(", COUNT(*) FILTER (WHERE \"timestamp\" >= ?), SUM(\"value\") FILTER (WHERE \"timestamp\" >= ?)");
+        }
+        return starts;
+    }
+
+    // Binds the window starts of windowStarts and returns the next parameter index
+    private static int bindWindowStarts(PreparedStatement statement, LocalDateTime[] starts) throws SQLException {
+        int parameter = 1;
+        for (LocalDateTime start : starts) {
+            statement.setTimestamp(parameter++, Timestamp.valueOf(start));
+            statement.setTimestamp(parameter++, Timestamp.valueOf(start));
+        }
+        return parameter;
+    }
+
+    private static LocalDateTime oldest(LocalDateTime[] starts, LocalDateTime endTime) {
+        LocalDateTime oldest = endTime;
+        for (LocalDateTime start : starts) {
+            oldest = start.isBefore(oldest) ? start : oldest;
+        }
+        return oldest;
+    }
+
+    private Double averageFromRollups(SensorType type, UUID regionId, LocalDateTime start, LocalDateTime end) {
+        double total = 0;
+        long readings = 0;
+        for (RollupPart part : rollupParts(start, end)) {
+            WindowTotals totals = switch (part.source()) {
+                case READINGS -> sensorDataRepository.findTotalsBySensorTypeAndRegionInTimeRange(type, regionId, part.start(), part.end());
+                case MINUTES -> sensorDataRepository.findMinuteRollupTotals(type, regionId, part.start(), part.end());
+                case HOURS -> sensorDataRepository.findHourRollupTotals(type, regionId, part.start(), part.end());
+            };
+            if (totals != null && totals.getTotal() != null) {
+                total += totals.getTotal();
+                readings += totals.getReadings();
+            }
+        }
+        return readings == 0 ? null : total / readings;
+    }
+
+    /*
+     * Splits [start, end] into whole hours read from the hourly rollup, the whole minutes around them read
+     * from the minute rollup, and the sub-minute edges read from raw readings, so the cost grows with the
+     * number of buckets rather than the number of readings. Parts are half-open.
+     */
+    private static List<RollupPart> rollupParts(LocalDateTime start, LocalDateTime end) {
+        // The raw query is inclusive of 'end'; timestamps have microsecond precision
+        LocalDateTime endExclusive = end.plusNanos(1_000);
+        LocalDateTime minuteStart = ceil(start, ChronoUnit.MINUTES);
+        LocalDateTime minuteEnd = endExclusive.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime hourStart = ceil(start, ChronoUnit.HOURS);
+        LocalDateTime hourEnd = endExclusive.truncatedTo(ChronoUnit.HOURS);
+
+        List<RollupPart> parts = new ArrayList<>();
+        if (!minuteStart.isBefore(minuteEnd)) {
+            parts.add(new RollupPart(RollupSource.READINGS, start, endExclusive));
+        } else {
+            parts.add(new RollupPart(RollupSource.READINGS, start, minuteStart));
+            parts.add(new RollupPart(RollupSource.READINGS, minuteEnd, endExclusive));
+            if (hourStart.isBefore(hourEnd)) {
+                parts.add(new RollupPart(RollupSource.MINUTES, minuteStart, hourStart));
+                parts.add(new RollupPart(RollupSource.HOURS, hourStart, hourEnd));
+                parts.add(new RollupPart(RollupSource.MINUTES, hourEnd, minuteEnd));
+            } else {
+                parts.add(new RollupPart(RollupSource.MINUTES, minuteStart, minuteEnd));
+            }
+        }
+        return parts;
+    }
+
+    private static List<UUID> sensorsOf(SensorTopology topology, int region, SensorType type) {
+        List<UUID> sensors = new ArrayList<>();
+        for (int sensor = 0; sensor < topology.sensorCount(); sensor++) {
+            if (topology.sensorType(sensor) == type && topology.regionOf(sensor) == region) {
+                sensors.add(topology.sensorId(sensor));
+            }
+        }
+        return sensors;
+    }
+
+    private static LocalDateTime ceil(LocalDateTime timestamp, ChronoUnit unit) {
+        LocalDateTime truncated = timestamp.truncatedTo(unit);
+        return truncated.equals(timestamp) ? timestamp : truncated.plus(1, unit);
+    }
+
+    // The sensor's rolling average when windowed scoring is on and this instance has seen its readings
+    private double aqiInput(int sensor, SensorType type, double value) {
+        if (rollingWindows.isEnabled()) {
+            double windowed = rollingWindows.windowedValue(sensor, type);
+            if (!Double.isNaN(windowed)) {
+                return windowed;
+            }
+        }
+        return value;
+    }
+
+    private Double aqiOf(LocationType locationType, SensorType type, double value) {
+        double aqi = aqiEvaluator.computeAqi(locationType, type, value);
+        return Double.isNaN(aqi) ? null : aqi;
+    }
+
     @CacheEvict(allEntries = true, value = {
             "averageByTypeAndRegion",
-            "alertCount",
-            "summaryByCity"
+            "alertCount"
     })
     public void clearAllCaches() {
         // This method, when called, will clear all entries in the specified caches.
         // Intentionally empty as Spring Cache handles the eviction.
     }
+
+    private enum RollupSource { READINGS, MINUTES, HOURS }
+
+    private record RollupPart(RollupSource source, LocalDateTime start, LocalDateTime end) {
+    }
+
+    /*
+     * Sums and counts per matrix cell and window, added by region and type as the database groups them.
+     * A region or type requested more than once maps to each of its cells.
+     */
+    private static final class MatrixTotals {
+        private final int typeCount;
+        private final Map<UUID, List<Integer>> regionCells = new HashMap<>();
+        private final Map<SensorType, List<Integer>> typeCells = new HashMap<>();
+        private final double[][] sums;
+        private final long[][] counts;
+
+        private MatrixTotals(SensorTopology topology, int[] regionOrdinals, List<SensorType> types, int windows) {
+            this.typeCount = types.size();
+            for (int r = 0; r < regionOrdinals.length; r++) {
+                if (regionOrdinals[r] >= 0) {
+                    regionCells.computeIfAbsent(topology.regionId(regionOrdinals[r]), id -> new ArrayList<>()).add(r);
+                }
+            }
+            for (int t = 0; t < types.size(); t++) {
+                typeCells.computeIfAbsent(types.get(t), type -> new ArrayList<>()).add(t);
+            }
+            this.sums = new double[regionOrdinals.length * typeCount][windows];
+            this.counts = new long[regionOrdinals.length * typeCount][windows];
+        }
+
+        private boolean hasRegions() {
+            return !regionCells.isEmpty() && !typeCells.isEmpty();
+        }
+
+        private Object[] regionIds() {
+            return regionCells.keySet().toArray();
+        }
+
+        private Object[] typeNames() {
+            return typeCells.keySet().stream().map(SensorType::name).toArray();
+        }
+
+        private void add(int region, int type, int window, double sum, long count) {
+            sums[region * typeCount + type][window] += sum;
+            counts[region * typeCount + type][window] += count;
+        }
+
+        private void add(UUID regionId, SensorType type, int window, double sum, long count) {
+            for (int r : regionCells.getOrDefault(regionId, List.of())) {
+                for (int t : typeCells.getOrDefault(type, List.of())) {
+                    add(r, t, window, sum, count);
+                }
+            }
+        }
+
+        // Sets the average of every cell and window that has readings; others are left as they are
+        private void fill(Double[][][] averages) {
+            for (int r = 0; r < averages.length; r++) {
+                for (int t = 0; t < typeCount; t++) {
+                    for (int w = 0; w < counts[r * typeCount + t].length; w++) {
+                        if (counts[r * typeCount + t][w] > 0) {
+                            averages[r][t][w] = sums[r * typeCount + t][w] / counts[r * typeCount + t][w];
+                        }
+                    }
+                }
+            }
+        }
+    }
 } 
\ No newline at end of file
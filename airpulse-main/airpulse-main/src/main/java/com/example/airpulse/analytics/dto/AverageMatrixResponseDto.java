@@ -0,0 +1,19 @@
+package com.example.airpulse.analytics.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AverageMatrixResponseDto {
+    private List<String> regions;
+    private List<String> sensorTypes;
+    private List<Long> minutes;
+    private Double[][][] averages; // [region][sensor type][window], null where there are no readings
+}
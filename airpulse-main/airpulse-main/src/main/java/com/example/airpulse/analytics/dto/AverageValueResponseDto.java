@@ -13,4 +13,5 @@ public class AverageValueResponseDto {
     private String sensorType;
     private String regionName;
     private Double averageValue;
+    private Double averageAqi; // null for sensor types without an AQI scale
 } 
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.example.airpulse.analytics.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PercentilesResponseDto {
+    private String sensorType;
+    private String regionName;
+    private long minutes;
+    private long readings;
+    private Double min;
+    private Double p50; // Percentiles are within the sketches' relative accuracy; min and max are exact
+    private Double p95;
+    private Double p99;
+    private Double max;
+}
@@ -12,5 +12,6 @@ import lombok.NoArgsConstructor;
 public class RegionAnalyticsDto {
     private String regionName;
     private String currentAqiSeverity;
+    private Double currentAqi;
     private SensorReadingSnapshotDto latestReading;
 } 
\ No newline at end of file
@@ -0,0 +1,222 @@
+package com.example.airpulse.cache;
+
+import com.example.airpulse.consumer.ReadingBatch;
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.model.Alert;
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ingest-driven invalidation of the analytics caches. Each (region, {@link SensorType}) series and each
+ * alert severity has a generation that is part of the cache keys of the entries derived from it; bumping a
+ * generation makes those entries unreachable in both cache tiers at once, without scanning keys, and they
+ * age out by TTL. Entries of other regions, types and severities keep being served.
+ * <p>
+ * Ingest only marks series and severities dirty. The generations of the dirty ones are bumped every
+ * {@code airpulse.cache.invalidation-interval-ms}, so a burst of readings for a series invalidates its
+ * entries, and causes a recompute per key, at most once per interval. Under continuous ingest a series is
+ * dirty in every interval, so its entries live for the interval rather than for
+ * {@code airpulse.cache.bucket-ms}; the outdated entry is served while the new one is computed, so this
+ * costs queries, not latency. Raise the interval towards the bucket width to trade freshness for fewer
+ * recomputes.
+ * <p>
+ * The L2 keys are shared by every instance, so with Redis the generations are kept there too, in the
+ * {@value #GENERATIONS_KEY} hash: each instance bumps its dirty series with {@code HINCRBY} and then reads
+ * back all generations, so it also sees the bumps of the readings other instances ingested, one interval
+ * later at most. The key lookups only read the local copy. While Redis is unreachable, and without Redis,
+ * the generations are bumped locally; L2 is bypassed in that case anyway.
+ */
+@Component
+public class AnalyticsCacheInvalidation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnalyticsCacheInvalidation.class);
+    private static final String GENERATIONS_KEY = "airpulse:cache:generations";
+    private static final int SENSOR_TYPES = SensorType.values().length;
+
+    private final SensorTopologyCache topologyCache;
+    private final StringRedisTemplate redisTemplate; // Null without Redis
+    private boolean redisFailing; // Only touched by the scheduled invalidation
+
+    // Guarded by this
+    private final BitSet dirtySeries = new BitSet();
+    private final BitSet dirtySeverities = new BitSet();
+    private final ThreadLocal<BitSet> touchedSeries = ThreadLocal.withInitial(BitSet::new); // Per-chunk scratch
+
+    private volatile long[] seriesGenerations = new long[0];
+    private volatile long[] severityGenerations = new long[AqiSeverity.values().length];
+
+    private final Counter seriesInvalidations;
+    private final Counter severityInvalidations;
+
+    public AnalyticsCacheInvalidation(SensorTopologyCache topologyCache,
+                                      ObjectProvider<StringRedisTemplate> redisTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${airpulse.cache.l2.enabled:true}") boolean l2Enabled) {
+        this.topologyCache = topologyCache;
+        this.redisTemplate = l2Enabled && redisTemplate != null ? redisTemplate.getIfAvailable() : null;
+
+        this.seriesInvalidations = Counter.builder("airpulse.cache.invalidations")
+                .tag("scope", "series")
+                .description("Number of (region, sensor type) series whose cached analytics were invalidated by ingest")
+                .register(meterRegistry);
+        this.severityInvalidations = Counter.builder("airpulse.cache.invalidations")
+                .tag("scope", "severity")
+                .description("Number of alert severities whose cached counts were invalidated by ingest")
+                .register(meterRegistry);
+    }
+
+    /** Marks the series of the batch's readings, except the rows in {@code skippedRows}, dirty. */
+    public void readingsIngested(ReadingBatch batch, BitSet skippedRows) {
+        SensorTopology topology = topologyCache.current();
+        BitSet touched = touchedSeries.get();
+        touched.clear();
+        for (int row = 0; row < batch.size(); row++) {
+            if (!skippedRows.get(row)) {
+                touched.set(topology.regionOf(batch.sensorOrdinal(row)) * SENSOR_TYPES + batch.type(row).ordinal());
+            }
+        }
+        if (!touched.isEmpty()) {
+            synchronized (this) {
+                dirtySeries.or(touched);
+            }
+        }
+    }
+
+    /** Marks the severities of the persisted alerts dirty. */
+    public void alertsRaised(List<Alert> alerts) {
+        if (alerts.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Alert alert : alerts) {
+                int severity = severityOrdinal(alert.getSeverity());
+                if (severity >= 0) {
+                    dirtySeverities.set(severity);
+                }
+            }
+        }
+    }
+
+    /** Generation of the region's series of the type, for use in cache keys; 0 for unknown regions. */
+    public long seriesGeneration(SensorType type, String region) {
+        int regionOrdinal = topologyCache.current().regionOrdinal(region);
+        long[] current = seriesGenerations;
+        int index = regionOrdinal * SENSOR_TYPES + type.ordinal();
+        return regionOrdinal >= 0 && index < current.length ? current[index] : 0;
+    }
+
+    /** Generation of the severity's alert counts, for use in cache keys; 0 for unknown severities. */
+    public long severityGeneration(String severity) {
+        int ordinal = severityOrdinal(severity);
+        return ordinal >= 0 ? severityGenerations[ordinal] : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${airpulse.cache.invalidation-interval-ms:5000}")
+    public void invalidateDirty() {
+        BitSet series;
+        BitSet severities;
+        synchronized (this) {
+            series = (BitSet) dirtySeries.clone();
+            severities = (BitSet) dirtySeverities.clone();
+            dirtySeries.clear();
+            dirtySeverities.clear();
+        }
+        if (redisTemplate == null || !bumpShared(series, severities)) {
+            bumpLocal(series, severities);
+        }
+        seriesInvalidations.increment(series.cardinality());
+        severityInvalidations.increment(severities.cardinality());
+    }
+
+    // Bumps the dirty generations in Redis and takes over all shared generations. False if Redis failed
+    private boolean bumpShared(BitSet series, BitSet severities) {
+        SensorTopology topology = topologyCache.current();
+        Map<Object, Object> shared;
+        try {
+            if (!series.isEmpty() || !severities.isEmpty()) {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection redis = (StringRedisConnection) connection;
+                    // Drops series of regions the current topology no longer has
+                    series.stream().filter(index -> index < topology.regionCount() * SENSOR_TYPES)
+                            .forEach(index -> redis.hIncrBy(GENERATIONS_KEY, seriesField(topology, index), 1));
+                    severities.stream().forEach(index -> redis.hIncrBy(GENERATIONS_KEY, severityField(index), 1));
+                    return null;
+                });
+            }
+            shared = redisTemplate.opsForHash().entries(GENERATIONS_KEY);
+        } catch (RuntimeException e) {
+            if (!redisFailing) {
+                LOGGER.warn("Could not share cache generations through Redis, bumping them locally: {}", e.getMessage());
+            }
+            redisFailing = true;
+            return false;
+        }
+        redisFailing = false;
+
+        // Only this method writes the generations, so copy-on-write needs no further locking
+        long[] seriesCopy = new long[topology.regionCount() * SENSOR_TYPES];
+        for (int index = 0; index < seriesCopy.length; index++) {
+            seriesCopy[index] = generation(shared, seriesField(topology, index));
+        }
+        long[] severityCopy = new long[severityGenerations.length];
+        for (int index = 0; index < severityCopy.length; index++) {
+            severityCopy[index] = generation(shared, severityField(index));
+        }
+        seriesGenerations = seriesCopy;
+        severityGenerations = severityCopy;
+        return true;
+    }
+
+    private void bumpLocal(BitSet series, BitSet severities) {
+        if (!series.isEmpty()) {
+            long[] generations = Arrays.copyOf(seriesGenerations, Math.max(seriesGenerations.length, series.length()));
+            series.stream().forEach(index -> generations[index]++);
+            seriesGenerations = generations;
+        }
+        if (!severities.isEmpty()) {
+            long[] generations = severityGenerations.clone();
+            severities.stream().forEach(index -> generations[index]++);
+            severityGenerations = generations;
+        }
+    }
+
+    // Region ids rather than ordinals, which differ between instances
+    private static String seriesField(SensorTopology topology, int index) {
+        return "series:" + topology.regionId(index / SENSOR_TYPES) + ":" + SensorType.values()[index % SENSOR_TYPES];
+    }
+
+    private static String severityField(int index) {
+        return "severity:" + AqiSeverity.values()[index];
+    }
+
+    private static long generation(Map<Object, Object> shared, String field) {
+        Object value = shared.get(field);
+        return value != null ? Long.parseLong(value.toString()) : 0;
+    }
+
+    private static int severityOrdinal(String severity) {
+        for (AqiSeverity candidate : AqiSeverity.values()) {
+            if (candidate.name().equalsIgnoreCase(severity)) {
+                return candidate.ordinal();
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.airpulse.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.time.Duration;
+
+/**
+ * Replaces Boot's Redis-only cache manager with a {@link TwoTierCacheManager}: a Caffeine L1 per cache in
+ * front of Redis. L2 values are stored as JSON with type hints, so the analytics DTOs need not be
+ * {@link java.io.Serializable}. With {@code airpulse.cache.l2.enabled=false} or without a Redis connection
+ * factory the caches are L1 only.
+ */
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public CacheManager cacheManager(ObjectProvider<RedisConnectionFactory> redisConnectionFactory,
+                                     ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     CacheTimeBuckets timeBuckets,
+                                     @Value("${airpulse.cache.l1.max-size:10000}") long l1MaxSize,
+                                     @Value("${airpulse.cache.l1.ttl-ms:0}") long l1TtlMillis,
+                                     @Value("${airpulse.cache.l2.enabled:true}") boolean l2Enabled,
+                                     @Value("${airpulse.cache.l2.ttl-ms:120000}") long l2TtlMillis,
+                                     @Value("${airpulse.cache.l2.retry-ms:30000}") long l2RetryMillis,
+                                     @Value("${airpulse.cache.refresh-threads:2}") int refreshThreads) {
+        RedisConnectionFactory connectionFactory = l2Enabled ? redisConnectionFactory.getIfAvailable() : null;
+        RedisCacheManager l2CacheManager = null;
+        if (connectionFactory != null) {
+            l2CacheManager = RedisCacheManager.builder(connectionFactory)
+                    .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig()
+                            .entryTtl(Duration.ofMillis(l2TtlMillis))
+                            .serializeValuesWith(RedisSerializationContext.SerializationPair
+                                    .fromSerializer(jsonSerializer(objectMapper))))
+                    .build();
+            l2CacheManager.initializeCaches();
+        }
+        // By default an L1 entry lives for two key buckets: its own, and the next one in which it is served
+        // stale while its successor is computed
+        Duration l1TimeToLive = Duration.ofMillis(l1TtlMillis > 0 ? l1TtlMillis : 2 * timeBuckets.bucketMillis());
+        return new TwoTierCacheManager(l2CacheManager, l1MaxSize, l1TimeToLive, l2RetryMillis,
+                refreshExecutor(refreshThreads), meterRegistry);
+    }
+
+    // Not a bean, so Boot's auto-configured application task executor stays in place. Daemon threads, as an
+    // unfinished refresh is safe to drop on shutdown
+    private static ThreadPoolTaskExecutor refreshExecutor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        // Refreshes are deduplicated per key, so the queue only holds distinct stale entries
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("airpulse-cache-refresh-");
+        executor.setDaemon(true);
+        executor.initialize();
+        return executor;
+    }
+
+    // Boot's mapper (Java time support) with type hints restricted to our own DTOs and JDK collections
+    private static GenericJackson2JsonRedisSerializer jsonSerializer(ObjectMapper objectMapper) {
+        ObjectMapper mapper = objectMapper.copy();
+        mapper.activateDefaultTyping(BasicPolymorphicTypeValidator.builder()
+                        .allowIfSubType("com.example.airpulse.")
+                        .allowIfSubType("java.util.")
+                        .build(),
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        GenericJackson2JsonRedisSerializer.registerNullValueSerializer(mapper, null);
+        return new GenericJackson2JsonRedisSerializer(mapper);
+    }
+}
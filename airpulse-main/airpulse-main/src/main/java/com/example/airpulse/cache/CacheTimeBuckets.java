@@ -0,0 +1,34 @@
+package com.example.airpulse.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Current time bucket for cache keys of "last N minutes" queries. With the bucket in the key, requests
+ * for the same window within one bucket share a cache entry instead of each missing on its own
+ * timestamp, at the cost of answers up to one bucket ({@code airpulse.cache.bucket-ms}) old. Entries of
+ * past buckets are only served as stale values while their successor is computed, and age out of both
+ * tiers by TTL.
+ */
+@Component
+public class CacheTimeBuckets {
+
+    private final long bucketMillis;
+
+    public CacheTimeBuckets(@Value("${airpulse.cache.bucket-ms:30000}") long bucketMillis) {
+        this.bucketMillis = bucketMillis;
+    }
+
+    public long current() {
+        return System.currentTimeMillis() / bucketMillis;
+    }
+
+    /** Key of a result that is stale once the bucket ends or the given invalidation generation changes. */
+    public VersionedKey key(Object key, long generation) {
+        return new VersionedKey(key, current(), generation);
+    }
+
+    public long bucketMillis() {
+        return bucketMillis;
+    }
+}
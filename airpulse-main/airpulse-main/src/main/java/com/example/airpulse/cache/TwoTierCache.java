@@ -0,0 +1,252 @@
+package com.example.airpulse.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A Caffeine L1 in front of an optional Redis L2. Reads try L1 first and only go to Redis on an L1 miss;
+ * an L2 hit is copied into L1, so a hot key is served from the JVM until its L1 entry expires. Writes and
+ * evictions go to both tiers.
+ * <p>
+ * Loads through {@link #get(Object, Callable)} ({@code @Cacheable(sync = true)}) are single-flight:
+ * concurrent misses on one key share the first caller's computation and are counted in
+ * {@code airpulse.cache.coalesced}. For a {@link VersionedKey} L1 also keeps the previous version of the
+ * logical key; a miss on the new version returns that stale value at once, counted in
+ * {@code airpulse.cache.stale.served}, and recomputes the new version on the refresh executor.
+ * <p>
+ * Redis is an optimization, not a dependency: an L2 operation that fails is counted in {@code cache.errors}
+ * and treated as a miss, and L2 is then bypassed for {@code l2RetryMillis} so that an unreachable Redis does
+ * not add its connect timeout to every request. Values are still served and cached in L1 meanwhile.
+ */
+public class TwoTierCache extends AbstractValueAdaptingCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TwoTierCache.class);
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> l1;
+    private final Cache l2;
+    private final long l2RetryMillis;
+    private final Executor refreshExecutor;
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter l2Hits;
+    private final Counter l2Misses;
+    private final Counter l2Errors;
+    private final Counter coalesced;
+    private final Counter staleServed;
+
+    private volatile long l2BypassedUntil;
+
+    public TwoTierCache(String name,
+                        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1,
+                        Cache l2,
+                        long l2RetryMillis,
+                        Executor refreshExecutor,
+                        MeterRegistry meterRegistry) {
+        super(true);
+        this.name = name;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.l2RetryMillis = l2RetryMillis;
+        this.refreshExecutor = refreshExecutor;
+
+        // Same names and tags as the Caffeine binder's meters for L1, so both tiers chart side by side
+        this.l2Hits = Counter.builder("cache.gets")
+                .tags("cache", name, "tier", "l2", "result", "hit")
+                .description("The number of times cache lookup methods have returned a cached value.")
+                .register(meterRegistry);
+        this.l2Misses = Counter.builder("cache.gets")
+                .tags("cache", name, "tier", "l2", "result", "miss")
+                .description("The number of times cache lookup methods have returned an uncached value.")
+                .register(meterRegistry);
+        this.l2Errors = Counter.builder("cache.errors")
+                .tags("cache", name, "tier", "l2")
+                .description("Number of L2 cache operations that failed and were treated as a miss")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("airpulse.cache.coalesced")
+                .tag("cache", name)
+                .description("Number of cache misses that waited for an identical in-flight computation instead of running their own")
+                .register(meterRegistry);
+        this.staleServed = Counter.builder("airpulse.cache.stale.served")
+                .tag("cache", name)
+                .description("Number of requests answered with the previous version of an entry while it was recomputed")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return l1;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object cached = l1.getIfPresent(l1Key(key));
+        if (!(key instanceof VersionedKey versionedKey)) {
+            if (cached != null) {
+                return cached;
+            }
+        } else if (cached instanceof Versioned entry && entry.key().equals(versionedKey)) {
+            return entry.value();
+        }
+        if (!l2Available()) {
+            return null;
+        }
+        ValueWrapper wrapper;
+        try {
+            wrapper = l2.get(key);
+        } catch (RuntimeException e) {
+            l2Failed("get", e);
+            return null;
+        }
+        if (wrapper == null) {
+            l2Misses.increment();
+            return null;
+        }
+        l2Hits.increment();
+        Object value = toStoreValue(wrapper.get());
+        putL1(key, value);
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        if (key instanceof VersionedKey versionedKey
+                && l1.getIfPresent(versionedKey.key()) instanceof Versioned stale
+                && versionedKey.isNewerThan(stale.key())) {
+            refresh(key, valueLoader);
+            staleServed.increment();
+            return (T) fromStoreValue(stale.value());
+        }
+        return (T) load(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        putL1(key, toStoreValue(value));
+        if (l2Available()) {
+            try {
+                l2.put(key, value);
+            } catch (RuntimeException e) {
+                l2Failed("put", e);
+            }
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        l1.invalidate(l1Key(key));
+        if (l2Available()) {
+            try {
+                l2.evict(key);
+            } catch (RuntimeException e) {
+                l2Failed("evict", e);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        l1.invalidateAll();
+        if (l2Available()) {
+            try {
+                l2.clear();
+            } catch (RuntimeException e) {
+                l2Failed("clear", e);
+            }
+        }
+    }
+
+    // Runs the loader unless an identical load is in flight, in which case its result is awaited instead
+    private Object load(Object key, Callable<?> valueLoader) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            Object value = valueLoader.call();
+            put(key, value);
+            created.complete(value);
+            return value;
+        } catch (Exception e) {
+            created.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private void refresh(Object key, Callable<?> valueLoader) {
+        if (inFlight.containsKey(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, valueLoader);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Background refresh of {} in cache {} failed: {}", key, name, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Background refresh of {} in cache {} rejected", key, name);
+        }
+    }
+
+    private void putL1(Object key, Object storeValue) {
+        if (!(key instanceof VersionedKey versionedKey)) {
+            l1.put(key, storeValue);
+            return;
+        }
+        // A slow load of an older version must not replace a newer one
+        l1.asMap().compute(versionedKey.key(), (logicalKey, existing) ->
+                existing instanceof Versioned entry && entry.key().isNewerThan(versionedKey)
+                        ? existing
+                        : new Versioned(versionedKey, storeValue));
+    }
+
+    private static Object l1Key(Object key) {
+        return key instanceof VersionedKey versionedKey ? versionedKey.key() : key;
+    }
+
+    private boolean l2Available() {
+        return l2 != null && System.currentTimeMillis() >= l2BypassedUntil;
+    }
+
+    private void l2Failed(String operation, RuntimeException e) {
+        l2Errors.increment();
+        l2BypassedUntil = System.currentTimeMillis() + l2RetryMillis;
+        LOGGER.warn("L2 {} on cache {} failed, serving from L1 only for {} ms: {}", operation, name, l2RetryMillis, e.getMessage());
+    }
+
+    /** L1 entry of a {@link VersionedKey}, stored under its logical key. */
+    private record Versioned(VersionedKey key, Object value) {
+    }
+}
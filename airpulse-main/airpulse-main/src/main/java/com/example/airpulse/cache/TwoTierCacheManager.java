@@ -0,0 +1,66 @@
+package com.example.airpulse.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates a {@link TwoTierCache} per cache name on first use. Every cache gets its own bounded Caffeine L1,
+ * bound to Micrometer with a {@code tier=l1} tag, and the same-named cache of the L2 manager, if there is one.
+ * Background refreshes of stale entries of all caches share one executor.
+ */
+public class TwoTierCacheManager implements CacheManager {
+
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    private final CacheManager l2CacheManager;
+    private final long l1MaxSize;
+    private final Duration l1TimeToLive;
+    private final long l2RetryMillis;
+    private final Executor refreshExecutor;
+    private final MeterRegistry meterRegistry;
+
+    public TwoTierCacheManager(CacheManager l2CacheManager,
+                               long l1MaxSize,
+                               Duration l1TimeToLive,
+                               long l2RetryMillis,
+                               Executor refreshExecutor,
+                               MeterRegistry meterRegistry) {
+        this.l2CacheManager = l2CacheManager;
+        this.l1MaxSize = l1MaxSize;
+        this.l1TimeToLive = l1TimeToLive;
+        this.l2RetryMillis = l2RetryMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private Cache createCache(String name) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> l1 = Caffeine.newBuilder()
+                .maximumSize(l1MaxSize)
+                .expireAfterWrite(l1TimeToLive)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, l1, name, "tier", "l1");
+        Cache l2 = l2CacheManager != null ? l2CacheManager.getCache(name) : null;
+        return new TwoTierCache(name, l1, l2, l2RetryMillis, refreshExecutor, meterRegistry);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.airpulse.cache;
+
+/**
+ * Cache key of a result that goes stale: the logical {@code key} plus the time bucket and invalidation
+ * generation it was computed for. {@link TwoTierCache} keeps one L1 entry per logical key, so a request for
+ * a newer version can still find, and serve, the previous version while it is recomputed.
+ */
+public record VersionedKey(Object key, long bucket, long generation) {
+
+    public boolean isNewerThan(VersionedKey other) {
+        return bucket != other.bucket ? bucket > other.bucket : generation > other.generation;
+    }
+
+    // Also the Redis key, where every version is a separate entry
+    @Override
+    public String toString() {
+        return key + "@" + bucket + "#" + generation;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.SensorType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Per-sensor alert state machine. A sensor that stays at the same alert-worthy severity produces one alert
+ * when it enters that severity and then at most one per {@code airpulse.alerts.renotify-interval-ms}.
+ * <p>
+ * Severity rises as soon as a reading crosses a breakpoint, but only falls once the reading is more than
+ * {@code airpulse.alerts.hysteresis} (a fraction of the value) below it. Readings hovering around a
+ * breakpoint therefore do not flap between two severities.
+ * <p>
+ * The state machine runs on reading time, not wall-clock time: the renotify interval is measured between
+ * reading timestamps, and a live reading not newer than the sensor's last one is ignored, so readings
+ * redelivered by Kafka neither open nor clear an incident out of order.
+ * <p>
+ * Readings replayed from the DLQ are older than the live ones by nature, so they run through a separate
+ * state machine per sensor ({@link #onReplayedReading}) that leaves the live state alone: a replayed
+ * incident alerts once per severity and renotify interval like a live one. A replayed reading that is not
+ * newer than the sensor's last replayed one starts a new replay sequence, unless it was already stored, in
+ * which case it is a redelivery of a reading already evaluated and is ignored.
+ * <p>
+ * State lives in primitive arrays indexed by topology sensor ordinal, in fixed-size pages like
+ * {@link AnomalyDetector}; the replay state of a page is only allocated once one of its sensors is replayed.
+ * Updates lock the sensor's page, as DLQ replay may process a sensor concurrently with the listener.
+ */
+@Component
+public class AlertDebouncer {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final AqiSeverity[] SEVERITIES = AqiSeverity.values();
+
+    private final AqiEvaluator aqiEvaluator;
+    private final boolean enabled;
+    private final long renotifyIntervalMs;
+    private final double hysteresis;
+
+    private volatile Page[] pages = new Page[0];
+
+    private final Counter alertsSuppressedCounter;
+
+    public AlertDebouncer(AqiEvaluator aqiEvaluator,
+                          MeterRegistry meterRegistry,
+                          @Value("${airpulse.alerts.debounce.enabled:true}") boolean enabled,
+                          @Value("${airpulse.alerts.debounce.renotify-interval-ms:900000}") long renotifyIntervalMs,
+                          @Value("${airpulse.alerts.debounce.hysteresis:0.05}") double hysteresis) {
+        this.aqiEvaluator = aqiEvaluator;
+        this.enabled = enabled;
+        this.renotifyIntervalMs = renotifyIntervalMs;
+        this.hysteresis = hysteresis;
+
+        this.alertsSuppressedCounter = Counter.builder("airpulse.alerts.suppressed")
+                .description("Number of alert-worthy readings suppressed by debouncing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Feeds an evaluated live reading of the sensor (a topology ordinal) taken at {@code readingMillis} into
+     * its state machine. Returns the severity to alert with, or {@code null} if no alert should be emitted for
+     * this reading.
+     */
+    public AqiSeverity onReading(int sensor, LocationType locationType, SensorType type, double value,
+                                 AqiSeverity severity, long readingMillis) {
+        if (!enabled) {
+            return aqiEvaluator.isAlertWorthy(severity) ? severity : null;
+        }
+        Page page = page(sensor >>> PAGE_BITS);
+        synchronized (page) {
+            return evaluate(page.live, sensor & (PAGE_SIZE - 1), locationType, type, value, severity, readingMillis, false);
+        }
+    }
+
+    /**
+     * Like {@link #onReading} for a reading replayed from the DLQ, evaluated against the sensor's replay state.
+     * {@code stored} tells whether the reading was already stored by an earlier attempt.
+     */
+    public AqiSeverity onReplayedReading(int sensor, LocationType locationType, SensorType type, double value,
+                                         AqiSeverity severity, long readingMillis, boolean stored) {
+        if (!enabled) {
+            return aqiEvaluator.isAlertWorthy(severity) ? severity : null;
+        }
+        Page page = page(sensor >>> PAGE_BITS);
+        synchronized (page) {
+            if (page.replay == null) {
+                page.replay = new Track();
+            }
+            return evaluate(page.replay, sensor & (PAGE_SIZE - 1), locationType, type, value, severity, readingMillis, !stored);
+        }
+    }
+
+    /** Forgets the sensor's live state so its next alert-worthy reading is emitted, e.g. after a failed send. */
+    public void reset(int sensor) {
+        Page page = page(sensor >>> PAGE_BITS);
+        synchronized (page) {
+            page.live.clear(sensor & (PAGE_SIZE - 1));
+        }
+    }
+
+    /** Forgets the sensor's replay state, as {@link #reset} does for the live one. */
+    public void resetReplayed(int sensor) {
+        Page page = page(sensor >>> PAGE_BITS);
+        synchronized (page) {
+            if (page.replay != null) {
+                page.replay.clear(sensor & (PAGE_SIZE - 1));
+            }
+        }
+    }
+
+    // Must be called with the page locked
+    private AqiSeverity evaluate(Track track, int i, LocationType locationType, SensorType type, double value,
+                                 AqiSeverity severity, long readingMillis, boolean restartIfOlder) {
+        if (track.seen[i] && readingMillis <= track.lastReadingMillis[i]) {
+            if (!restartIfOlder) {
+                return null;
+            }
+            track.clear(i);
+        }
+        track.seen[i] = true;
+        track.lastReadingMillis[i] = readingMillis;
+
+        AqiSeverity previous = track.severity[i] >= 0 ? SEVERITIES[track.severity[i]] : null;
+        AqiSeverity effective = severity;
+        if (previous != null && severity.ordinal() < previous.ordinal()) {
+            // Only step down as far as the value still maps once widened by the hysteresis band
+            AqiSeverity held = aqiEvaluator.evaluateAqi(locationType, type, value * (1 + hysteresis));
+            effective = held.ordinal() < previous.ordinal() ? held : previous;
+        }
+        track.severity[i] = (byte) effective.ordinal();
+
+        if (!aqiEvaluator.isAlertWorthy(effective)) {
+            return null;
+        }
+        if (effective == previous && readingMillis - track.lastNotifiedMillis[i] < renotifyIntervalMs) {
+            alertsSuppressedCounter.increment();
+            return null;
+        }
+        track.lastNotifiedMillis[i] = readingMillis;
+        return effective;
+    }
+
+    private Page page(int index) {
+        Page[] current = pages;
+        return index < current.length ? current[index] : addPages(index);
+    }
+
+    private synchronized Page addPages(int index) {
+        Page[] current = pages;
+        if (index >= current.length) {
+            Page[] grown = Arrays.copyOf(current, index + 1);
+            for (int p = current.length; p < grown.length; p++) {
+                grown[p] = new Page();
+            }
+            pages = grown;
+            current = grown;
+        }
+        return current[index];
+    }
+
+    /** State of {@value #PAGE_SIZE} consecutive sensor ordinals. */
+    private static final class Page {
+        private final Track live = new Track();
+        private Track replay; // Guarded by the page
+    }
+
+    /** One state machine per sensor of a page; severity is an ordinal, -1 for none. */
+    private static final class Track {
+        private final boolean[] seen = new boolean[PAGE_SIZE];
+        private final byte[] severity = new byte[PAGE_SIZE];
+        private final long[] lastReadingMillis = new long[PAGE_SIZE];
+        private final long[] lastNotifiedMillis = new long[PAGE_SIZE];
+
+        private Track() {
+            Arrays.fill(severity, (byte) -1);
+        }
+
+        private void clear(int i) {
+            seen[i] = false;
+            severity[i] = -1;
+            lastReadingMillis[i] = 0;
+            lastNotifiedMillis[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.dto.AlertDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Publishes alerts to the {@code alerts} topic without waiting for each send. Sends are pipelined up to
+ * {@code airpulse.alerts.max-in-flight}; beyond that {@link #publish} blocks until a send completes,
+ * which pushes back on the consumer instead of buffering without bound when the broker is slow.
+ * Callers keep the returned futures and only commit offsets once they have all completed.
+ */
+@Component
+public class AlertPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlertPublisher.class);
+    private static final String ALERTS_TOPIC_NAME = "alerts";
+
+    private final KafkaTemplate<String, AlertDto> alertKafkaTemplate;
+    private final Semaphore inFlightPermits;
+
+    private final Counter alertsPublishedCounter;
+    private final Counter alertsFailedCounter;
+
+    public AlertPublisher(KafkaTemplate<String, AlertDto> alertKafkaTemplate,
+                          MeterRegistry meterRegistry,
+                          @Value("${airpulse.alerts.max-in-flight:1000}") int maxInFlight) {
+        this.alertKafkaTemplate = alertKafkaTemplate;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+
+        this.alertsPublishedCounter = Counter.builder("airpulse.alerts.published")
+                .description("Number of alerts confirmed by the broker")
+                .register(meterRegistry);
+        this.alertsFailedCounter = Counter.builder("airpulse.alerts.failed")
+                .description("Number of alert sends that failed")
+                .register(meterRegistry);
+        Gauge.builder("airpulse.alerts.in_flight", inFlightPermits, permits -> maxInFlight - permits.availablePermits())
+                .description("Number of alert sends awaiting broker confirmation")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<SendResult<String, AlertDto>> publish(AlertDto alert) {
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<SendResult<String, AlertDto>> future;
+        try {
+            future = alertKafkaTemplate.send(ALERTS_TOPIC_NAME, alert.getSensorId().toString(), alert);
+        } catch (Exception e) {
+            inFlightPermits.release();
+            alertsFailedCounter.increment();
+            LOGGER.error("Error sending alert to Kafka for sensor ID {}: {}", alert.getSensorId(), e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((result, ex) -> {
+            inFlightPermits.release();
+            if (ex != null) {
+                alertsFailedCounter.increment();
+                LOGGER.error("Alert for sensor ID {} was not confirmed by Kafka: {}", alert.getSensorId(), ex.getMessage());
+            } else {
+                alertsPublishedCounter.increment();
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("ALERT SENT to Kafka topic '{}': Sensor ID {}, Severity {}, Location {}",
+                            ALERTS_TOPIC_NAME, alert.getSensorId(), alert.getSeverity(), alert.getLocationCode());
+                }
+            }
+        });
+    }
+}
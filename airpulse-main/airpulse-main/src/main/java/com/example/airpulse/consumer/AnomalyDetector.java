@@ -0,0 +1,170 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.consumer.model.AnomalyKind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Streaming anomaly detection for readings that stay below the AQI thresholds. Each sensor keeps a fixed
+ * set of numbers, updated in O(1) per reading without looking at history:
+ * <ul>
+ *   <li>an exponentially weighted mean and variance ({@code alpha}): a reading more than
+ *       {@code z-threshold} standard deviations from the mean is a {@link AnomalyKind#SPIKE};</li>
+ *   <li>a much slower baseline mean ({@code baseline-alpha}): the mean moving more than
+ *       {@code drift-sigmas} standard deviations away from it is a {@link AnomalyKind#DRIFT};</li>
+ *   <li>the last value and a run length: {@code flat-line-readings} identical readings in a row are a
+ *       {@link AnomalyKind#FLAT_LINE}.</li>
+ * </ul>
+ * Spikes and drift are only reported after {@code warm-up-readings}, and a sensor reports at most one
+ * anomaly per {@code renotify-interval-ms}.
+ * <p>
+ * State lives in primitive arrays indexed by topology sensor ordinal, in fixed-size pages so that new
+ * sensors add a page instead of copying the state of existing ones. A sensor's state must only be
+ * updated by one thread at a time, which holds as all readings of a sensor are processed in order.
+ */
+@Component
+public class AnomalyDetector {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /** A detected anomaly; only allocated when one is reported. */
+    public record Detection(AnomalyKind kind, double expected, double score) {
+    }
+
+    private final boolean enabled;
+    private final double alpha;
+    private final double baselineAlpha;
+    private final double zThreshold;
+    private final double driftSigmas;
+    private final int flatLineReadings;
+    private final int warmUpReadings;
+    private final long renotifyIntervalMs;
+
+    private volatile Page[] pages = new Page[0];
+
+    private final Counter anomaliesSuppressedCounter;
+
+    public AnomalyDetector(MeterRegistry meterRegistry,
+                           @Value("${airpulse.anomalies.enabled:true}") boolean enabled,
+                           @Value("${airpulse.anomalies.alpha:0.05}") double alpha,
+                           @Value("${airpulse.anomalies.baseline-alpha:0.002}") double baselineAlpha,
+                           @Value("${airpulse.anomalies.z-threshold:4}") double zThreshold,
+                           @Value("${airpulse.anomalies.drift-sigmas:3}") double driftSigmas,
+                           @Value("${airpulse.anomalies.flat-line-readings:60}") int flatLineReadings,
+                           @Value("${airpulse.anomalies.warm-up-readings:50}") int warmUpReadings,
+                           @Value("${airpulse.anomalies.renotify-interval-ms:900000}") long renotifyIntervalMs) {
+        this.enabled = enabled;
+        this.alpha = alpha;
+        this.baselineAlpha = baselineAlpha;
+        this.zThreshold = zThreshold;
+        this.driftSigmas = driftSigmas;
+        this.flatLineReadings = flatLineReadings;
+        this.warmUpReadings = warmUpReadings;
+        this.renotifyIntervalMs = renotifyIntervalMs;
+
+        this.anomaliesSuppressedCounter = Counter.builder("airpulse.anomalies.suppressed")
+                .description("Number of anomalies not reported because the sensor reported one recently")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Feeds the sensor's next reading into its state. Returns the anomaly to report, or {@code null}.
+     * {@code nowMillis} is only used to rate-limit reports.
+     */
+    public Detection onReading(int sensor, double value, long nowMillis) {
+        Page page = page(sensor >>> PAGE_BITS);
+        int i = sensor & (PAGE_SIZE - 1);
+
+        int seen = page.seen[i];
+        if (seen == 0) {
+            page.mean[i] = value;
+            page.variance[i] = 0;
+            page.baseline[i] = value;
+            page.last[i] = value;
+            page.seen[i] = 1;
+            return null;
+        }
+
+        double mean = page.mean[i];
+        double diff = value - mean;
+        double deviation = Math.sqrt(page.variance[i]);
+        boolean warmedUp = seen >= warmUpReadings && deviation > 0;
+        int flatRun = value == page.last[i] ? page.flatRun[i] + 1 : 0;
+
+        AnomalyKind kind = null;
+        double expected = 0;
+        double score = 0;
+        if (warmedUp && Math.abs(diff) > zThreshold * deviation) {
+            kind = AnomalyKind.SPIKE;
+            expected = mean;
+            score = diff / deviation;
+        } else if (flatRun == flatLineReadings) {
+            kind = AnomalyKind.FLAT_LINE;
+            expected = value;
+            score = flatRun;
+        } else if (warmedUp && Math.abs(mean - page.baseline[i]) > driftSigmas * deviation) {
+            kind = AnomalyKind.DRIFT;
+            expected = page.baseline[i];
+            score = (mean - page.baseline[i]) / deviation;
+        }
+
+        // Incremental EWMA mean and variance
+        double increment = alpha * diff;
+        page.mean[i] = mean + increment;
+        page.variance[i] = (1 - alpha) * (page.variance[i] + diff * increment);
+        page.baseline[i] += baselineAlpha * (value - page.baseline[i]);
+        page.last[i] = value;
+        page.flatRun[i] = flatRun;
+        if (seen < Integer.MAX_VALUE) {
+            page.seen[i] = seen + 1;
+        }
+
+        if (kind == null) {
+            return null;
+        }
+        if (nowMillis < page.mutedUntil[i]) {
+            anomaliesSuppressedCounter.increment();
+            return null;
+        }
+        page.mutedUntil[i] = nowMillis + renotifyIntervalMs;
+        return new Detection(kind, expected, score);
+    }
+
+    private Page page(int index) {
+        Page[] current = pages;
+        return index < current.length ? current[index] : addPages(index);
+    }
+
+    private synchronized Page addPages(int index) {
+        Page[] current = pages;
+        if (index >= current.length) {
+            Page[] grown = Arrays.copyOf(current, index + 1);
+            for (int p = current.length; p < grown.length; p++) {
+                grown[p] = new Page();
+            }
+            pages = grown;
+            current = grown;
+        }
+        return current[index];
+    }
+
+    /** State of {@value #PAGE_SIZE} consecutive sensor ordinals. */
+    private static final class Page {
+        private final double[] mean = new double[PAGE_SIZE];
+        private final double[] variance = new double[PAGE_SIZE];
+        private final double[] baseline = new double[PAGE_SIZE];
+        private final double[] last = new double[PAGE_SIZE];
+        private final int[] flatRun = new int[PAGE_SIZE];
+        private final int[] seen = new int[PAGE_SIZE];
+        private final long[] mutedUntil = new long[PAGE_SIZE];
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.dto.AnomalyDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes detected anomalies to the {@code sensor-anomalies} topic, keyed by sensor ID. Anomalies are
+ * rate-limited per sensor by the {@link AnomalyDetector}, so unlike alerts their sends are not bounded here.
+ */
+@Component
+public class AnomalyPublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnomalyPublisher.class);
+    private static final String ANOMALIES_TOPIC_NAME = "sensor-anomalies";
+
+    private final KafkaTemplate<String, AnomalyDto> anomalyKafkaTemplate;
+
+    private final Counter anomaliesPublishedCounter;
+    private final Counter anomaliesFailedCounter;
+
+    public AnomalyPublisher(KafkaTemplate<String, AnomalyDto> anomalyKafkaTemplate, MeterRegistry meterRegistry) {
+        this.anomalyKafkaTemplate = anomalyKafkaTemplate;
+
+        this.anomaliesPublishedCounter = Counter.builder("airpulse.anomalies.published")
+                .description("Number of anomalies confirmed by the broker")
+                .register(meterRegistry);
+        this.anomaliesFailedCounter = Counter.builder("airpulse.anomalies.failed")
+                .description("Number of anomaly sends that failed")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<SendResult<String, AnomalyDto>> publish(AnomalyDto anomaly) {
+        CompletableFuture<SendResult<String, AnomalyDto>> future;
+        try {
+            future = anomalyKafkaTemplate.send(ANOMALIES_TOPIC_NAME, anomaly.getSensorId().toString(), anomaly);
+        } catch (Exception e) {
+            anomaliesFailedCounter.increment();
+            LOGGER.error("Error sending anomaly to Kafka for sensor ID {}: {}", anomaly.getSensorId(), e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((result, ex) -> {
+            if (ex != null) {
+                anomaliesFailedCounter.increment();
+                LOGGER.error("Anomaly for sensor ID {} was not confirmed by Kafka: {}", anomaly.getSensorId(), ex.getMessage());
+            } else {
+                anomaliesPublishedCounter.increment();
+            }
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.SensorType;
+
+/**
+ * Immutable, compiled breakpoint table: the upper concentration bound of the six AQI bands
+ * (GOOD .. HAZARDOUS) for every (location type, sensor type) pair, in one flat array. Row 0 holds the
+ * bounds for readings whose location type is unknown; row {@code ordinal + 1} those of each
+ * {@link LocationType}. A lookup is two array reads however many rules were compiled into the table.
+ * <p>
+ * Rules are applied on top of the EPA defaults: rules without a location type first, then those for a
+ * specific location type, so the most specific rule wins. Non-pollutant sensor types have no bounds unless
+ * a rule gives them some.
+ */
+final class AqiBreakpoints {
+
+    static final int BANDS = 6;
+
+    private static final int SENSOR_TYPES = SensorType.values().length;
+    private static final int ROWS = LocationType.values().length + 1;
+
+    // Upper concentration bound of each band, indexed by SensorType ordinal; null for non-pollutants
+    private static final double[][] EPA_BOUNDS = new double[SENSOR_TYPES][];
+
+    static {
+        EPA_BOUNDS[SensorType.PM25.ordinal()] = new double[]{12.0, 35.4, 55.4, 150.4, 250.4, 500.4}; // µg/m³, 24-hour
+        EPA_BOUNDS[SensorType.PM10.ordinal()] = new double[]{54, 154, 254, 354, 424, 604}; // µg/m³, 24-hour
+        EPA_BOUNDS[SensorType.CO.ordinal()] = new double[]{4.4, 9.4, 12.4, 15.4, 30.4, 50.4}; // ppm, 8-hour
+        EPA_BOUNDS[SensorType.NO2.ordinal()] = new double[]{53, 100, 360, 649, 1249, 2049}; // ppb, 1-hour
+        EPA_BOUNDS[SensorType.SO2.ordinal()] = new double[]{35, 75, 185, 304, 604, 1004}; // ppb, 1-hour
+        // ppb, 8-hour; EPA has no 8-hour hazardous band, the 1-hour top bound is used for it
+        EPA_BOUNDS[SensorType.O3.ordinal()] = new double[]{54, 70, 85, 105, 200, 604};
+    }
+
+    static final AqiBreakpoints DEFAULTS = new Builder().build();
+
+    private final double[][] bounds;
+    private final int ruleCount;
+
+    private AqiBreakpoints(double[][] bounds, int ruleCount) {
+        this.bounds = bounds;
+        this.ruleCount = ruleCount;
+    }
+
+    /** Band upper bounds for the pair, or null if the sensor type has no AQI scale. */
+    double[] boundsFor(LocationType locationType, SensorType sensorType) {
+        int row = locationType == null ? 0 : locationType.ordinal() + 1;
+        return bounds[row * SENSOR_TYPES + sensorType.ordinal()];
+    }
+
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    static final class Builder {
+        private final double[][] generic = new double[SENSOR_TYPES][];
+        private final double[][] specific = new double[ROWS * SENSOR_TYPES][];
+        private int ruleCount;
+
+        /**
+         * Overrides the bounds of a sensor type, at one location type or at all of them if
+         * {@code locationType} is null. Later rules for the same pair replace earlier ones.
+         */
+        Builder rule(LocationType locationType, SensorType sensorType, double[] upperBounds) {
+            validate(sensorType, upperBounds);
+            if (locationType == null) {
+                generic[sensorType.ordinal()] = upperBounds.clone();
+            } else {
+                specific[(locationType.ordinal() + 1) * SENSOR_TYPES + sensorType.ordinal()] = upperBounds.clone();
+            }
+            ruleCount++;
+            return this;
+        }
+
+        AqiBreakpoints build() {
+            double[][] compiled = new double[ROWS * SENSOR_TYPES][];
+            for (int row = 0; row < ROWS; row++) {
+                for (int type = 0; type < SENSOR_TYPES; type++) {
+                    int index = row * SENSOR_TYPES + type;
+                    if (specific[index] != null) {
+                        compiled[index] = specific[index];
+                    } else if (generic[type] != null) {
+                        compiled[index] = generic[type];
+                    } else {
+                        compiled[index] = EPA_BOUNDS[type];
+                    }
+                }
+            }
+            return new AqiBreakpoints(compiled, ruleCount);
+        }
+
+        private static void validate(SensorType sensorType, double[] upperBounds) {
+            if (sensorType == null) {
+                throw new IllegalArgumentException("A threshold rule needs a sensor type");
+            }
+            if (upperBounds == null || upperBounds.length != BANDS) {
+                throw new IllegalArgumentException("Threshold rule for " + sensorType + " needs " + BANDS + " band bounds");
+            }
+            for (int i = 0; i < BANDS; i++) {
+                if (!(upperBounds[i] > (i == 0 ? 0 : upperBounds[i - 1]))) {
+                    throw new IllegalArgumentException("Band bounds for " + sensorType + " must be positive and increasing");
+                }
+            }
+        }
+    }
+}
@@ -1,67 +1,128 @@
 package com.example.airpulse.consumer;
 
 import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.model.LocationType;
 import com.example.airpulse.model.SensorType;
 import org.springframework.stereotype.Component;
 
+/**
+ * Table-driven AQI evaluation against the current {@link AqiBreakpoints}: the EPA breakpoints, overridden
+ * per location type and sensor type by the rules loaded by {@link AqiThresholdRules}. The band is the number
+ * of bounds the value exceeds, and the numeric AQI is linearly interpolated between the band's
+ * concentration bounds and its index bounds ({@link #INDEX_BOUNDS}). A band's lower bound is the previous
+ * band's upper bound, so the scale is continuous rather than using EPA's truncated gaps. Values above the
+ * top band score {@value #MAX_AQI}.
+ * <p>
+ * The table is replaced as a whole with {@link #setBreakpoints}; evaluation reads it once per call and
+ * takes no locks. Sensor types without bounds ({@link SensorType#TEMPERATURE} and
+ * {@link SensorType#HUMIDITY} by default) are always {@link AqiSeverity#GOOD} and their numeric AQI is
+ * {@link Double#NaN}. Methods without a {@link LocationType} use the bounds for an unknown location type.
+ */
 @Component
 public class AqiEvaluator {
 
-    // These are simplified thresholds for demonstration.
-    // Real AQI calculations are more complex and pollutant-specific.
+    public static final double MAX_AQI = 500;
+
+    private static final AqiSeverity[] SEVERITIES = AqiSeverity.values();
+    private static final double[] INDEX_BOUNDS = {0, 50, 100, 150, 200, 300, 500};
+    private static final int BANDS = AqiBreakpoints.BANDS;
+
+    private volatile AqiBreakpoints breakpoints = AqiBreakpoints.DEFAULTS;
+
     public AqiSeverity evaluateAqi(SensorType sensorType, double value) {
-        switch (sensorType) {
-            case PM25: // µg/m³
-                if (value <= 12.0) return AqiSeverity.GOOD;
-                if (value <= 35.4) return AqiSeverity.MODERATE;
-                if (value <= 55.4) return AqiSeverity.UNHEALTHY_FOR_SENSITIVE_GROUPS;
-                if (value <= 150.4) return AqiSeverity.UNHEALTHY;
-                if (value <= 250.4) return AqiSeverity.VERY_UNHEALTHY;
-                return AqiSeverity.HAZARDOUS;
-            case PM10: // µg/m³
-                if (value <= 54) return AqiSeverity.GOOD;
-                if (value <= 154) return AqiSeverity.MODERATE;
-                if (value <= 254) return AqiSeverity.UNHEALTHY_FOR_SENSITIVE_GROUPS;
-                if (value <= 354) return AqiSeverity.UNHEALTHY;
-                if (value <= 424) return AqiSeverity.VERY_UNHEALTHY;
-                return AqiSeverity.HAZARDOUS;
-            case CO: // ppm
-                if (value <= 4.4) return AqiSeverity.GOOD;
-                if (value <= 9.4) return AqiSeverity.MODERATE;
-                if (value <= 12.4) return AqiSeverity.UNHEALTHY_FOR_SENSITIVE_GROUPS;
-                if (value <= 15.4) return AqiSeverity.UNHEALTHY;
-                if (value <= 30.4) return AqiSeverity.VERY_UNHEALTHY;
-                return AqiSeverity.HAZARDOUS;
-            case NO2: // ppb - Using EPA standards for 1-hour NO2
-                if (value <= 53) return AqiSeverity.GOOD;
-                if (value <= 100) return AqiSeverity.MODERATE;
-                if (value <= 360) return AqiSeverity.UNHEALTHY_FOR_SENSITIVE_GROUPS; // This band is wide for NO2
-                if (value <= 649) return AqiSeverity.UNHEALTHY;
-                if (value <= 1249) return AqiSeverity.VERY_UNHEALTHY;
-                return AqiSeverity.HAZARDOUS;
-            case SO2: // ppb - Using EPA standards for 1-hour SO2
-                if (value <= 35) return AqiSeverity.GOOD;
-                if (value <= 75) return AqiSeverity.MODERATE;
-                if (value <= 185) return AqiSeverity.UNHEALTHY_FOR_SENSITIVE_GROUPS;
-                if (value <= 304) return AqiSeverity.UNHEALTHY; // Only up to UNHEALTHY for SO2 in this example
-                 // For VERY_UNHEALTHY and HAZARDOUS, specific exposure times and higher concentrations are typically considered.
-                 // To keep it simple, we'll cap SO2 alerting at UNHEALTHY here.
-                return AqiSeverity.UNHEALTHY;
-            case O3: // ppb - Based on 8-hour ozone AQI
-                if (value <= 54) return AqiSeverity.GOOD;
-                if (value <= 70) return AqiSeverity.MODERATE;
-                if (value <= 85) return AqiSeverity.UNHEALTHY_FOR_SENSITIVE_GROUPS;
-                if (value <= 105) return AqiSeverity.UNHEALTHY;
-                if (value <= 200) return AqiSeverity.VERY_UNHEALTHY;
-                return AqiSeverity.HAZARDOUS;
-            case TEMPERATURE: // Not typically part of AQI, but we can define pragmatic levels
-            case HUMIDITY:    // Not typically part of AQI
-            default:
-                return AqiSeverity.GOOD; // Default to GOOD if not a primary pollutant or unhandled
+        return evaluateAqi(null, sensorType, value);
+    }
+
+    public AqiSeverity evaluateAqi(LocationType locationType, SensorType sensorType, double value) {
+        double[] bounds = breakpoints.boundsFor(locationType, sensorType);
+        return bounds == null ? AqiSeverity.GOOD : SEVERITIES[band(bounds, value)];
+    }
+
+    /** Numeric AQI (0-500) of the value, or {@link Double#NaN} if the type is not an AQI pollutant. */
+    public double computeAqi(SensorType sensorType, double value) {
+        return computeAqi(null, sensorType, value);
+    }
+
+    public double computeAqi(LocationType locationType, SensorType sensorType, double value) {
+        double[] bounds = breakpoints.boundsFor(locationType, sensorType);
+        return bounds == null ? Double.NaN : interpolate(bounds, band(bounds, value), value);
+    }
+
+    /**
+     * Scores the first {@code count} values, all of the given type, into {@code aqiOut} and
+     * {@code severityOut}. Either output may be null if it is not needed.
+     */
+    public void evaluateAqi(SensorType sensorType, double[] values, int count, double[] aqiOut, AqiSeverity[] severityOut) {
+        evaluateAqi(null, sensorType, values, count, aqiOut, severityOut);
+    }
+
+    public void evaluateAqi(LocationType locationType, SensorType sensorType, double[] values, int count,
+                            double[] aqiOut, AqiSeverity[] severityOut) {
+        double[] bounds = breakpoints.boundsFor(locationType, sensorType);
+        if (bounds == null) {
+            for (int i = 0; i < count; i++) {
+                if (aqiOut != null) {
+                    aqiOut[i] = Double.NaN;
+                }
+                if (severityOut != null) {
+                    severityOut[i] = AqiSeverity.GOOD;
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            double value = values[i];
+            int band = band(bounds, value);
+            if (aqiOut != null) {
+                aqiOut[i] = interpolate(bounds, band, value);
+            }
+            if (severityOut != null) {
+                severityOut[i] = SEVERITIES[band];
+            }
+        }
+    }
+
+    /**
+     * Scores the {@link ReadingBatch#aqiInput AQI input} of every row of the batch, whatever its location
+     * and sensor type, into the batch's AQI and severity columns.
+     */
+    public void evaluateAqi(ReadingBatch batch) {
+        AqiBreakpoints table = breakpoints;
+        for (int row = 0; row < batch.size(); row++) {
+            double value = batch.aqiInput(row);
+            double[] bounds = table.boundsFor(batch.locationType(row), batch.type(row));
+            if (bounds == null) {
+                batch.setAqi(row, Double.NaN, AqiSeverity.GOOD);
+            } else {
+                int band = band(bounds, value);
+                batch.setAqi(row, interpolate(bounds, band, value), SEVERITIES[band]);
+            }
         }
     }
 
     public boolean isAlertWorthy(AqiSeverity severity) {
         return severity.ordinal() >= AqiSeverity.UNHEALTHY.ordinal();
     }
-} 
\ No newline at end of file
+
+    /** Atomically replaces the breakpoint table used by all subsequent evaluations. */
+    void setBreakpoints(AqiBreakpoints breakpoints) {
+        this.breakpoints = breakpoints;
+    }
+
+    // Branch-free: counts the bounds below the value, capped at the top band
+    private static int band(double[] bounds, double value) {
+        int band = 0;
+        for (int i = 0; i < BANDS - 1; i++) {
+            band += value > bounds[i] ? 1 : 0;
+        }
+        return band;
+    }
+
+    private static double interpolate(double[] bounds, int band, double value) {
+        double low = band == 0 ? 0 : bounds[band - 1];
+        double high = bounds[band];
+        // Clamped, so values above the top band score MAX_AQI and negative readings score 0
+        double fraction = Math.max(0, Math.min(value, high) - low) / (high - low);
+        return INDEX_BOUNDS[band] + fraction * (INDEX_BOUNDS[band + 1] - INDEX_BOUNDS[band]);
+    }
+}
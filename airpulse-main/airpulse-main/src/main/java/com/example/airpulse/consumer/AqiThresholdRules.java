@@ -0,0 +1,97 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.consumer.model.AqiThresholdRule;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Loads per-location-type threshold rules from the JSON file at {@code airpulse.aqi.rules.location}, compiles
+ * them into an {@link AqiBreakpoints} table and installs it in the {@link AqiEvaluator}.
+ * <p>
+ * The file is a JSON array of {@link AqiThresholdRule}s and is polled every
+ * {@code airpulse.aqi.rules.reload-interval-ms}; when its modification time changes it is recompiled and the
+ * new table is swapped in, without a restart. A file that cannot be read or contains an invalid rule is
+ * logged and the previous table stays in effect. With no location configured the EPA defaults are used.
+ */
+@Component
+public class AqiThresholdRules {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AqiThresholdRules.class);
+
+    private final AqiEvaluator aqiEvaluator;
+    private final ObjectMapper objectMapper;
+    private final Resource rulesResource;
+
+    private long lastModified = Long.MIN_VALUE;
+    private volatile int activeRules;
+
+    public AqiThresholdRules(AqiEvaluator aqiEvaluator,
+                             ObjectMapper objectMapper,
+                             ResourceLoader resourceLoader,
+                             MeterRegistry meterRegistry,
+                             @Value("${airpulse.aqi.rules.location:}") String location) {
+        this.aqiEvaluator = aqiEvaluator;
+        this.objectMapper = objectMapper;
+        this.rulesResource = location.isBlank() ? null : resourceLoader.getResource(location);
+
+        Gauge.builder("airpulse.aqi.rules.active", this, rules -> rules.activeRules)
+                .description("Number of threshold rules compiled into the active AQI breakpoint table")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        reloadIfChanged();
+    }
+
+    @Scheduled(fixedDelayString = "${airpulse.aqi.rules.reload-interval-ms:30000}",
+               initialDelayString = "${airpulse.aqi.rules.reload-interval-ms:30000}")
+    public synchronized void reloadIfChanged() {
+        if (rulesResource == null) {
+            return;
+        }
+        long modified;
+        try {
+            modified = rulesResource.lastModified();
+        } catch (IOException e) {
+            if (lastModified != -1) {
+                LOGGER.warn("AQI threshold rules {} are not readable, keeping the current table: {}", rulesResource, e.getMessage());
+                lastModified = -1;
+            }
+            return;
+        }
+        if (modified == lastModified) {
+            return;
+        }
+        lastModified = modified;
+
+        try (InputStream in = rulesResource.getInputStream()) {
+            List<AqiThresholdRule> rules = objectMapper.readValue(in, new TypeReference<List<AqiThresholdRule>>() {
+            });
+            AqiBreakpoints.Builder builder = new AqiBreakpoints.Builder();
+            for (AqiThresholdRule rule : rules) {
+                builder.rule(rule.getLocationType(), rule.getSensorType(), rule.getBounds());
+            }
+            AqiBreakpoints breakpoints = builder.build();
+            aqiEvaluator.setBreakpoints(breakpoints);
+            activeRules = breakpoints.ruleCount();
+            LOGGER.info("Loaded {} AQI threshold rules from {}", breakpoints.ruleCount(), rulesResource);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("Invalid AQI threshold rules in {}, keeping the current table: {}", rulesResource, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.Alert;
+import com.example.airpulse.model.Anomaly;
+import com.example.airpulse.model.ReadingUuidGenerator;
+import com.example.airpulse.model.TimeOrderedUuidGenerator;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link IngestWriter} that streams rows into {@code sensor_data} and {@code alerts} with PostgreSQL's
+ * binary {@code COPY FROM STDIN}, enabled with {@code airpulse.ingest.writer=copy}.
+ * <p>
+ * Callers hand their rows to a single flusher thread and block until the COPY covering them commits.
+ * The flusher runs once {@code flush-rows} rows are pending or the oldest pending batch has waited
+ * {@code flush-interval-ms}. Both default to a flush as soon as the flusher is free: batches submitted
+ * while a COPY is running are group-committed in the next one, without holding a lone batch back. A
+ * non-zero interval trades latency for larger COPYs; {@code flush-rows} should not exceed what the
+ * submitters can have pending at once (the poll size), or every flush waits for the interval.
+ * Each table encodes into one buffer that is reused across flushes and pushed to the server every
+ * {@code buffer-bytes}. Readings are encoded straight from the {@link ReadingBatch} columns, so the
+ * reading path allocates nothing per row; rows already marked as duplicates are left out.
+ * <p>
+ * If a COPY fails, each batch it contained is copied again on its own, and only a batch that fails by itself
+ * is retried through {@link JpaIngestWriter}, so that only its bad rows are reported as failed. All of this
+ * runs on the flusher thread: with the default interval every lane's batch is usually in the same COPY, so
+ * one bad row costs one extra COPY per lane plus the row-by-row retry of its own batch, and every lane waits
+ * for that before the next flush. The row-by-row retry is what the JPA writer would have done for that batch.
+ * <p>
+ * {@code CopyIngestBenchmarkTest} compares the rows per second of both paths against a PostgreSQL.
+ * <p>
+ * Write latency is exported as {@code airpulse.ingest.write} and written rows as
+ * {@code airpulse.ingest.rows.written}, both with {@code writer=copy} next to the {@code writer=jpa}
+ * series, so the rows per second of the two paths can be compared under the same load.
+ * <p>
+ * If the flusher thread exits, batches still pending and any submitted afterwards fail instead of
+ * blocking their callers.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "airpulse.ingest.writer", havingValue = "copy")
+public class CopyIngestWriter implements IngestWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyIngestWriter.class);
+
+    private final DataSource dataSource;
+    private final JpaIngestWriter fallbackWriter;
+    private final SensorTopologyCache topologyCache;
+    private final int flushRows;
+    private final long flushIntervalNanos;
+    private final int bufferBytes;
+
+    private final CopyTable<ReadingBatch> sensorDataTable;
+    private final CopyTable<List<Alert>> alertsTable;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private Thread flusher;
+    private volatile boolean running;
+
+    public CopyIngestWriter(DataSource dataSource,
+                            JpaIngestWriter fallbackWriter,
+                            SensorTopologyCache topologyCache,
+                            MeterRegistry meterRegistry,
+                            @Value("${airpulse.ingest.copy.flush-rows:${spring.kafka.consumer.max-poll-records:500}}") int flushRows,
+                            @Value("${airpulse.ingest.copy.flush-interval-ms:0}") long flushIntervalMs,
+                            @Value("${airpulse.ingest.copy.buffer-bytes:1048576}") int bufferBytes) {
+        this.dataSource = dataSource;
+        this.fallbackWriter = fallbackWriter;
+        this.topologyCache = topologyCache;
+        this.flushRows = flushRows;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.bufferBytes = bufferBytes;
+
+        this.sensorDataTable = new CopyTable<>(
+                "COPY sensor_data (id, sensor_id, \"timestamp\", type, \"value\", location_id, region_id, city_id) "
+                        + "FROM STDIN (FORMAT BINARY)",
+                ReadingBatch::size,
+                ReadingBatch::isDuplicate,
+                this::encodeSensorData,
+                readings -> {
+                    fallbackWriter.writeReadings(readings);
+                    return null;
+                },
+                writeTimer(meterRegistry, "sensor_data"),
+                rowsCounter(meterRegistry, "sensor_data"),
+                bufferBytes);
+        this.alertsTable = new CopyTable<>(
+                "COPY alerts (id, sensor_id, type, \"value\", severity, location_code, \"timestamp\", city, region) "
+                        + "FROM STDIN (FORMAT BINARY)",
+                List::size,
+                (alerts, row) -> false,
+                CopyIngestWriter::encodeAlert,
+                fallbackWriter::writeAlerts,
+                writeTimer(meterRegistry, "alerts"),
+                rowsCounter(meterRegistry, "alerts"),
+                bufferBytes);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::flushLoop, "airpulse-copy-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        LOGGER.info("COPY ingest writer started (flushRows={}, flushIntervalMs={}, bufferBytes={})",
+                flushRows, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), bufferBytes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        lock.lock();
+        try {
+            running = false;
+            flushNeeded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void writeReadings(ReadingBatch readings) {
+        if (readings.duplicates().cardinality() < readings.size()) {
+            submit(sensorDataTable, readings);
+        }
+    }
+
+    @Override
+    public BitSet writeAlerts(List<Alert> alerts) {
+        BitSet failed = submit(alertsTable, alerts);
+        return failed != null ? failed : new BitSet();
+    }
+
+    // Anomalies are few and rate-limited per sensor; group-committing them through COPY would gain nothing
+    @Override
+    public BitSet writeAnomalies(List<Anomaly> anomalies) {
+        return fallbackWriter.writeAnomalies(anomalies);
+    }
+
+    // Returns the rows that failed, or null if every row was written (or is reported on the rows themselves)
+    private <B> BitSet submit(CopyTable<B> table, B rows) {
+        int rowCount = table.sizeOf.applyAsInt(rows);
+        if (rowCount == 0) {
+            return null;
+        }
+        PendingWrite<B> write = new PendingWrite<>(rows, rowCount);
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("COPY ingest writer is not running");
+            }
+            table.enqueue(write, System.nanoTime());
+            // Wake the flusher to flush now or to wait for this batch's deadline
+            flushNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        return write.result.join();
+    }
+
+    private void flushLoop() {
+        try {
+            runFlushes();
+        } catch (RuntimeException | Error e) {
+            LOGGER.error("COPY flusher failed", e);
+            throw e;
+        } finally {
+            failPending();
+        }
+    }
+
+    private void runFlushes() {
+        while (true) {
+            List<PendingWrite<ReadingBatch>> readings;
+            List<PendingWrite<List<Alert>>> alerts;
+            lock.lock();
+            try {
+                long waitNanos;
+                while (running && (waitNanos = nanosUntilDue(System.nanoTime())) > 0) {
+                    flushNeeded.awaitNanos(waitNanos);
+                }
+                if (!running && sensorDataTable.isEmpty() && alertsTable.isEmpty()) {
+                    return;
+                }
+                readings = sensorDataTable.drain();
+                alerts = alertsTable.drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            flush(sensorDataTable, readings);
+            flush(alertsTable, alerts);
+        }
+    }
+
+    // Stops accepting writes and fails those no flush will pick up, so their callers do not block forever
+    private void failPending() {
+        List<PendingWrite<ReadingBatch>> readings;
+        List<PendingWrite<List<Alert>>> alerts;
+        lock.lock();
+        try {
+            running = false;
+            readings = sensorDataTable.drain();
+            alerts = alertsTable.drain();
+        } finally {
+            lock.unlock();
+        }
+        if (!readings.isEmpty() || !alerts.isEmpty()) {
+            LOGGER.warn("COPY flusher stopped with {} batches pending; failing them", readings.size() + alerts.size());
+        }
+        IllegalStateException stopped = new IllegalStateException("COPY ingest writer stopped before the write was flushed");
+        readings.forEach(write -> write.result.completeExceptionally(stopped));
+        alerts.forEach(write -> write.result.completeExceptionally(stopped));
+    }
+
+    // Must be called with the lock held. Returns 0 when a flush is due.
+    private long nanosUntilDue(long now) {
+        if (sensorDataTable.isEmpty() && alertsTable.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        if (sensorDataTable.pendingRows + alertsTable.pendingRows >= flushRows) {
+            return 0;
+        }
+        long wait = flushIntervalNanos;
+        if (!sensorDataTable.isEmpty()) {
+            wait = Math.min(wait, sensorDataTable.oldestEnqueuedNanos + flushIntervalNanos - now);
+        }
+        if (!alertsTable.isEmpty()) {
+            wait = Math.min(wait, alertsTable.oldestEnqueuedNanos + flushIntervalNanos - now);
+        }
+        return Math.max(wait, 0);
+    }
+
+    private <B> void flush(CopyTable<B> table, List<PendingWrite<B>> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int rowCount;
+        try {
+            rowCount = copy(table, writes);
+        } catch (Exception e) {
+            if (writes.size() > 1) {
+                // Keep the batches without a bad row on COPY instead of sending all of them through JPA
+                LOGGER.warn("COPY of {} batches failed, retrying each batch on its own: {}", writes.size(), e.getMessage());
+                for (PendingWrite<B> write : writes) {
+                    flush(table, List.of(write));
+                }
+                return;
+            }
+            LOGGER.warn("COPY of a batch of {} rows failed, retrying it through JPA: {}", writes.get(0).rowCount, e.getMessage());
+            try {
+                writes.get(0).result.complete(table.fallback.apply(writes.get(0).rows));
+            } catch (Exception fallbackEx) {
+                writes.get(0).result.completeExceptionally(fallbackEx);
+            }
+            return;
+        }
+        table.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        table.rowsWritten.increment(rowCount);
+        LOGGER.debug("COPY of {} rows from {} batches committed", rowCount, writes.size());
+        for (PendingWrite<B> write : writes) {
+            write.result.complete(null);
+        }
+    }
+
+    // Streams the rows of the writes in one COPY and commits it; returns the number of rows written
+    private <B> int copy(CopyTable<B> table, List<PendingWrite<B>> writes) throws Exception {
+        int rowCount = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(table.copySql);
+            try {
+                PgBinaryCopyBuffer buffer = table.buffer;
+                buffer.reset();
+                buffer.writeHeader();
+                for (PendingWrite<B> write : writes) {
+                    for (int row = 0; row < write.rowCount; row++) {
+                        if (table.skip.test(write.rows, row)) {
+                            continue;
+                        }
+                        table.encoder.encode(write.rows, row, buffer);
+                        rowCount++;
+                        if (buffer.size() >= bufferBytes) {
+                            copyIn.writeToCopy(buffer.array(), 0, buffer.size());
+                            buffer.reset();
+                        }
+                    }
+                }
+                buffer.writeTrailer();
+                copyIn.writeToCopy(buffer.array(), 0, buffer.size());
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+        return rowCount;
+    }
+
+    private void encodeSensorData(ReadingBatch readings, int row, PgBinaryCopyBuffer buffer) {
+        SensorTopology topology = topologyCache.current();
+        int location = topology.locationOf(readings.sensorOrdinal(row));
+        int region = topology.regionOfLocation(location);
+        // Same id as the JPA path derives for the reading. Stored readings are skipped before the write; one
+        // stored concurrently since fails its batch's COPY on the primary key, and the JPA fallback then
+        // reports it as a duplicate
+        buffer.startRow(8);
+        buffer.writeUuid(ReadingUuidGenerator.mostSignificantBits(readings.timestamp(row)),
+                ReadingUuidGenerator.leastSignificantBits(readings.sensorId(row), readings.timestamp(row)));
+        buffer.writeUuid(readings.sensorId(row));
+        buffer.writeTimestamp(readings.timestamp(row));
+        buffer.writeText(readings.type(row).name());
+        buffer.writeFloat8(readings.value(row));
+        buffer.writeUuid(topology.locationId(location));
+        buffer.writeUuid(topology.regionId(region));
+        buffer.writeUuid(topology.cityId(topology.cityOfRegion(region)));
+    }
+
+    private static void encodeAlert(List<Alert> alerts, int row, PgBinaryCopyBuffer buffer) {
+        Alert alert = alerts.get(row);
+        buffer.startRow(9);
+        writeTimeOrderedUuid(buffer);
+        buffer.writeUuid(alert.getSensorId());
+        buffer.writeText(alert.getType().name());
+        buffer.writeFloat8(alert.getValue());
+        buffer.writeText(alert.getSeverity());
+        buffer.writeText(alert.getLocationCode());
+        buffer.writeTimestamp(alert.getTimestamp());
+        buffer.writeText(alert.getCity());
+        buffer.writeText(alert.getRegion());
+    }
+
+    // Same version 7 UUIDs as the entities' generator, written without allocating a UUID
+    private static void writeTimeOrderedUuid(PgBinaryCopyBuffer buffer) {
+        buffer.writeUuid(TimeOrderedUuidGenerator.nextMostSignificantBits(),
+                TimeOrderedUuidGenerator.nextLeastSignificantBits());
+    }
+
+    private static Timer writeTimer(MeterRegistry meterRegistry, String table) {
+        return Timer.builder("airpulse.ingest.write")
+                .description("Time spent writing a consumed batch to the database")
+                .tag("writer", "copy")
+                .tag("table", table)
+                .register(meterRegistry);
+    }
+
+    private static Counter rowsCounter(MeterRegistry meterRegistry, String table) {
+        return Counter.builder("airpulse.ingest.rows.written")
+                .description("Number of rows written to the database by the ingest writer")
+                .tag("writer", "copy")
+                .tag("table", table)
+                .register(meterRegistry);
+    }
+
+    @FunctionalInterface
+    private interface RowEncoder<B> {
+        void encode(B rows, int row, PgBinaryCopyBuffer buffer);
+    }
+
+    @FunctionalInterface
+    private interface RowFilter<B> {
+        boolean test(B rows, int row);
+    }
+
+    private static final class PendingWrite<B> {
+        private final B rows;
+        private final int rowCount;
+        private final CompletableFuture<BitSet> result = new CompletableFuture<>();
+
+        private PendingWrite(B rows, int rowCount) {
+            this.rows = rows;
+            this.rowCount = rowCount;
+        }
+    }
+
+    private static final class CopyTable<B> {
+        private final String copySql;
+        private final ToIntFunction<B> sizeOf;
+        private final RowFilter<B> skip;
+        private final RowEncoder<B> encoder;
+        private final Function<B, BitSet> fallback;
+        private final Timer timer;
+        private final Counter rowsWritten;
+        private final PgBinaryCopyBuffer buffer; // Only touched by the flusher thread
+
+        // Guarded by the writer's lock
+        private List<PendingWrite<B>> pending = new ArrayList<>();
+        private int pendingRows;
+        private long oldestEnqueuedNanos;
+
+        private CopyTable(String copySql, ToIntFunction<B> sizeOf, RowFilter<B> skip, RowEncoder<B> encoder,
+                          Function<B, BitSet> fallback, Timer timer, Counter rowsWritten, int bufferBytes) {
+            this.copySql = copySql;
+            this.sizeOf = sizeOf;
+            this.skip = skip;
+            this.encoder = encoder;
+            this.fallback = fallback;
+            this.timer = timer;
+            this.rowsWritten = rowsWritten;
+            // Leave headroom for the row that crosses the streaming threshold
+            this.buffer = new PgBinaryCopyBuffer(bufferBytes + 4096);
+        }
+
+        private void enqueue(PendingWrite<B> write, long now) {
+            if (pending.isEmpty()) {
+                oldestEnqueuedNanos = now;
+            }
+            pending.add(write);
+            pendingRows += write.rowCount;
+        }
+
+        private boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        private List<PendingWrite<B>> drain() {
+            List<PendingWrite<B>> drained = pending;
+            pending = new ArrayList<>();
+            pendingRows = 0;
+            return drained;
+        }
+    }
+}
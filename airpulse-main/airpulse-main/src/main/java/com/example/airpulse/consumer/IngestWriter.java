@@ -0,0 +1,31 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.Alert;
+import com.example.airpulse.model.Anomaly;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Persistence strategy used by {@link SensorConsumer} for a consumed batch. The implementation is
+ * selected with {@code airpulse.ingest.writer} ({@code jpa} or {@code copy}).
+ * <p>
+ * All methods block until the rows are durable. Rows that could not be written are reported by position,
+ * so the caller can re-route only those records.
+ */
+public interface IngestWriter {
+
+    /**
+     * Writes the batch's rows to {@code sensor_data}, except those already marked with
+     * {@link ReadingBatch#markDuplicate}. Rows that could not be written are marked on the batch with
+     * {@link ReadingBatch#markFailed}; rows found to be stored already are not failures and are marked as
+     * duplicates instead. Nothing is allocated to report the outcome, so a fully
+     * written batch costs the caller no garbage.
+     */
+    void writeReadings(ReadingBatch readings);
+
+    /** Writes the alerts; the returned {@link BitSet} marks the positions of those that could not be written. */
+    BitSet writeAlerts(List<Alert> alerts);
+
+    BitSet writeAnomalies(List<Anomaly> anomalies);
+}
@@ -0,0 +1,181 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.Alert;
+import com.example.airpulse.model.Anomaly;
+import com.example.airpulse.model.SensorData;
+import com.example.airpulse.repository.AlertRepository;
+import com.example.airpulse.repository.AnomalyRepository;
+import com.example.airpulse.repository.SensorDataRepository;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Persists whole consumer batches using Hibernate JDBC batching (see {@code hibernate.jdbc.batch_size}
+ * and {@code reWriteBatchedInserts} in application.yml), so a poll costs one multi-row insert per table
+ * instead of one round trip per reading.
+ * <p>
+ * If the batch insert fails, the rows are retried one by one in their own transactions to isolate the
+ * bad records. The returned {@link BitSet} marks the positions of rows that could not be written. Readings
+ * already marked as duplicates by {@link StoredReadingFilter} are not written. One that is still rejected by
+ * the primary key was stored concurrently by an earlier delivery of the same record (see
+ * {@link com.example.airpulse.model.ReadingUuidGenerator}); it is marked as a duplicate on the batch instead.
+ * <p>
+ * This is the default {@link IngestWriter}; {@link CopyIngestWriter} also uses it to isolate bad rows
+ * when a COPY fails.
+ */
+@Component
+public class JpaIngestWriter implements IngestWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JpaIngestWriter.class);
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final SensorDataRepository sensorDataRepository;
+    private final AlertRepository alertRepository;
+    private final AnomalyRepository anomalyRepository;
+    private final SensorTopologyCache topologyCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer readingsWriteTimer;
+    private final Timer alertsWriteTimer;
+    private final Timer anomaliesWriteTimer;
+    private final Counter readingsWritten;
+    private final Counter alertsWritten;
+    private final Counter anomaliesWritten;
+
+    public JpaIngestWriter(SensorDataRepository sensorDataRepository,
+                           AlertRepository alertRepository,
+                           AnomalyRepository anomalyRepository,
+                           SensorTopologyCache topologyCache,
+                           PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry) {
+        this.sensorDataRepository = sensorDataRepository;
+        this.alertRepository = alertRepository;
+        this.anomalyRepository = anomalyRepository;
+        this.topologyCache = topologyCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readingsWriteTimer = writeTimer(meterRegistry, "sensor_data");
+        this.alertsWriteTimer = writeTimer(meterRegistry, "alerts");
+        this.anomaliesWriteTimer = writeTimer(meterRegistry, "anomalies");
+        this.readingsWritten = rowsCounter(meterRegistry, "sensor_data");
+        this.alertsWritten = rowsCounter(meterRegistry, "alerts");
+        this.anomaliesWritten = rowsCounter(meterRegistry, "anomalies");
+    }
+
+    @Override
+    public void writeReadings(ReadingBatch readings) {
+        // JPA needs an entity per row; the allocation-free path is CopyIngestWriter
+        List<SensorData> rows = new ArrayList<>(readings.size());
+        int[] batchRows = new int[readings.size()]; // Row of the batch each entity was built from
+        SensorTopology topology = topologyCache.current();
+        for (int row = 0; row < readings.size(); row++) {
+            if (readings.isDuplicate(row)) {
+                continue;
+            }
+            int location = topology.locationOf(readings.sensorOrdinal(row));
+            int region = topology.regionOfLocation(location);
+            batchRows[rows.size()] = row;
+            rows.add(SensorData.builder()
+                    .sensorId(readings.sensorId(row))
+                    .timestamp(readings.timestamp(row))
+                    .type(readings.type(row))
+                    .value(readings.value(row))
+                    .locationId(topology.locationId(location))
+                    .regionId(topology.regionId(region))
+                    .cityId(topology.cityId(topology.cityOfRegion(region)))
+                    .build());
+        }
+        BitSet failed = writeAll(rows, sensorDataRepository, data -> data.setId(null), readingsWriteTimer, readingsWritten,
+                "sensor reading", i -> readings.markDuplicate(batchRows[i]));
+        for (int i = failed.nextSetBit(0); i >= 0; i = failed.nextSetBit(i + 1)) {
+            readings.markFailed(batchRows[i]);
+        }
+    }
+
+    @Override
+    public BitSet writeAlerts(List<Alert> alerts) {
+        return writeAll(alerts, alertRepository, alert -> alert.setId(null), alertsWriteTimer, alertsWritten, "alert", null);
+    }
+
+    @Override
+    public BitSet writeAnomalies(List<Anomaly> anomalies) {
+        return writeAll(anomalies, anomalyRepository, anomaly -> anomaly.setId(null), anomaliesWriteTimer, anomaliesWritten, "anomaly", null);
+    }
+
+    private <T> BitSet writeAll(List<T> rows, JpaRepository<T, UUID> repository, Consumer<T> resetId,
+                                Timer timer, Counter written, String label, IntConsumer onDuplicate) {
+        BitSet failed = new BitSet(rows.size());
+        if (rows.isEmpty()) {
+            return failed;
+        }
+
+        try {
+            timer.record(() -> transactionTemplate.executeWithoutResult(status -> repository.saveAll(rows)));
+            written.increment(rows.size());
+            LOGGER.debug("Batch of {} {} rows saved to DB", rows.size(), label);
+            return failed;
+        } catch (Exception e) {
+            LOGGER.warn("Batch insert of {} {} rows failed, retrying row by row: {}", rows.size(), label, e.getMessage());
+        }
+
+        for (int i = 0; i < rows.size(); i++) {
+            T row = rows.get(i);
+            // The failed batch already assigned generated ids; clear them so the row is inserted, not merged
+            resetId.accept(row);
+            try {
+                transactionTemplate.executeWithoutResult(status -> repository.save(row));
+                written.increment();
+            } catch (Exception e) {
+                if (onDuplicate != null && isUniqueViolation(e)) {
+                    // Already stored by an earlier delivery; not a failure, but must not be applied again
+                    onDuplicate.accept(i);
+                    LOGGER.debug("Skipping {} that is already stored: {}", label, e.getMessage());
+                    continue;
+                }
+                failed.set(i);
+                LOGGER.error("Error saving {} to DB: {}", label, e.getMessage(), e);
+            }
+        }
+        return failed;
+    }
+
+    private static boolean isUniqueViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && UNIQUE_VIOLATION.equals(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Timer writeTimer(MeterRegistry meterRegistry, String table) {
+        return Timer.builder("airpulse.ingest.write")
+                .description("Time spent writing a consumed batch to the database")
+                .tag("writer", "jpa")
+                .tag("table", table)
+                .register(meterRegistry);
+    }
+
+    private static Counter rowsCounter(MeterRegistry meterRegistry, String table) {
+        return Counter.builder("airpulse.ingest.rows.written")
+                .description("Number of rows written to the database by the ingest writer")
+                .tag("writer", "jpa")
+                .tag("table", table)
+                .register(meterRegistry);
+    }
+}
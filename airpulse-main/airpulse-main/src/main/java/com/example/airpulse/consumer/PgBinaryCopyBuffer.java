@@ -0,0 +1,133 @@
+package com.example.airpulse.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Growable byte buffer that encodes rows in PostgreSQL's binary {@code COPY} format.
+ * The backing array is kept across {@link #reset()} calls so a long-lived writer reuses one buffer.
+ */
+final class PgBinaryCopyBuffer {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    // Seconds between 1970-01-01 and PostgreSQL's timestamp epoch 2000-01-01
+    private static final long PG_EPOCH_OFFSET_SECONDS = 946_684_800L;
+
+    private byte[] bytes;
+    private int size;
+
+    PgBinaryCopyBuffer(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    void writeHeader() {
+        ensureCapacity(SIGNATURE.length + 8);
+        System.arraycopy(SIGNATURE, 0, bytes, size, SIGNATURE.length);
+        size += SIGNATURE.length;
+        putInt(0); // flags
+        putInt(0); // header extension length
+    }
+
+    void writeTrailer() {
+        ensureCapacity(2);
+        putShort(-1);
+    }
+
+    void startRow(int fieldCount) {
+        ensureCapacity(2);
+        putShort(fieldCount);
+    }
+
+    void writeUuid(UUID value) {
+        writeUuid(value.getMostSignificantBits(), value.getLeastSignificantBits());
+    }
+
+    void writeUuid(long mostSignificantBits, long leastSignificantBits) {
+        ensureCapacity(20);
+        putInt(16);
+        putLong(mostSignificantBits);
+        putLong(leastSignificantBits);
+    }
+
+    void writeFloat8(double value) {
+        ensureCapacity(12);
+        putInt(8);
+        putLong(Double.doubleToLongBits(value));
+    }
+
+    void writeTimestamp(LocalDateTime value) {
+        long micros = (value.toEpochSecond(ZoneOffset.UTC) - PG_EPOCH_OFFSET_SECONDS) * 1_000_000L
+                + value.getNano() / 1_000;
+        ensureCapacity(12);
+        putInt(8);
+        putLong(micros);
+    }
+
+    void writeText(String value) {
+        if (value == null) {
+            ensureCapacity(4);
+            putInt(-1);
+            return;
+        }
+        int length = value.length();
+        ensureCapacity(4 + length);
+        int lengthPosition = size;
+        size += 4;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // Non-ASCII: fall back to the charset encoder for the whole value
+                size = lengthPosition;
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(4 + encoded.length);
+                putInt(encoded.length);
+                System.arraycopy(encoded, 0, bytes, size, encoded.length);
+                size += encoded.length;
+                return;
+            }
+            bytes[size++] = (byte) c;
+        }
+        int end = size;
+        size = lengthPosition;
+        putInt(length);
+        size = end;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+        }
+    }
+
+    private void putShort(int value) {
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        bytes[size++] = (byte) (value >>> 24);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.SensorType;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * Reusable, column-oriented holder for the accepted readings of one ingest chunk.
+ * <p>
+ * Each ingest thread keeps one instance and refills it for every chunk, so steady-state ingest does not
+ * allocate a holder object per reading. The columns only grow, to the largest chunk seen. Object columns
+ * reference the consumed DTO's fields and are cleared by {@link #clear()} so they do not outlive the chunk.
+ */
+public final class ReadingBatch {
+
+    private int size;
+    private int[] sourceIndexes;
+    private int[] sensorOrdinals;
+    private UUID[] sensorIds;
+    private LocalDateTime[] timestamps;
+    private LocationType[] locationTypes;
+    private SensorType[] types;
+    private double[] values;
+    private double[] aqiInputs;
+    private double[] aqis;
+    private AqiSeverity[] severities;
+    private final BitSet failed = new BitSet();
+    private final BitSet duplicates = new BitSet();
+    private final BitSet skipped = new BitSet();
+
+    public ReadingBatch(int initialCapacity) {
+        sourceIndexes = new int[initialCapacity];
+        sensorOrdinals = new int[initialCapacity];
+        sensorIds = new UUID[initialCapacity];
+        timestamps = new LocalDateTime[initialCapacity];
+        locationTypes = new LocationType[initialCapacity];
+        types = new SensorType[initialCapacity];
+        values = new double[initialCapacity];
+        aqiInputs = new double[initialCapacity];
+        aqis = new double[initialCapacity];
+        severities = new AqiSeverity[initialCapacity];
+    }
+
+    public void clear() {
+        Arrays.fill(sensorIds, 0, size, null);
+        Arrays.fill(timestamps, 0, size, null);
+        failed.clear();
+        duplicates.clear();
+        skipped.clear();
+        size = 0;
+    }
+
+    /** Appends a reading and returns its row. */
+    public int add(int sourceIndex, int sensorOrdinal, UUID sensorId, LocalDateTime timestamp,
+                   LocationType locationType, SensorType type, double value) {
+        if (size == values.length) {
+            grow();
+        }
+        int row = size++;
+        sourceIndexes[row] = sourceIndex;
+        sensorOrdinals[row] = sensorOrdinal;
+        sensorIds[row] = sensorId;
+        timestamps[row] = timestamp;
+        locationTypes[row] = locationType;
+        types[row] = type;
+        values[row] = value;
+        aqiInputs[row] = value;
+        return row;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Position of the row's reading in the list handed to the pipeline. */
+    public int sourceIndex(int row) {
+        return sourceIndexes[row];
+    }
+
+    /** Ordinal of the row's sensor in the {@link com.example.airpulse.service.SensorTopology}. */
+    public int sensorOrdinal(int row) {
+        return sensorOrdinals[row];
+    }
+
+    public UUID sensorId(int row) {
+        return sensorIds[row];
+    }
+
+    public LocalDateTime timestamp(int row) {
+        return timestamps[row];
+    }
+
+    /** The row's timestamp in epoch milliseconds, reading timestamps being UTC. */
+    public long timestampMillis(int row) {
+        LocalDateTime timestamp = timestamps[row];
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+    }
+
+    /** Type of the sensor's location, used to pick threshold rules. */
+    public LocationType locationType(int row) {
+        return locationTypes[row];
+    }
+
+    public SensorType type(int row) {
+        return types[row];
+    }
+
+    public double value(int row) {
+        return values[row];
+    }
+
+    /** Concentration the row's AQI is scored against: the raw value unless replaced by a rolling average. */
+    public double aqiInput(int row) {
+        return aqiInputs[row];
+    }
+
+    public void setAqiInput(int row, double aqiInput) {
+        aqiInputs[row] = aqiInput;
+    }
+
+    /** Numeric AQI of the row, set by {@link AqiEvaluator#evaluateAqi(ReadingBatch)}. */
+    public double aqi(int row) {
+        return aqis[row];
+    }
+
+    public AqiSeverity severity(int row) {
+        return severities[row];
+    }
+
+    public void setAqi(int row, double aqi, AqiSeverity severity) {
+        aqis[row] = aqi;
+        severities[row] = severity;
+    }
+
+    /** Marks the row as a reading that could not be stored. */
+    public void markFailed(int row) {
+        failed.set(row);
+        skipped.set(row);
+    }
+
+    public boolean isFailed(int row) {
+        return failed.get(row);
+    }
+
+    /** Marks the row as a reading that was already stored, e.g. by an earlier delivery of the same record. */
+    public void markDuplicate(int row) {
+        duplicates.set(row);
+        skipped.set(row);
+    }
+
+    public boolean isDuplicate(int row) {
+        return duplicates.get(row);
+    }
+
+    /** Rows marked by {@link #markDuplicate}; must not be modified. */
+    public BitSet duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Rows marked by {@link #markFailed} or {@link #markDuplicate}, which must not be applied to in-memory
+     * state; must not be modified.
+     */
+    public BitSet skipped() {
+        return skipped;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, values.length * 2);
+        sourceIndexes = Arrays.copyOf(sourceIndexes, capacity);
+        sensorOrdinals = Arrays.copyOf(sensorOrdinals, capacity);
+        sensorIds = Arrays.copyOf(sensorIds, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        locationTypes = Arrays.copyOf(locationTypes, capacity);
+        types = Arrays.copyOf(types, capacity);
+        values = Arrays.copyOf(values, capacity);
+        aqiInputs = Arrays.copyOf(aqiInputs, capacity);
+        aqis = Arrays.copyOf(aqis, capacity);
+        severities = Arrays.copyOf(severities, capacity);
+    }
+}
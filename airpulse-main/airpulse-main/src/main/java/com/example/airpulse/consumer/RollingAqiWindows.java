@@ -0,0 +1,242 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.repository.SensorDataRepository;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * Per-sensor rolling averages used to score AQI against the averaging period of each pollutant's
+ * breakpoints rather than a single instantaneous reading:
+ * <ul>
+ *     <li>PM2.5 and PM10: the EPA 12-hour NowCast</li>
+ *     <li>O3 and CO: the 8-hour average</li>
+ *     <li>NO2 and SO2: the 1-hour average</li>
+ * </ul>
+ * Each sensor, addressed by its {@link SensorTopology} ordinal, has a ring of twelve hourly sum/count
+ * buckets in primitive arrays. Recording a reading touches one bucket; a windowed value reads at most twelve.
+ * Hours are taken from the reading timestamps, so late readings land in their own hour as long as it is
+ * still inside the window.
+ * <p>
+ * The buckets are warmed from {@code sensor_data} with one grouped query at startup. Enabled with
+ * {@code airpulse.aqi.windowed}; when disabled, readings are scored as they arrive.
+ */
+@Component
+public class RollingAqiWindows {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollingAqiWindows.class);
+    private static final int HOURS = 12;
+    private static final double MIN_NOWCAST_WEIGHT = 0.5;
+
+    private final SensorTopologyCache topologyCache;
+    private final SensorDataRepository sensorDataRepository;
+    private final boolean enabled;
+
+    private volatile SensorWindow[] windows = new SensorWindow[0];
+
+    public RollingAqiWindows(SensorTopologyCache topologyCache,
+                             SensorDataRepository sensorDataRepository,
+                             @Value("${airpulse.aqi.windowed:true}") boolean enabled) {
+        this.topologyCache = topologyCache;
+        this.sensorDataRepository = sensorDataRepository;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            SensorTopology topology = topologyCache.current();
+            int buckets = 0;
+            for (Object[] row : sensorDataRepository.findHourlyTotalsSince(LocalDateTime.now().minusHours(HOURS))) {
+                int sensor = topology.sensorOrdinal((UUID) row[0]);
+                if (sensor < 0) {
+                    continue;
+                }
+                SensorWindow window = window(sensor);
+                synchronized (window) {
+                    window.add(((Number) row[1]).longValue(), ((Number) row[2]).doubleValue(), ((Number) row[3]).intValue());
+                }
+                buckets++;
+            }
+            LOGGER.info("Warmed rolling AQI windows with {} hourly buckets", buckets);
+        } catch (Exception e) {
+            LOGGER.warn("Could not warm rolling AQI windows, starting empty: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds the batch's readings, except the rows in {@code skippedRows}, to their sensors' windows and
+     * replaces each row's AQI input with the windowed value. Duplicate rows are skipped but still scored and
+     * debounced, as their alert may not have been confirmed; they get the windowed value as of their hour
+     * without being added again, so a redelivered reading is scored as it was the first time.
+     */
+    public void record(ReadingBatch batch, BitSet skippedRows) {
+        for (int row = 0; row < batch.size(); row++) {
+            boolean add = !skippedRows.get(row);
+            if (!add && !batch.isDuplicate(row)) {
+                continue;
+            }
+            SensorWindow window = window(batch.sensorOrdinal(row));
+            long hour = toHour(batch.timestamp(row));
+            double windowed;
+            synchronized (window) {
+                if (add) {
+                    window.add(hour, batch.value(row), 1);
+                }
+                windowed = window.windowedValue(batch.type(row), Math.min(hour, window.newestHour));
+            }
+            if (!Double.isNaN(windowed)) {
+                batch.setAqiInput(row, windowed);
+            }
+        }
+    }
+
+    /** Current windowed value of the sensor, or {@link Double#NaN} if it has none. */
+    public double windowedValue(int sensorOrdinal, SensorType type) {
+        SensorWindow[] current = windows;
+        SensorWindow window = sensorOrdinal < current.length ? current[sensorOrdinal] : null;
+        if (window == null) {
+            return Double.NaN;
+        }
+        synchronized (window) {
+            return window.windowedValue(type, window.newestHour);
+        }
+    }
+
+    private SensorWindow window(int sensorOrdinal) {
+        SensorWindow[] current = windows;
+        SensorWindow window = sensorOrdinal < current.length ? current[sensorOrdinal] : null;
+        return window != null ? window : createWindow(sensorOrdinal);
+    }
+
+    private synchronized SensorWindow createWindow(int sensorOrdinal) {
+        SensorWindow[] current = windows;
+        if (sensorOrdinal >= current.length) {
+            current = Arrays.copyOf(current, Math.max(sensorOrdinal + 1, topologyCache.current().sensorCount()));
+        }
+        if (current[sensorOrdinal] == null) {
+            current[sensorOrdinal] = new SensorWindow();
+        }
+        windows = current;
+        return current[sensorOrdinal];
+    }
+
+    private static long toHour(LocalDateTime timestamp) {
+        return Math.floorDiv(timestamp.toEpochSecond(ZoneOffset.UTC), 3600);
+    }
+
+    /** Hourly buckets of one sensor. All methods must be called while synchronized on the window. */
+    private static final class SensorWindow {
+        private final long[] hours = new long[HOURS];
+        private final double[] sums = new double[HOURS];
+        private final int[] counts = new int[HOURS];
+        private long newestHour = Long.MIN_VALUE;
+
+        private SensorWindow() {
+            Arrays.fill(hours, Long.MIN_VALUE);
+        }
+
+        private void add(long hour, double sum, int count) {
+            if (newestHour != Long.MIN_VALUE && hour <= newestHour - HOURS) {
+                return; // Older than the window
+            }
+            int slot = (int) Math.floorMod(hour, (long) HOURS);
+            if (hours[slot] != hour) {
+                if (hours[slot] > hour) {
+                    return; // Slot already holds a newer hour
+                }
+                hours[slot] = hour;
+                sums[slot] = 0;
+                counts[slot] = 0;
+            }
+            sums[slot] += sum;
+            counts[slot] += count;
+            newestHour = Math.max(newestHour, hour);
+        }
+
+        // Windowed value over the hours up to and including endHour
+        private double windowedValue(SensorType type, long endHour) {
+            switch (type) {
+                case PM25:
+                case PM10:
+                    return nowCast(endHour);
+                case O3:
+                case CO:
+                    return mean(endHour, 8);
+                case NO2:
+                case SO2:
+                    return mean(endHour, 1);
+                default:
+                    return Double.NaN;
+            }
+        }
+
+        // Average of the hour 'age' hours before endHour, or NaN if it has no readings
+        private double hourlyAverage(long endHour, int age) {
+            long hour = endHour - age;
+            int slot = (int) Math.floorMod(hour, (long) HOURS);
+            return hours[slot] == hour && counts[slot] > 0 ? sums[slot] / counts[slot] : Double.NaN;
+        }
+
+        private double mean(long endHour, int windowHours) {
+            double sum = 0;
+            int available = 0;
+            for (int age = 0; age < windowHours; age++) {
+                double average = hourlyAverage(endHour, age);
+                if (!Double.isNaN(average)) {
+                    sum += average;
+                    available++;
+                }
+            }
+            return available == 0 ? Double.NaN : sum / available;
+        }
+
+        private double nowCast(long endHour) {
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            int recent = 0;
+            for (int age = 0; age < HOURS; age++) {
+                double average = hourlyAverage(endHour, age);
+                if (!Double.isNaN(average)) {
+                    min = Math.min(min, average);
+                    max = Math.max(max, average);
+                    recent += age < 3 ? 1 : 0;
+                }
+            }
+            // EPA requires two of the three most recent hours
+            if (recent < 2) {
+                return Double.NaN;
+            }
+            double weight = max > 0 ? Math.max(min / max, MIN_NOWCAST_WEIGHT) : 1;
+            double weighted = 0;
+            double weights = 0;
+            double factor = 1;
+            for (int age = 0; age < HOURS; age++, factor *= weight) {
+                double average = hourlyAverage(endHour, age);
+                if (!Double.isNaN(average)) {
+                    weighted += factor * average;
+                    weights += factor;
+                }
+            }
+            return weighted / weights;
+        }
+    }
+}
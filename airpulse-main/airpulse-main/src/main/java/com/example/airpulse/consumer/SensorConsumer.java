@@ -1,154 +1,191 @@
 package com.example.airpulse.consumer;
 
-import com.example.airpulse.consumer.model.AqiSeverity;
-import com.example.airpulse.dto.AlertDto;
+import com.example.airpulse.consumer.model.ProcessingMode;
 import com.example.airpulse.dto.SensorReadingDto;
-import com.example.airpulse.model.Alert;
-import com.example.airpulse.model.SensorData;
-import com.example.airpulse.repository.AlertRepository;
-import com.example.airpulse.repository.SensorDataRepository;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 public class SensorConsumer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SensorConsumer.class);
-    private static final String ALERTS_TOPIC_NAME = "alerts";
     private static final String SENSOR_DATA_DLQ_TOPIC_NAME = "sensor-data-dlq";
 
-    private final AqiEvaluator aqiEvaluator;
-    private final KafkaTemplate<String, AlertDto> alertKafkaTemplate;       // For sending actual alerts
+    private final SensorIngestPipeline ingestPipeline;
     private final KafkaTemplate<String, SensorReadingDto> dlqKafkaTemplate; // For sending to DLQ
-    private final SensorDataRepository sensorDataRepository;
-    private final AlertRepository alertRepository;
+    private final ProcessingMode processingMode;
+    private final int workers;
+    private final Duration redeliveryBackoff;
+    private final ExecutorService workerPool;
 
     private final Counter messagesConsumedCounter;
-    private final Counter alertsTriggeredCounter;
     private final Counter dlqReroutesCounter;
 
-    public SensorConsumer(AqiEvaluator aqiEvaluator,
-                          KafkaTemplate<String, AlertDto> alertKafkaTemplate,
+    public SensorConsumer(SensorIngestPipeline ingestPipeline,
                           KafkaTemplate<String, SensorReadingDto> dlqKafkaTemplate,
-                          SensorDataRepository sensorDataRepository,
-                          AlertRepository alertRepository,
-                          MeterRegistry meterRegistry) {
-        this.aqiEvaluator = aqiEvaluator;
-        this.alertKafkaTemplate = alertKafkaTemplate;
+                          MeterRegistry meterRegistry,
+                          @Value("${airpulse.consumer.processing-mode:SERIAL}") ProcessingMode processingMode,
+                          @Value("${airpulse.consumer.workers:4}") int workers,
+                          @Value("${airpulse.consumer.redelivery-backoff-ms:1000}") long redeliveryBackoffMs) {
+        this.ingestPipeline = ingestPipeline;
         this.dlqKafkaTemplate = dlqKafkaTemplate;
-        this.sensorDataRepository = sensorDataRepository;
-        this.alertRepository = alertRepository;
+        this.processingMode = processingMode;
+        this.workers = workers;
+        this.redeliveryBackoff = Duration.ofMillis(redeliveryBackoffMs);
+        this.workerPool = processingMode == ProcessingMode.KEY_ORDERED
+                ? Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("airpulse-ingest-worker-"))
+                : null;
 
         this.messagesConsumedCounter = Counter.builder("airpulse.consumer.messages.consumed")
                 .description("Number of messages successfully consumed")
                 .register(meterRegistry);
-        this.alertsTriggeredCounter = Counter.builder("airpulse.consumer.alerts.triggered")
-                .description("Number of alerts triggered by the consumer")
-                .register(meterRegistry);
         this.dlqReroutesCounter = Counter.builder("airpulse.consumer.dlq.reroutes")
                 .description("Number of messages rerouted to DLQ")
                 .register(meterRegistry);
     }
 
+    @PreDestroy
+    public void shutdownWorkers() {
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+    }
+
     @KafkaListener(topics = "sensor-data", groupId = "airpulse-group")
-    public void consumeSensorReading(@Payload SensorReadingDto reading, Acknowledgment acknowledgment) {
-        try {
-            LOGGER.info("Received sensor reading: ID={}, Type={}, Value={}, Location={}, City={}, Region={}",
-                    reading.getSensorId(), reading.getType(), reading.getValue(),
-                    reading.getLocationCode(), reading.getCity(), reading.getRegion());
-
-            // Save the raw reading to the database
-            saveSensorData(reading);
-
-            AqiSeverity severity = aqiEvaluator.evaluateAqi(reading.getType(), reading.getValue());
-            LOGGER.info("Evaluated AQI Severity for Sensor ID {}: {}", reading.getSensorId(), severity);
-
-            if (aqiEvaluator.isAlertWorthy(severity)) {
-                AlertDto alertDto = AlertDto.builder()
-                        .sensorId(reading.getSensorId())
-                        .value(reading.getValue())
-                        .type(reading.getType())
-                        .locationCode(reading.getLocationCode())
-                        .severity(severity.name())
-                        .timestamp(reading.getTimestamp())
-                        .city(reading.getCity())
-                        .region(reading.getRegion())
-                        .build();
-                sendAlert(alertDto);
-                saveAlert(alertDto); // Save the alert to the database
-                alertsTriggeredCounter.increment();
-            }
-            
-            messagesConsumedCounter.increment(); // Increment after all processing steps (if successful till here)
-            acknowledgment.acknowledge(); // Acknowledge after successful processing
-            LOGGER.debug("Successfully processed and acknowledged sensor reading for ID: {}", reading.getSensorId());
-        } catch (Exception e) {
-            LOGGER.error("Processing failed for sensor reading ID {}. Sending to DLQ.", reading.getSensorId(), e);
-            try {
-                dlqKafkaTemplate.send(SENSOR_DATA_DLQ_TOPIC_NAME, reading.getSensorId().toString(), reading);
-                dlqReroutesCounter.increment();
-                LOGGER.info("Successfully sent message for sensor ID {} to DLQ topic: {}", reading.getSensorId(), SENSOR_DATA_DLQ_TOPIC_NAME);
-            } catch (Exception dlqEx) {
-                LOGGER.error("Failed to send message for sensor ID {} to DLQ topic {}: {}", reading.getSensorId(), SENSOR_DATA_DLQ_TOPIC_NAME, dlqEx.getMessage(), dlqEx);
-            } finally {
-                acknowledgment.acknowledge(); 
-                LOGGER.warn("Acknowledged message for sensor ID {} after DLQ attempt.", reading.getSensorId());
+    public void consumeSensorReadings(List<ConsumerRecord<String, SensorReadingDto>> records, Acknowledgment acknowledgment) {
+        LOGGER.debug("Received batch of {} sensor readings", records.size());
+
+        List<SensorReadingDto> readings = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, SensorReadingDto> record : records) {
+            readings.add(record.value());
+        }
+
+        BitSet rejected;
+        int processedUpTo; // Every record before this index has been fully processed
+        if (processingMode == ProcessingMode.KEY_ORDERED) {
+            rejected = new BitSet(readings.size());
+            processedUpTo = processKeyOrdered(readings, rejected);
+        } else {
+            SensorIngestPipeline.Result result = ingestPipeline.process(readings);
+            rejected = result.rejected();
+            processedUpTo = result.processedUpTo();
+        }
+
+        List<CompletableFuture<?>> dlqSends = new ArrayList<>(rejected.cardinality());
+        for (int i = rejected.nextSetBit(0); i >= 0; i = rejected.nextSetBit(i + 1)) {
+            dlqSends.add(sendToDlq(readings.get(i)));
+        }
+        ingestPipeline.awaitAll(dlqSends);
+        for (CompletableFuture<?> dlqSend : dlqSends) {
+            if (!SensorIngestPipeline.isConfirmed(dlqSend)) {
+                // Committing now would lose the record; leave the batch to the container's error handler
+                throw new IllegalStateException("Failed to re-route " + dlqSends.size() + " sensor readings to "
+                        + SENSOR_DATA_DLQ_TOPIC_NAME + "; batch will be redelivered");
             }
         }
-    }
+        dlqReroutesCounter.increment(dlqSends.size());
+        messagesConsumedCounter.increment(processedUpTo - dlqSends.size());
 
-    @Transactional
-    public void saveSensorData(SensorReadingDto reading) {
-        try {
-            SensorData data = SensorData.builder()
-                    .sensorId(reading.getSensorId())
-                    .timestamp(reading.getTimestamp())
-                    .type(reading.getType())
-                    .value(reading.getValue())
-                    .build();
-            sensorDataRepository.save(data);
-            LOGGER.debug("Sensor reading saved to DB for sensor ID: {}", reading.getSensorId());
-        } catch (Exception e) {
-            LOGGER.error("Error saving sensor reading to DB for sensor ID {}: {}", reading.getSensorId(), e.getMessage(), e);
+        if (processedUpTo == records.size()) {
+            acknowledgment.acknowledge(); // Acknowledge once per batch, after every alert and DLQ send is confirmed
+            LOGGER.debug("Processed and acknowledged batch of {} sensor readings ({} sent to DLQ)", records.size(), dlqSends.size());
+        } else {
+            // Commit up to the first record that was not processed and have the rest redelivered; readings past
+            // it that were already applied are recognised as stored and skipped on redelivery
+            acknowledgment.nack(processedUpTo, redeliveryBackoff);
+            LOGGER.warn("Committed {} of {} sensor readings; the remainder will be redelivered", processedUpTo, records.size());
         }
     }
 
-    @Transactional
-    public void saveAlert(AlertDto alertDto) {
-        try {
-            Alert alert = Alert.builder()
-                    .sensorId(alertDto.getSensorId())
-                    .timestamp(alertDto.getTimestamp())
-                    .type(alertDto.getType())
-                    .value(alertDto.getValue())
-                    .severity(alertDto.getSeverity())
-                    .locationCode(alertDto.getLocationCode())
-                    .city(alertDto.getCity())
-                    .region(alertDto.getRegion())
-                    .build();
-            alertRepository.save(alert);
-            LOGGER.debug("Alert saved to DB for sensor ID: {}", alertDto.getSensorId());
-        } catch (Exception e) {
-            LOGGER.error("Error saving alert to DB for sensor ID {}: {}", alertDto.getSensorId(), e.getMessage(), e);
+    /**
+     * Splits the batch into lanes by sensor ID and runs the lanes on the worker pool. A sensor always maps
+     * to the same lane and each lane is processed in order, so per-sensor ordering is kept.
+     * Marks rejected readings and returns the lowest index any lane did not finish: the first reading of a
+     * lane that failed, or the first one a lane left for redelivery. Returns the batch size when every lane
+     * completed.
+     * <p>
+     * Other lanes may already have applied readings past that index. They are redelivered with the rest,
+     * and the pipeline recognises them as already stored, so they are neither inserted nor aggregated
+     * again (see {@link SensorIngestPipeline#process}).
+     */
+    private int processKeyOrdered(List<SensorReadingDto> readings, BitSet rejected) {
+        List<List<SensorReadingDto>> laneReadings = new ArrayList<>(workers);
+        List<List<Integer>> laneIndexes = new ArrayList<>(workers);
+        for (int lane = 0; lane < workers; lane++) {
+            laneReadings.add(new ArrayList<>());
+            laneIndexes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < readings.size(); i++) {
+            SensorReadingDto reading = readings.get(i);
+            int lane = reading != null && reading.getSensorId() != null
+                    ? Math.floorMod(reading.getSensorId().hashCode(), workers)
+                    : 0;
+            laneReadings.get(lane).add(reading);
+            laneIndexes.get(lane).add(i);
+        }
+
+        List<CompletableFuture<SensorIngestPipeline.Result>> lanes = new ArrayList<>(workers);
+        for (int lane = 0; lane < workers; lane++) {
+            List<SensorReadingDto> chunk = laneReadings.get(lane);
+            lanes.add(chunk.isEmpty()
+                    ? CompletableFuture.completedFuture(new SensorIngestPipeline.Result(new BitSet(), 0))
+                    : CompletableFuture.supplyAsync(() -> ingestPipeline.process(chunk), workerPool));
+        }
+
+        int firstUnprocessed = readings.size();
+        for (int lane = 0; lane < workers; lane++) {
+            List<Integer> indexes = laneIndexes.get(lane);
+            try {
+                SensorIngestPipeline.Result result = lanes.get(lane).join();
+                BitSet laneRejected = result.rejected();
+                for (int i = laneRejected.nextSetBit(0); i >= 0; i = laneRejected.nextSetBit(i + 1)) {
+                    rejected.set(indexes.get(i));
+                }
+                if (result.processedUpTo() < indexes.size()) {
+                    firstUnprocessed = Math.min(firstUnprocessed, indexes.get(result.processedUpTo()));
+                }
+            } catch (CompletionException e) {
+                LOGGER.error("Worker lane {} failed to process {} sensor readings", lane, indexes.size(), e.getCause());
+                firstUnprocessed = Math.min(firstUnprocessed, indexes.get(0));
+            }
         }
+        // Readings from the first unprocessed one onwards are redelivered, so they must not also go to the DLQ
+        rejected.clear(firstUnprocessed, readings.size());
+        return firstUnprocessed;
     }
 
-    private void sendAlert(AlertDto alert) {
+    private CompletableFuture<?> sendToDlq(SensorReadingDto reading) {
+        String key = reading != null && reading.getSensorId() != null ? reading.getSensorId().toString() : null;
         try {
-            alertKafkaTemplate.send(ALERTS_TOPIC_NAME, alert.getSensorId().toString(), alert);
-            LOGGER.warn("ALERT SENT to Kafka topic '{}': Sensor ID {}, Severity {}, Location {}",
-                    ALERTS_TOPIC_NAME, alert.getSensorId(), alert.getSeverity(), alert.getLocationCode());
-        } catch (Exception e) {
-            LOGGER.error("Error sending alert to Kafka for sensor ID {}: {}", alert.getSensorId(), e.getMessage(), e);
-            throw e; // Re-throw to be caught by the main DLQ handler if this sending is critical
+            return dlqKafkaTemplate.send(SENSOR_DATA_DLQ_TOPIC_NAME, key, reading).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    LOGGER.error("Failed to send message for sensor ID {} to DLQ topic {}: {}", key, SENSOR_DATA_DLQ_TOPIC_NAME, ex.getMessage());
+                } else {
+                    LOGGER.info("Successfully sent message for sensor ID {} to DLQ topic: {}", key, SENSOR_DATA_DLQ_TOPIC_NAME);
+                }
+            });
+        } catch (Exception dlqEx) {
+            LOGGER.error("Failed to send message for sensor ID {} to DLQ topic {}: {}", key, SENSOR_DATA_DLQ_TOPIC_NAME, dlqEx.getMessage(), dlqEx);
+            return CompletableFuture.failedFuture(dlqEx);
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,377 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.cache.AnalyticsCacheInvalidation;
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.dto.AlertDto;
+import com.example.airpulse.dto.AnomalyDto;
+import com.example.airpulse.dto.SensorReadingDto;
+import com.example.airpulse.model.Alert;
+import com.example.airpulse.model.Anomaly;
+import com.example.airpulse.rollup.RollupService;
+import com.example.airpulse.service.LatestReadings;
+import com.example.airpulse.service.QuantileSketches;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import com.example.airpulse.service.SlidingWindowAggregates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The ingest steps applied to a chunk of sensor readings: validate and enrich against the
+ * {@link SensorTopologyCache}, persist, evaluate AQI, debounce and publish alerts, persist the confirmed
+ * ones, and feed the {@link AnomalyDetector}. Readings are handled in list order, so callers that keep all
+ * readings of a sensor in one chunk preserve per-sensor ordering.
+ * <p>
+ * Accepted readings are collected into a per-thread {@link ReadingBatch} that is reused for every chunk, so
+ * the per-reading path builds no entities or holders; objects are only created for the (debounced, rare)
+ * alerts and anomalies, and a fixed few per chunk for its result. With the {@code copy} writer the in-memory
+ * steps allocate nothing per reading; the {@code jpa} writer still builds an entity per reading. Per-reading
+ * debug logging is sampled, one reading in {@code airpulse.ingest.log-sample-rate}.
+ */
+@Service
+public class SensorIngestPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SensorIngestPipeline.class);
+
+    private final AqiEvaluator aqiEvaluator;
+    private final AlertDebouncer alertDebouncer;
+    private final RollingAqiWindows rollingWindows;
+    private final SlidingWindowAggregates windowAggregates;
+    private final RollupService rollupService;
+    private final LatestReadings latestReadings;
+    private final QuantileSketches quantileSketches;
+    private final AnalyticsCacheInvalidation cacheInvalidation;
+    private final AlertPublisher alertPublisher;
+    private final AnomalyDetector anomalyDetector;
+    private final AnomalyPublisher anomalyPublisher;
+    private final IngestWriter ingestWriter;
+    private final StoredReadingFilter storedReadingFilter;
+    private final SensorTopologyCache topologyCache;
+    private final long sendTimeoutMs;
+    private final int logSampleRate;
+    private final ThreadLocal<ReadingBatch> batches = ThreadLocal.withInitial(() -> new ReadingBatch(512));
+
+    private final Counter alertsTriggeredCounter;
+    private final Counter duplicatesCounter;
+
+    public SensorIngestPipeline(AqiEvaluator aqiEvaluator,
+                                AlertDebouncer alertDebouncer,
+                                RollingAqiWindows rollingWindows,
+                                SlidingWindowAggregates windowAggregates,
+                                RollupService rollupService,
+                                LatestReadings latestReadings,
+                                QuantileSketches quantileSketches,
+                                AnalyticsCacheInvalidation cacheInvalidation,
+                                AlertPublisher alertPublisher,
+                                AnomalyDetector anomalyDetector,
+                                AnomalyPublisher anomalyPublisher,
+                                IngestWriter ingestWriter,
+                                StoredReadingFilter storedReadingFilter,
+                                SensorTopologyCache topologyCache,
+                                MeterRegistry meterRegistry,
+                                @Value("${airpulse.alerts.send-timeout-ms:30000}") long sendTimeoutMs,
+                                @Value("${airpulse.ingest.log-sample-rate:1000}") int logSampleRate) {
+        this.aqiEvaluator = aqiEvaluator;
+        this.alertDebouncer = alertDebouncer;
+        this.rollingWindows = rollingWindows;
+        this.windowAggregates = windowAggregates;
+        this.rollupService = rollupService;
+        this.latestReadings = latestReadings;
+        this.quantileSketches = quantileSketches;
+        this.cacheInvalidation = cacheInvalidation;
+        this.alertPublisher = alertPublisher;
+        this.anomalyDetector = anomalyDetector;
+        this.anomalyPublisher = anomalyPublisher;
+        this.ingestWriter = ingestWriter;
+        this.storedReadingFilter = storedReadingFilter;
+        this.topologyCache = topologyCache;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.logSampleRate = Math.max(1, logSampleRate);
+
+        this.alertsTriggeredCounter = Counter.builder("airpulse.consumer.alerts.triggered")
+                .description("Number of alerts triggered by the consumer")
+                .register(meterRegistry);
+        this.duplicatesCounter = Counter.builder("airpulse.ingest.duplicates")
+                .description("Number of redelivered readings that were already stored")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Outcome of a chunk: the positions of readings that must be re-routed to the DLQ, and the position up to
+     * which the chunk is done. Readings from {@code processedUpTo} on must be redelivered rather than
+     * committed, as an alert derived from one of them was not confirmed.
+     */
+    public record Result(BitSet rejected, int processedUpTo) {
+    }
+
+    /**
+     * Processes the readings. Returns only once every alert derived from the chunk has been confirmed or
+     * has failed.
+     * <p>
+     * Redelivering readings is safe: a reading that is already stored is found by {@link StoredReadingFilter}
+     * before the write, and is neither written nor added to any aggregate or checked for anomalies again. It
+     * still passes the {@link AlertDebouncer}, which ignores readings it has already seen, so that a reading
+     * whose alert failed raises it again.
+     */
+    public Result process(List<SensorReadingDto> readings) {
+        return process(readings, false);
+    }
+
+    /**
+     * Like {@link #process}, for readings replayed from the DLQ: their alerts are debounced against the
+     * sensors' replay state ({@link AlertDebouncer#onReplayedReading}), as the readings are older than the
+     * live ones the debouncer has seen.
+     */
+    public Result replay(List<SensorReadingDto> readings) {
+        return process(readings, true);
+    }
+
+    private Result process(List<SensorReadingDto> readings, boolean replayed) {
+        ReadingBatch batch = batches.get();
+        List<PendingAlert> pendingAlerts = new ArrayList<>();
+        try {
+            return process(readings, replayed, batch, pendingAlerts);
+        } catch (RuntimeException e) {
+            // The chunk is redelivered and its stored readings come back as duplicates. Forget the debounce
+            // state of sensors whose alert was not confirmed, so the debouncer does not ignore their readings
+            // as seen; sensors whose alert went out keep theirs, so it is not published a second time
+            List<CompletableFuture<?>> sends = new ArrayList<>(pendingAlerts.size());
+            pendingAlerts.forEach(pending -> sends.add(pending.send()));
+            awaitAll(sends);
+            for (PendingAlert pending : pendingAlerts) {
+                if (!isConfirmed(pending.send())) {
+                    resetDebouncer(pending.sensor(), replayed);
+                }
+            }
+            throw e;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private Result process(List<SensorReadingDto> readings, boolean replayed, ReadingBatch batch,
+                           List<PendingAlert> pendingAlerts) {
+        BitSet rejected = new BitSet(readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            SensorReadingDto reading = readings.get(i);
+            if (!isValid(reading)) {
+                LOGGER.error("Invalid sensor reading {}. Sending to DLQ.", reading);
+                rejected.set(i);
+                continue;
+            }
+            int sensor = topologyCache.resolveSensor(reading.getSensorId());
+            SensorTopology topology = topologyCache.current();
+            if (sensor < 0) {
+                LOGGER.error("Unknown sensor ID {}. Sending to DLQ.", reading.getSensorId());
+                rejected.set(i);
+                continue;
+            }
+            if (topology.sensorType(sensor) != reading.getType()) {
+                LOGGER.error("Sensor ID {} reported type {} but is registered as {}. Sending to DLQ.",
+                        reading.getSensorId(), reading.getType(), topology.sensorType(sensor));
+                rejected.set(i);
+                continue;
+            }
+            enrich(reading, topology, sensor);
+            batch.add(i, sensor, reading.getSensorId(), reading.getTimestamp(),
+                    topology.locationType(topology.locationOf(sensor)), reading.getType(), reading.getValue());
+        }
+
+        // Save the raw readings to the database in one batch, leaving out those an earlier delivery already
+        // stored; failed and already stored readings are skipped from here on
+        storedReadingFilter.markStored(batch);
+        ingestWriter.writeReadings(batch);
+        if (!batch.duplicates().isEmpty()) {
+            duplicatesCounter.increment(batch.duplicates().cardinality());
+        }
+
+        BitSet skippedReadings = batch.skipped();
+        windowAggregates.record(batch, skippedReadings);
+        rollupService.record(batch, skippedReadings);
+        latestReadings.record(batch, skippedReadings);
+        quantileSketches.record(batch, skippedReadings);
+        cacheInvalidation.readingsIngested(batch, skippedReadings);
+        if (rollingWindows.isEnabled()) {
+            rollingWindows.record(batch, skippedReadings);
+        }
+        aqiEvaluator.evaluateAqi(batch);
+        List<AnomalyDto> anomalies = new ArrayList<>();
+        List<CompletableFuture<?>> anomalySends = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int row = 0; row < batch.size(); row++) {
+            int index = batch.sourceIndex(row);
+            boolean duplicate = batch.isDuplicate(row);
+            if (batch.isFailed(row)) {
+                LOGGER.error("Persisting sensor reading ID {} failed. Sending to DLQ.", batch.sensorId(row));
+                rejected.set(index);
+                continue;
+            }
+
+            AqiSeverity severity = batch.severity(row);
+            if (LOGGER.isDebugEnabled() && ThreadLocalRandom.current().nextInt(logSampleRate) == 0) {
+                LOGGER.debug("Evaluated AQI {} ({}) for Sensor ID {}", batch.aqi(row), severity, batch.sensorId(row));
+            }
+
+            AqiSeverity alertSeverity = replayed
+                    ? alertDebouncer.onReplayedReading(batch.sensorOrdinal(row), batch.locationType(row), batch.type(row),
+                            batch.aqiInput(row), severity, batch.timestampMillis(row), duplicate)
+                    : alertDebouncer.onReading(batch.sensorOrdinal(row), batch.locationType(row), batch.type(row),
+                            batch.aqiInput(row), severity, batch.timestampMillis(row));
+            if (alertSeverity != null) {
+                SensorReadingDto reading = readings.get(index);
+                AlertDto alertDto = AlertDto.builder()
+                        .sensorId(reading.getSensorId())
+                        .value(reading.getValue())
+                        .type(reading.getType())
+                        .locationCode(reading.getLocationCode())
+                        .severity(alertSeverity.name())
+                        .timestamp(reading.getTimestamp())
+                        .city(reading.getCity())
+                        .region(reading.getRegion())
+                        .build();
+                // Sends are pipelined; confirmation is awaited once for the whole chunk below
+                pendingAlerts.add(new PendingAlert(index, batch.sensorOrdinal(row), alertDto, alertPublisher.publish(alertDto)));
+            }
+
+            if (!duplicate && anomalyDetector.isEnabled()) {
+                AnomalyDetector.Detection detection = anomalyDetector.onReading(batch.sensorOrdinal(row), batch.value(row), now);
+                if (detection != null) {
+                    SensorReadingDto reading = readings.get(index);
+                    AnomalyDto anomalyDto = AnomalyDto.builder()
+                            .sensorId(reading.getSensorId())
+                            .type(reading.getType())
+                            .kind(detection.kind().name())
+                            .value(reading.getValue())
+                            .expected(detection.expected())
+                            .score(detection.score())
+                            .locationCode(reading.getLocationCode())
+                            .timestamp(reading.getTimestamp())
+                            .city(reading.getCity())
+                            .region(reading.getRegion())
+                            .build();
+                    anomalies.add(anomalyDto);
+                    anomalySends.add(anomalyPublisher.publish(anomalyDto));
+                }
+            }
+        }
+
+        List<Alert> alerts = new ArrayList<>(pendingAlerts.size());
+        List<CompletableFuture<?>> sends = new ArrayList<>(anomalySends);
+        pendingAlerts.forEach(pending -> sends.add(pending.send()));
+        awaitAll(sends);
+        int processedUpTo = readings.size();
+        for (PendingAlert pending : pendingAlerts) {
+            if (isConfirmed(pending.send())) {
+                alerts.add(toAlert(pending.alert()));
+                alertsTriggeredCounter.increment();
+            } else {
+                // The reading is stored, so it is redelivered rather than re-routed to the DLQ. Forgetting the
+                // sensor's state lets the redelivered reading alert again instead of being ignored as seen
+                resetDebouncer(pending.sensor(), replayed);
+                processedUpTo = Math.min(processedUpTo, pending.index());
+            }
+        }
+        // Readings from there on are redelivered, so they must not also go to the DLQ
+        rejected.clear(processedUpTo, readings.size());
+
+        // Alerts were already published; a failed alert row is logged by the writer but does not re-route the reading
+        ingestWriter.writeAlerts(alerts);
+        cacheInvalidation.alertsRaised(alerts);
+
+        // Anomalies are informational: they are stored even if their send failed, and never re-route a reading
+        if (!anomalies.isEmpty()) {
+            ingestWriter.writeAnomalies(anomalies.stream().map(this::toAnomaly).toList());
+        }
+        return new Result(rejected, processedUpTo);
+    }
+
+    private void resetDebouncer(int sensor, boolean replayed) {
+        if (replayed) {
+            alertDebouncer.resetReplayed(sensor);
+        } else {
+            alertDebouncer.reset(sensor);
+        }
+    }
+
+    /**
+     * Waits up to {@code airpulse.alerts.send-timeout-ms} for the sends. Outcomes are inspected
+     * individually with {@link #isConfirmed}; sends still running after the timeout count as failed.
+     */
+    public void awaitAll(List<? extends CompletableFuture<?>> sends) {
+        if (sends.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.warn("Not all of {} Kafka sends completed successfully: {}", sends.size(), e.getMessage());
+        }
+    }
+
+    public static boolean isConfirmed(CompletableFuture<?> send) {
+        return send.isDone() && !send.isCompletedExceptionally();
+    }
+
+    private boolean isValid(SensorReadingDto reading) {
+        return reading != null
+                && reading.getSensorId() != null
+                && reading.getTimestamp() != null
+                && reading.getType() != null
+                && reading.getValue() != null;
+    }
+
+    // Replaces the producer-supplied location strings with the canonical, interned names from the topology
+    private void enrich(SensorReadingDto reading, SensorTopology topology, int sensor) {
+        int location = topology.locationOf(sensor);
+        int region = topology.regionOfLocation(location);
+        reading.setLocationCode(topology.locationCode(location));
+        reading.setRegion(topology.regionName(region));
+        reading.setCity(topology.cityName(topology.cityOfRegion(region)));
+    }
+
+    private Alert toAlert(AlertDto alertDto) {
+        return Alert.builder()
+                .sensorId(alertDto.getSensorId())
+                .timestamp(alertDto.getTimestamp())
+                .type(alertDto.getType())
+                .value(alertDto.getValue())
+                .severity(alertDto.getSeverity())
+                .locationCode(alertDto.getLocationCode())
+                .city(alertDto.getCity())
+                .region(alertDto.getRegion())
+                .build();
+    }
+
+    private Anomaly toAnomaly(AnomalyDto anomalyDto) {
+        return Anomaly.builder()
+                .sensorId(anomalyDto.getSensorId())
+                .type(anomalyDto.getType())
+                .kind(anomalyDto.getKind())
+                .value(anomalyDto.getValue())
+                .expected(anomalyDto.getExpected())
+                .score(anomalyDto.getScore())
+                .locationCode(anomalyDto.getLocationCode())
+                .timestamp(anomalyDto.getTimestamp())
+                .city(anomalyDto.getCity())
+                .region(anomalyDto.getRegion())
+                .build();
+    }
+
+    private record PendingAlert(int index, int sensor, AlertDto alert, CompletableFuture<?> send) {
+    }
+}
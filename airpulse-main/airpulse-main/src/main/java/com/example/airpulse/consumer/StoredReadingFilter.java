@@ -0,0 +1,69 @@
+package com.example.airpulse.consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * Finds the readings of a batch that are already in {@code sensor_data}, before the batch is written.
+ * <p>
+ * A reading is redelivered when an alert derived from it could not be confirmed or a lane of its batch
+ * failed, after it was stored. Catching that up front keeps the write itself free of primary key
+ * violations: a single stored reading would otherwise fail a whole COPY, including every other batch
+ * group-committed with it, and send them all through the row-by-row JPA fallback just when the consumer
+ * is catching up.
+ * <p>
+ * One query per batch joins the batch's {@code (sensor_id, timestamp)} pairs against
+ * {@code idx_sensor_data_sensor_timestamp}, bounded by the batch's time range so only the partitions it
+ * spans are probed. The deterministic reading ids (see {@link com.example.airpulse.model.ReadingUuidGenerator})
+ * stay as the backstop for a reading stored concurrently by another consumer after the probe.
+ */
+@Component
+public class StoredReadingFilter {
+
+    private static final String STORED_SQL = "SELECT r.n - 1 FROM unnest(?::uuid[], ?::timestamp[]) "
+            + "WITH ORDINALITY AS r(sensor_id, \"timestamp\", n) "
+            + "WHERE EXISTS (SELECT 1 FROM sensor_data sd WHERE sd.sensor_id = r.sensor_id "
+            + "AND sd.\"timestamp\" = r.\"timestamp\" AND sd.\"timestamp\" >= ? AND sd.\"timestamp\" <= ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StoredReadingFilter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Marks the rows of the batch that are already stored with {@link ReadingBatch#markDuplicate}. */
+    public void markStored(ReadingBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        UUID[] sensorIds = new UUID[batch.size()];
+        Timestamp[] timestamps = new Timestamp[batch.size()];
+        LocalDateTime earliest = null;
+        LocalDateTime latest = null;
+        for (int row = 0; row < batch.size(); row++) {
+            // Stored with microsecond precision; the COPY writer truncates
+            LocalDateTime timestamp = batch.timestamp(row).truncatedTo(ChronoUnit.MICROS);
+            sensorIds[row] = batch.sensorId(row);
+            timestamps[row] = Timestamp.valueOf(timestamp);
+            earliest = earliest == null || timestamp.isBefore(earliest) ? timestamp : earliest;
+            latest = latest == null || timestamp.isAfter(latest) ? timestamp : latest;
+        }
+        Timestamp from = Timestamp.valueOf(earliest);
+        Timestamp to = Timestamp.valueOf(latest);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(STORED_SQL);
+            statement.setArray(1, connection.createArrayOf("uuid", sensorIds));
+            statement.setArray(2, connection.createArrayOf("timestamp", timestamps));
+            statement.setTimestamp(3, from);
+            statement.setTimestamp(4, to);
+            return statement;
+        }, (RowCallbackHandler) row -> batch.markDuplicate(row.getInt(1)));
+    }
+}
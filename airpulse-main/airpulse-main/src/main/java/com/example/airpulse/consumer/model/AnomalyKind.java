@@ -0,0 +1,7 @@
+package com.example.airpulse.consumer.model;
+
+public enum AnomalyKind {
+    SPIKE, // Reading far outside the sensor's recent mean, in standard deviations
+    FLAT_LINE, // Identical readings for too long; a stuck sensor
+    DRIFT // Recent mean moved away from the long-term baseline
+}
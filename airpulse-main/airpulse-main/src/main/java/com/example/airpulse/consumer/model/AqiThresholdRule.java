@@ -0,0 +1,18 @@
+package com.example.airpulse.consumer.model;
+
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.SensorType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AqiThresholdRule {
+    private LocationType locationType; // null applies the rule to every location type
+    private SensorType sensorType;
+    private double[] bounds; // Upper concentration bound of each AqiSeverity band, GOOD .. HAZARDOUS
+}
@@ -0,0 +1,6 @@
+package com.example.airpulse.consumer.model;
+
+public enum ProcessingMode {
+    SERIAL,      // Each listener batch is processed on the consumer thread
+    KEY_ORDERED  // Each batch is fanned out to worker lanes keyed by sensor ID
+}
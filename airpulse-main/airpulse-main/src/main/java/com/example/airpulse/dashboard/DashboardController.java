@@ -1,27 +1,40 @@
 package com.example.airpulse.dashboard;
 
+import com.example.airpulse.dashboard.dto.TimeSeriesResponseDto;
 import com.example.airpulse.model.Alert;
 import com.example.airpulse.model.SensorData;
+import com.example.airpulse.model.SensorType;
 import com.example.airpulse.repository.AlertRepository;
 import com.example.airpulse.repository.SensorDataRepository;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api")
 public class DashboardController {
 
+    private static final int MAX_POINTS = 10_000;
+
     private final SensorDataRepository sensorDataRepository;
     private final AlertRepository alertRepository;
+    private final TimeSeriesService timeSeriesService;
 
-    public DashboardController(SensorDataRepository sensorDataRepository, AlertRepository alertRepository) {
+    public DashboardController(SensorDataRepository sensorDataRepository,
+                               AlertRepository alertRepository,
+                               TimeSeriesService timeSeriesService) {
         this.sensorDataRepository = sensorDataRepository;
         this.alertRepository = alertRepository;
+        this.timeSeriesService = timeSeriesService;
     }
 
     @GetMapping("/readings")
@@ -39,4 +52,34 @@ public class DashboardController {
         List<Alert> latestAlerts = alertRepository.findAllByOrderByTimestampDesc(pageRequest);
         return ResponseEntity.ok(latestAlerts);
     }
-} 
\ No newline at end of file
+
+    // Exactly one of sensor, location or region; location and region series need a type
+    @GetMapping("/timeseries")
+    public ResponseEntity<TimeSeriesResponseDto> getTimeSeries(
+            @RequestParam(required = false) UUID sensor,
+            @RequestParam(required = false) UUID location,
+            @RequestParam(required = false) String region,
+            @RequestParam(required = false) SensorType type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "500") int points,
+            @RequestParam(defaultValue = "LTTB") TimeSeriesService.Method method) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusHours(24);
+        int scopes = (sensor != null ? 1 : 0) + (location != null ? 1 : 0) + (region != null ? 1 : 0);
+        if (scopes != 1 || (sensor == null && type == null) || !start.isBefore(end)
+                || points < 3 || points > MAX_POINTS) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Optional<TimeSeriesResponseDto> series;
+        if (sensor != null) {
+            series = timeSeriesService.ofSensor(sensor, start, end, points, method);
+        } else if (location != null) {
+            series = timeSeriesService.ofLocation(location, type, start, end, points, method);
+        } else {
+            series = timeSeriesService.ofRegion(region, type, start, end, points, method);
+        }
+        return series.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.airpulse.dashboard;
+
+import java.util.Arrays;
+
+/**
+ * Streaming, shape-preserving downsampling of a time series over {@code [from, to)}. Readings are folded
+ * one at a time, in any order, into equal-width time buckets that each keep their first, last, minimum and
+ * maximum reading (M4 aggregation), so memory is bounded by the bucket count and not by the number of rows.
+ * <p>
+ * The kept points are then either returned as they are, per bucket the minimum and maximum in time order
+ * ({@link #minMax}), or reduced further with Largest-Triangle-Three-Buckets ({@link #lttb}). M4 keeps every
+ * extreme LTTB could pick, so running LTTB on them rather than on all rows changes little.
+ */
+final class Downsampler {
+
+    private final long from;
+    private final long span;
+    private final int buckets;
+
+    private final long[] firstTimes;
+    private final double[] firstValues;
+    private final long[] lastTimes;
+    private final double[] lastValues;
+    private final long[] minTimes;
+    private final double[] minValues;
+    private final long[] maxTimes;
+    private final double[] maxValues;
+
+    private long readings;
+
+    Downsampler(long fromMillis, long toMillis, int buckets) {
+        this.from = fromMillis;
+        this.span = Math.max(1, toMillis - fromMillis);
+        this.buckets = buckets;
+        this.firstTimes = new long[buckets];
+        this.firstValues = new double[buckets];
+        this.lastTimes = new long[buckets];
+        this.lastValues = new double[buckets];
+        this.minTimes = new long[buckets];
+        this.minValues = new double[buckets];
+        this.maxTimes = new long[buckets];
+        this.maxValues = new double[buckets];
+        Arrays.fill(firstTimes, Long.MAX_VALUE);
+        Arrays.fill(lastTimes, Long.MIN_VALUE);
+        Arrays.fill(minValues, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxValues, Double.NEGATIVE_INFINITY);
+    }
+
+    void add(long time, double value) {
+        long offset = time - from;
+        if (offset < 0 || offset >= span) {
+            return;
+        }
+        int bucket = (int) (offset * buckets / span);
+        if (time < firstTimes[bucket]) {
+            firstTimes[bucket] = time;
+            firstValues[bucket] = value;
+        }
+        if (time >= lastTimes[bucket]) {
+            lastTimes[bucket] = time;
+            lastValues[bucket] = value;
+        }
+        if (value < minValues[bucket]) {
+            minTimes[bucket] = time;
+            minValues[bucket] = value;
+        }
+        if (value > maxValues[bucket]) {
+            maxTimes[bucket] = time;
+            maxValues[bucket] = value;
+        }
+        readings++;
+    }
+
+    long readings() {
+        return readings;
+    }
+
+    /** Per non-empty bucket its minimum and maximum (one point if they coincide), in time order. */
+    Series minMax() {
+        Series series = new Series(2 * buckets);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (firstTimes[bucket] == Long.MAX_VALUE) {
+                continue;
+            }
+            boolean minFirst = minTimes[bucket] <= maxTimes[bucket];
+            series.add(minFirst ? minTimes[bucket] : maxTimes[bucket], minFirst ? minValues[bucket] : maxValues[bucket]);
+            if (minTimes[bucket] != maxTimes[bucket]) {
+                series.add(minFirst ? maxTimes[bucket] : minTimes[bucket], minFirst ? maxValues[bucket] : minValues[bucket]);
+            }
+        }
+        return series;
+    }
+
+    /** The bucket points reduced to at most {@code threshold} points with Largest-Triangle-Three-Buckets. */
+    Series lttb(int threshold) {
+        Series candidates = m4();
+        int n = candidates.size;
+        if (threshold >= n || threshold < 3) {
+            return candidates;
+        }
+        long[] times = candidates.times;
+        double[] values = candidates.values;
+        Series sampled = new Series(threshold);
+        sampled.add(times[0], values[0]);
+
+        // Points between the fixed first and last are split into threshold - 2 ranges of (almost) equal size
+        double every = (double) (n - 2) / (threshold - 2);
+        int selected = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+
+            // The third vertex is the average of the next range (or the last point)
+            double avgTime = 0;
+            double avgValue = 0;
+            for (int j = rangeEnd; j < nextEnd; j++) {
+                avgTime += times[j];
+                avgValue += values[j];
+            }
+            int nextCount = nextEnd - rangeEnd;
+            avgTime /= nextCount;
+            avgValue /= nextCount;
+
+            double maxArea = -1;
+            int maxIndex = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((times[selected] - avgTime) * (values[j] - values[selected])
+                        - (times[selected] - times[j]) * (avgValue - values[selected]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = j;
+                }
+            }
+            sampled.add(times[maxIndex], values[maxIndex]);
+            selected = maxIndex;
+        }
+        sampled.add(times[n - 1], values[n - 1]);
+        return sampled;
+    }
+
+    // First, minimum, maximum and last point of every non-empty bucket, deduplicated and in time order
+    private Series m4() {
+        Series series = new Series(4 * buckets);
+        long[] times = new long[4];
+        double[] values = new double[4];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (firstTimes[bucket] == Long.MAX_VALUE) {
+                continue;
+            }
+            times[0] = firstTimes[bucket];
+            values[0] = firstValues[bucket];
+            times[1] = minTimes[bucket];
+            values[1] = minValues[bucket];
+            times[2] = maxTimes[bucket];
+            values[2] = maxValues[bucket];
+            times[3] = lastTimes[bucket];
+            values[3] = lastValues[bucket];
+            // Insertion sort of four points by time
+            for (int i = 1; i < 4; i++) {
+                for (int j = i; j > 0 && times[j] < times[j - 1]; j--) {
+                    long time = times[j];
+                    times[j] = times[j - 1];
+                    times[j - 1] = time;
+                    double value = values[j];
+                    values[j] = values[j - 1];
+                    values[j - 1] = value;
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                if (i == 0 || times[i] != times[i - 1] || values[i] != values[i - 1]) {
+                    series.add(times[i], values[i]);
+                }
+            }
+        }
+        return series;
+    }
+
+    /** Points in time order, as parallel arrays. */
+    static final class Series {
+        private final long[] times;
+        private final double[] values;
+        private int size;
+
+        private Series(int capacity) {
+            times = new long[capacity];
+            values = new double[capacity];
+        }
+
+        private void add(long time, double value) {
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long time(int index) {
+            return times[index];
+        }
+
+        double value(int index) {
+            return values[index];
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.airpulse.dashboard;
+
+import com.example.airpulse.dashboard.dto.TimeSeriesPointDto;
+import com.example.airpulse.dashboard.dto.TimeSeriesResponseDto;
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+
+/**
+ * Downsampled time series of one sensor, or of all sensors of a type in a location or region, for charting.
+ * The readings in range are streamed from Postgres through a server-side cursor straight into a
+ * {@link Downsampler}, unsorted, so neither the rows nor a sort of them are ever held in memory and at most
+ * the requested number of points is returned however long the range is. Readings of several sensors form
+ * one series.
+ */
+@Service
+public class TimeSeriesService {
+
+    public enum Method { LTTB, MINMAX }
+
+    private static final String READINGS_SQL = "SELECT \"timestamp\", \"value\" FROM sensor_data "
+            + "WHERE sensor_id = ANY (?) AND \"timestamp\" >= ? AND \"timestamp\" < ?";
+    private static final int FETCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SensorTopologyCache topologyCache;
+    private final Timer streamTimer;
+
+    public TimeSeriesService(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             SensorTopologyCache topologyCache,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The PostgreSQL driver only honours the fetch size, and streams, inside a transaction
+        this.transactionTemplate.setReadOnly(true);
+        this.topologyCache = topologyCache;
+
+        this.streamTimer = Timer.builder("airpulse.timeseries.stream")
+                .description("Time spent streaming and downsampling the readings of a time-series request")
+                .register(meterRegistry);
+    }
+
+    public Optional<TimeSeriesResponseDto> ofSensor(UUID sensorId, LocalDateTime from, LocalDateTime to,
+                                                    int points, Method method) {
+        SensorTopology topology = topologyCache.current();
+        int sensor = topology.sensorOrdinal(sensorId);
+        if (sensor < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(timeSeries("sensor", sensorId.toString(), topology.sensorType(sensor),
+                new UUID[]{sensorId}, from, to, points, method));
+    }
+
+    public Optional<TimeSeriesResponseDto> ofLocation(UUID locationId, SensorType type, LocalDateTime from,
+                                                      LocalDateTime to, int points, Method method) {
+        SensorTopology topology = topologyCache.current();
+        int location = topology.locationOrdinal(locationId);
+        if (location < 0) {
+            return Optional.empty();
+        }
+        UUID[] sensors = sensorsOf(topology, type, sensor -> topology.locationOf(sensor) == location);
+        return Optional.of(timeSeries("location", locationId.toString(), type, sensors, from, to, points, method));
+    }
+
+    public Optional<TimeSeriesResponseDto> ofRegion(String regionName, SensorType type, LocalDateTime from,
+                                                    LocalDateTime to, int points, Method method) {
+        SensorTopology topology = topologyCache.current();
+        int region = topology.regionOrdinal(regionName);
+        if (region < 0) {
+            return Optional.empty();
+        }
+        UUID[] sensors = sensorsOf(topology, type, sensor -> topology.regionOf(sensor) == region);
+        return Optional.of(timeSeries("region", regionName, type, sensors, from, to, points, method));
+    }
+
+    private TimeSeriesResponseDto timeSeries(String scope, String id, SensorType type, UUID[] sensors,
+                                             LocalDateTime from, LocalDateTime to, int points, Method method) {
+        // Min/max emits up to two points per bucket; LTTB picks from four candidates per bucket
+        int buckets = method == Method.MINMAX ? Math.max(1, points / 2) : points;
+        Downsampler downsampler = new Downsampler(toEpochMillis(from), toEpochMillis(to), buckets);
+        if (sensors.length > 0) {
+            streamTimer.record(() -> transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(READINGS_SQL);
+                statement.setFetchSize(FETCH_SIZE);
+                statement.setArray(1, connection.createArrayOf("uuid", sensors));
+                statement.setTimestamp(2, Timestamp.valueOf(from));
+                statement.setTimestamp(3, Timestamp.valueOf(to));
+                return statement;
+            }, row -> {
+                downsampler.add(toEpochMillis(row.getTimestamp(1).toLocalDateTime()), row.getDouble(2));
+            })));
+        }
+
+        Downsampler.Series series = method == Method.MINMAX ? downsampler.minMax() : downsampler.lttb(points);
+        List<TimeSeriesPointDto> result = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            result.add(TimeSeriesPointDto.builder()
+                    .timestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(series.time(i), 1000),
+                            (int) Math.floorMod(series.time(i), 1000) * 1_000_000, ZoneOffset.UTC))
+                    .value(series.value(i))
+                    .build());
+        }
+        return TimeSeriesResponseDto.builder()
+                .scope(scope)
+                .id(id)
+                .sensorType(type.name())
+                .from(from)
+                .to(to)
+                .method(method.name())
+                .readings(downsampler.readings())
+                .points(result)
+                .build();
+    }
+
+    private static UUID[] sensorsOf(SensorTopology topology, SensorType type, IntPredicate inScope) {
+        List<UUID> sensors = new ArrayList<>();
+        for (int sensor = 0; sensor < topology.sensorCount(); sensor++) {
+            if (topology.sensorType(sensor) == type && inScope.test(sensor)) {
+                sensors.add(topology.sensorId(sensor));
+            }
+        }
+        return sensors.toArray(new UUID[0]);
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.airpulse.dashboard.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesPointDto {
+    private LocalDateTime timestamp;
+    private double value;
+}
@@ -0,0 +1,24 @@
+package com.example.airpulse.dashboard.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeSeriesResponseDto {
+    private String scope; // sensor, location or region
+    private String id; // Sensor or location ID, or region name
+    private String sensorType;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String method;
+    private long readings; // Raw readings in the range, before downsampling
+    private List<TimeSeriesPointDto> points;
+}
@@ -0,0 +1,33 @@
+package com.example.airpulse.dlq;
+
+import com.example.airpulse.dlq.dto.DlqReplayStatusDto;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/dlq")
+public class DlqReplayController {
+
+    private final DlqReplayService dlqReplayService;
+
+    public DlqReplayController(DlqReplayService dlqReplayService) {
+        this.dlqReplayService = dlqReplayService;
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<DlqReplayStatusDto> startReplay() {
+        boolean started = dlqReplayService.startReplay();
+        // 409 if a run is already in progress; the body shows its progress either way
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT)
+                .body(dlqReplayService.getStatus());
+    }
+
+    @GetMapping("/replay")
+    public ResponseEntity<DlqReplayStatusDto> getReplayStatus() {
+        return ResponseEntity.ok(dlqReplayService.getStatus());
+    }
+}
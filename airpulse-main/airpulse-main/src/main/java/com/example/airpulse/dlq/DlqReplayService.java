@@ -0,0 +1,251 @@
+package com.example.airpulse.dlq;
+
+import com.example.airpulse.consumer.SensorIngestPipeline;
+import com.example.airpulse.dlq.dto.DlqReplayStatusDto;
+import com.example.airpulse.dto.SensorReadingDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-runs messages from {@code sensor-data-dlq} through the normal {@link SensorIngestPipeline}, whose
+ * alerts for them are debounced separately from the live readings (see {@link SensorIngestPipeline#replay}).
+ * <p>
+ * A run is started from the admin endpoint or by {@code airpulse.dlq.replay.cron} and drains the DLQ up to
+ * the end offsets seen when it started, so messages it re-queues are left for the next run. Throughput is
+ * capped by a {@link TokenBucket} ({@code rate-per-second}, {@code burst}) so that draining a large backlog
+ * after an outage does not starve live ingest of DB connections and broker capacity.
+ * <p>
+ * The number of replays a message has been through is carried in the {@value #RETRY_COUNT_HEADER} header.
+ * A message that fails again is sent back to the DLQ with the count incremented, or to
+ * {@code sensor-data-parking} once it reaches {@code max-retries}.
+ */
+@Service
+public class DlqReplayService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DlqReplayService.class);
+    public static final String RETRY_COUNT_HEADER = "airpulse-dlq-retries";
+    private static final String SENSOR_DATA_DLQ_TOPIC_NAME = "sensor-data-dlq";
+    private static final String SENSOR_DATA_PARKING_TOPIC_NAME = "sensor-data-parking";
+    private static final String REPLAY_GROUP_ID = "airpulse-dlq-replay";
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<String, SensorReadingDto> consumerFactory;
+    private final KafkaTemplate<String, SensorReadingDto> dlqKafkaTemplate;
+    private final SensorIngestPipeline ingestPipeline;
+    private final double ratePerSecond;
+    private final int burst;
+    private final int maxRetries;
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("airpulse-dlq-replay-"));
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong requeued = new AtomicLong();
+    private final AtomicLong parked = new AtomicLong();
+    private volatile LocalDateTime lastStartedAt;
+    private volatile LocalDateTime lastFinishedAt;
+    private volatile String lastError;
+
+    private final Counter replayedCounter;
+    private final Counter parkedCounter;
+
+    public DlqReplayService(ConsumerFactory<String, SensorReadingDto> consumerFactory,
+                            KafkaTemplate<String, SensorReadingDto> dlqKafkaTemplate,
+                            SensorIngestPipeline ingestPipeline,
+                            MeterRegistry meterRegistry,
+                            @Value("${airpulse.dlq.replay.rate-per-second:200}") double ratePerSecond,
+                            @Value("${airpulse.dlq.replay.burst:500}") int burst,
+                            @Value("${airpulse.dlq.replay.max-retries:3}") int maxRetries) {
+        this.consumerFactory = consumerFactory;
+        this.dlqKafkaTemplate = dlqKafkaTemplate;
+        this.ingestPipeline = ingestPipeline;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxRetries = maxRetries;
+
+        this.replayedCounter = Counter.builder("airpulse.dlq.replay.replayed")
+                .description("Number of DLQ messages re-run through the ingest pipeline")
+                .register(meterRegistry);
+        this.parkedCounter = Counter.builder("airpulse.dlq.replay.parked")
+                .description("Number of DLQ messages moved to the parking topic")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        replayExecutor.shutdownNow();
+    }
+
+    @Scheduled(cron = "${airpulse.dlq.replay.cron:-}")
+    public void scheduledReplay() {
+        startReplay();
+    }
+
+    /** Starts a replay run in the background. Returns false if a run is already in progress. */
+    public boolean startReplay() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        replayed.set(0);
+        succeeded.set(0);
+        requeued.set(0);
+        parked.set(0);
+        lastError = null;
+        lastStartedAt = LocalDateTime.now();
+        replayExecutor.execute(() -> {
+            try {
+                replay();
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                LOGGER.error("DLQ replay failed: {}", e.getMessage(), e);
+            } finally {
+                lastFinishedAt = LocalDateTime.now();
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public DlqReplayStatusDto getStatus() {
+        return DlqReplayStatusDto.builder()
+                .running(running.get())
+                .lastStartedAt(lastStartedAt)
+                .lastFinishedAt(lastFinishedAt)
+                .replayed(replayed.get())
+                .succeeded(succeeded.get())
+                .requeued(requeued.get())
+                .parked(parked.get())
+                .lastError(lastError)
+                .build();
+    }
+
+    private void replay() throws InterruptedException {
+        TokenBucket rateLimiter = new TokenBucket(ratePerSecond, burst);
+        try (Consumer<String, SensorReadingDto> consumer = consumerFactory.createConsumer(REPLAY_GROUP_ID, "dlq-replay", null)) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo info : consumer.partitionsFor(SENSOR_DATA_DLQ_TOPIC_NAME)) {
+                partitions.add(new TopicPartition(info.topic(), info.partition()));
+            }
+            consumer.assign(partitions);
+            // Only drain what was in the DLQ when the run started; re-queued messages wait for the next run
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            LOGGER.info("Starting DLQ replay of {} partitions (end offsets {})", partitions.size(), endOffsets);
+
+            while (!Thread.currentThread().isInterrupted() && !drained(consumer, endOffsets)) {
+                ConsumerRecords<String, SensorReadingDto> polled = consumer.poll(POLL_TIMEOUT);
+                List<ConsumerRecord<String, SensorReadingDto>> records = new ArrayList<>(polled.count());
+                Map<TopicPartition, OffsetAndMetadata> commitOffsets = new HashMap<>();
+                for (ConsumerRecord<String, SensorReadingDto> record : polled) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() < endOffsets.getOrDefault(partition, 0L)) {
+                        records.add(record);
+                        commitOffsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                    }
+                }
+                if (records.isEmpty()) {
+                    continue;
+                }
+
+                rateLimiter.acquire(records.size());
+                replayBatch(records);
+                consumer.commitSync(commitOffsets);
+            }
+        }
+        LOGGER.info("DLQ replay finished: {} replayed, {} succeeded, {} re-queued, {} parked",
+                replayed.get(), succeeded.get(), requeued.get(), parked.get());
+    }
+
+    private void replayBatch(List<ConsumerRecord<String, SensorReadingDto>> records) {
+        List<SensorReadingDto> readings = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, SensorReadingDto> record : records) {
+            readings.add(record.value());
+        }
+        SensorIngestPipeline.Result result = ingestPipeline.replay(readings);
+        if (result.processedUpTo() < readings.size()) {
+            // An alert was not confirmed; stop before committing so the batch is replayed again by the next run.
+            // Readings stored by this attempt are recognised as duplicates then
+            throw new IllegalStateException("Failed to publish alerts for replayed DLQ messages");
+        }
+        BitSet rejected = result.rejected();
+
+        List<CompletableFuture<?>> sends = new ArrayList<>(rejected.cardinality());
+        for (int i = rejected.nextSetBit(0); i >= 0; i = rejected.nextSetBit(i + 1)) {
+            ConsumerRecord<String, SensorReadingDto> record = records.get(i);
+            int retries = retryCount(record) + 1;
+            String topic = retries >= maxRetries ? SENSOR_DATA_PARKING_TOPIC_NAME : SENSOR_DATA_DLQ_TOPIC_NAME;
+            ProducerRecord<String, SensorReadingDto> retry = new ProducerRecord<>(topic, record.key(), record.value());
+            retry.headers().add(RETRY_COUNT_HEADER, Integer.toString(retries).getBytes(StandardCharsets.UTF_8));
+            sends.add(dlqKafkaTemplate.send(retry));
+            if (topic.equals(SENSOR_DATA_PARKING_TOPIC_NAME)) {
+                parked.incrementAndGet();
+                parkedCounter.increment();
+                LOGGER.warn("Sensor reading for key {} failed {} replays; moved to {}", record.key(), retries, topic);
+            } else {
+                requeued.incrementAndGet();
+            }
+        }
+        ingestPipeline.awaitAll(sends);
+        for (CompletableFuture<?> send : sends) {
+            if (!SensorIngestPipeline.isConfirmed(send)) {
+                // Stop before committing so the batch is replayed again by the next run
+                throw new IllegalStateException("Failed to re-queue " + sends.size() + " replayed DLQ messages");
+            }
+        }
+
+        replayed.addAndGet(records.size());
+        succeeded.addAndGet(records.size() - rejected.cardinality());
+        replayedCounter.increment(records.size());
+    }
+
+    private static boolean drained(Consumer<String, SensorReadingDto> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int retryCount(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(RETRY_COUNT_HEADER);
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.airpulse.dlq;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens refill continuously at {@code ratePerSecond} up to {@code burst};
+ * {@link #acquire(int)} blocks until enough tokens are available.
+ */
+public class TokenBucket {
+
+    private final double ratePerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /** Takes {@code permits} tokens, waiting for them to refill if needed. Requests above the burst size are taken in steps. */
+    public void acquire(int permits) throws InterruptedException {
+        int remaining = permits;
+        while (remaining > 0) {
+            int step = (int) Math.min(remaining, burst);
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= step) {
+                    tokens -= step;
+                    remaining -= step;
+                    continue;
+                }
+                waitNanos = (long) Math.ceil((step - tokens) / ratePerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * ratePerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.airpulse.dlq.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DlqReplayStatusDto {
+    private boolean running;
+    private LocalDateTime lastStartedAt;
+    private LocalDateTime lastFinishedAt;
+    private long replayed;  // Messages re-run through the ingest pipeline in the last run
+    private long succeeded;
+    private long requeued;  // Failed again and sent back to the DLQ with an incremented retry count
+    private long parked;    // Exceeded the retry limit and moved to the parking topic
+    private String lastError;
+}
@@ -0,0 +1,27 @@
+package com.example.airpulse.dto;
+
+import com.example.airpulse.model.SensorType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnomalyDto {
+    private UUID sensorId;
+    private SensorType type;
+    private String kind; // SPIKE, FLAT_LINE or DRIFT
+    private Double value;
+    private Double expected; // Recent mean for spikes, long-term baseline for drift, the repeated value for flat lines
+    private Double score; // Deviation in standard deviations, or the number of identical readings for flat lines
+    private String locationCode;
+    private LocalDateTime timestamp;
+    private String city;
+    private String region;
+}
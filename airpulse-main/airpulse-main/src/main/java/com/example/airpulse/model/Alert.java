@@ -18,7 +18,7 @@ import java.util.UUID;
 public class Alert {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @TimeOrderedUuid
     private UUID id;
 
     @Column(name = "sensor_id", nullable = false)
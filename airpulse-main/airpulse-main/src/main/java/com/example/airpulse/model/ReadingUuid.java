@@ -0,0 +1,20 @@
+package com.example.airpulse.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Generates the annotated {@link java.util.UUID} id of a {@link SensorData} row from the reading itself with
+ * {@link ReadingUuidGenerator}, so storing the same reading twice collides on the primary key.
+ */
+@IdGeneratorType(ReadingUuidGenerator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface ReadingUuid {
+}
@@ -0,0 +1,59 @@
+package com.example.airpulse.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Version 7 UUIDs derived from a reading's sensor and timestamp rather than from the clock and a random
+ * source: the reading's millisecond timestamp, the version, its microseconds within the millisecond, and
+ * 62 bits hashed from the sensor id and the remaining nanoseconds. A redelivered reading therefore gets the
+ * id it was first stored with, and its insert fails on the primary key instead of adding a second row.
+ * Redeliveries are normally filtered out before the write by
+ * {@link com.example.airpulse.consumer.StoredReadingFilter}; the key catches a reading stored concurrently.
+ * <p>
+ * Ids still sort by reading time, so inserts stay at the right edge of the primary key index as with
+ * {@link TimeOrderedUuidGenerator}. Two readings of different sensors with the same timestamp collide only
+ * if 62 hashed bits do.
+ * <p>
+ * Also used directly by {@link com.example.airpulse.consumer.CopyIngestWriter} through the static methods.
+ */
+public class ReadingUuidGenerator implements IdentifierGenerator {
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_MASK = 0xC000L << 48;
+    private static final long VARIANT_RFC = 0x8000L << 48;
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        SensorData reading = (SensorData) object;
+        return of(reading.getSensorId(), reading.getTimestamp());
+    }
+
+    public static UUID of(UUID sensorId, LocalDateTime timestamp) {
+        return new UUID(mostSignificantBits(timestamp), leastSignificantBits(sensorId, timestamp));
+    }
+
+    /** Timestamp, version and sub-millisecond half. */
+    public static long mostSignificantBits(LocalDateTime timestamp) {
+        long millis = timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+        long micros = timestamp.getNano() / 1_000 % 1_000;
+        return millis << 16 | VERSION_7 | micros;
+    }
+
+    /** Variant and sensor hash half. */
+    public static long leastSignificantBits(UUID sensorId, LocalDateTime timestamp) {
+        long hash = mix(sensorId.getMostSignificantBits() ^ mix(sensorId.getLeastSignificantBits() + timestamp.getNano() % 1_000));
+        return (hash & ~VARIANT_MASK) | VARIANT_RFC;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
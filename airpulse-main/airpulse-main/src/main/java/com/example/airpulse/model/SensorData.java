@@ -14,11 +14,18 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "sensor_data")
+@Table(name = "sensor_data", indexes = {
+        // Time-range reads of given sensors: time series, latest reading per sensor
+        @Index(name = "idx_sensor_data_sensor_timestamp", columnList = "sensor_id, timestamp"),
+        // Time-range reads across all sensors: windowed averages, rollup backfill, sketch warm-up
+        @Index(name = "idx_sensor_data_timestamp", columnList = "timestamp"),
+        // Region analytics: covers type, time range and value, so averages are index-only scans
+        @Index(name = "idx_sensor_data_region_type_timestamp", columnList = "region_id, type, timestamp, value")
+})
 public class SensorData {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @ReadingUuid
     private UUID id;
 
     @Column(name = "sensor_id", nullable = false)
@@ -33,11 +40,15 @@ public class SensorData {
 
     @Column(nullable = false)
     private Double value;
-    
-    // Not linking directly to Location entity to keep this table focused on raw data from Kafka message
-    // and avoid complex joins if this table grows very large. Location info is in SensorReadingDto if needed for denormalization.
-    // If direct relation to Location is desired, a @ManyToOne could be added:
-    // @ManyToOne(fetch = FetchType.LAZY)
-    // @JoinColumn(name = "location_id")
-    // private Location location;
-} 
\ No newline at end of file
+
+    // Denormalized from the sensor's topology at ingest time, so analytics filter without joining through
+    // sensors and locations. Null only for readings not yet backfilled (see SensorDataTopologyBackfill)
+    @Column(name = "location_id")
+    private UUID locationId;
+
+    @Column(name = "region_id")
+    private UUID regionId;
+
+    @Column(name = "city_id")
+    private UUID cityId;
+}
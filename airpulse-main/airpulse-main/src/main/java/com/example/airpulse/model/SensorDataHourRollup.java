@@ -0,0 +1,14 @@
+package com.example.airpulse.model;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+@EqualsAndHashCode(callSuper = true)
+@NoArgsConstructor
+@Entity
+@IdClass(SensorDataRollupId.class)
+@Table(name = "sensor_data_rollup_hour",
+       indexes = @Index(name = "idx_rollup_hour_region_type_bucket", columnList = "region_id, type, bucket_start"))
+public class SensorDataHourRollup extends SensorDataRollup {
+}
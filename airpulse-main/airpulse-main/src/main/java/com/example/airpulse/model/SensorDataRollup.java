@@ -0,0 +1,47 @@
+package com.example.airpulse.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Columns shared by the per-minute and per-hour rollups of {@link SensorData}: one row per sensor and
+ * bucket with the count, sum, min and max of its readings. Rows are upserted in batches by the ingest
+ * path and can be rebuilt from {@code sensor_data} with a backfill.
+ */
+@Data
+@NoArgsConstructor
+@MappedSuperclass
+public abstract class SensorDataRollup {
+
+    @Id
+    @Column(name = "sensor_id", nullable = false)
+    private UUID sensorId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SensorType type;
+
+    @Id
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "region_id", nullable = false)
+    private UUID regionId;
+
+    @Column(name = "reading_count", nullable = false)
+    private Long readingCount;
+
+    @Column(name = "value_sum", nullable = false)
+    private Double valueSum;
+
+    @Column(name = "value_min", nullable = false)
+    private Double valueMin;
+
+    @Column(name = "value_max", nullable = false)
+    private Double valueMax;
+}
@@ -0,0 +1,18 @@
+package com.example.airpulse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorDataRollupId implements Serializable {
+    private UUID sensorId;
+    private SensorType type;
+    private LocalDateTime bucketStart;
+}
@@ -0,0 +1,21 @@
+package com.example.airpulse.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Generates the annotated {@link java.util.UUID} id as a time-ordered version 7 UUID with
+ * {@link TimeOrderedUuidGenerator}. Use it instead of {@code @GeneratedValue} on high-volume tables, so that
+ * new rows append to the right edge of the primary key index.
+ */
+@IdGeneratorType(TimeOrderedUuidGenerator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface TimeOrderedUuid {
+}
@@ -0,0 +1,18 @@
+package com.example.airpulse.partition;
+
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates {@link SensorDataPartitions} before the entity manager factory, so that Hibernate's schema update
+ * finds {@code sensor_data} already partitioned instead of creating it as a plain table.
+ */
+@Configuration
+public class PartitionConfig {
+
+    @Bean
+    public static EntityManagerFactoryDependsOnPostProcessor sensorDataPartitionsDependency() {
+        return new EntityManagerFactoryDependsOnPostProcessor(SensorDataPartitions.class);
+    }
+}
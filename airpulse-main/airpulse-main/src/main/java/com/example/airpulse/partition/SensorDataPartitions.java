@@ -0,0 +1,320 @@
+package com.example.airpulse.partition;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages {@code sensor_data} as a native PostgreSQL table range-partitioned on {@code timestamp}, in daily
+ * or monthly partitions ({@code airpulse.partitions.granularity}) named {@code sensor_data_pYYYYMMDD} or
+ * {@code sensor_data_pYYYYMM}. Every query on {@code sensor_data} filters or orders by time, so the planner
+ * prunes partitions outside the range and walks the newest partition first for "latest" queries.
+ * <p>
+ * Runs before Hibernate's schema update (see {@link PartitionConfig}): it creates the partitioned table and
+ * its indexes, and on the first start after upgrading converts an existing heap table by attaching it
+ * whole as the partition {@code sensor_data_legacy} for all times up to the current period. Hibernate is told to treat
+ * partitioned tables as tables ({@code hibernate.hbm2ddl.extra_physical_table_types}), so it only adds
+ * columns. A default partition catches readings outside the created partitions.
+ * <p>
+ * Every {@code maintenance-interval-ms} the partitions for the next {@code premake} periods are created,
+ * and with {@code retention-days} above 0 the managed partitions entirely older than that are detached and
+ * dropped, which frees their space at once instead of deleting rows. The legacy partition is never dropped
+ * automatically.
+ * <p>
+ * Readings of a period without a partition, e.g. late readings after downtime, land in the default partition,
+ * where PostgreSQL refuses to create the period's partition over them. Maintenance therefore also creates the
+ * partitions of the periods found in the default partition: in one transaction it creates the partition as a
+ * plain table, moves the period's rows into it and attaches it. Expired rows in the default partition are
+ * deleted by retention. Maintenance steps that fail are counted in {@code airpulse.partitions.maintenance.failed}
+ * and retried on the next run.
+ */
+@Component
+public class SensorDataPartitions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SensorDataPartitions.class);
+
+    public enum Granularity {
+        DAILY(ChronoUnit.DAYS, "yyyyMMdd"),
+        MONTHLY(ChronoUnit.MONTHS, "yyyyMM");
+
+        private final ChronoUnit unit;
+        private final DateTimeFormatter suffix;
+
+        Granularity(ChronoUnit unit, String suffixPattern) {
+            this.unit = unit;
+            this.suffix = DateTimeFormatter.ofPattern(suffixPattern);
+        }
+
+        private LocalDate periodStart(LocalDate date) {
+            return this == MONTHLY ? date.withDayOfMonth(1) : date;
+        }
+    }
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("sensor_data_p(\\d{8}|\\d{6})");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})");
+
+    private static final String CREATE_PARENT_SQL = "CREATE TABLE IF NOT EXISTS sensor_data ("
+            + "id uuid NOT NULL, "
+            + "sensor_id uuid NOT NULL, "
+            + "\"timestamp\" timestamp(6) NOT NULL, "
+            + "type varchar(255) NOT NULL, "
+            + "\"value\" float(53) NOT NULL, "
+            + "location_id uuid, "
+            + "region_id uuid, "
+            + "city_id uuid, "
+            // A partitioned table's primary key must contain the partition key
+            + "PRIMARY KEY (id, \"timestamp\")"
+            + ") PARTITION BY RANGE (\"timestamp\")";
+    // Columns added after the first partitioned release; a partition must have the parent's columns to attach
+    private static final List<String> ADD_COLUMNS_SQL = List.of(
+            "ALTER TABLE sensor_data ADD COLUMN IF NOT EXISTS location_id uuid",
+            "ALTER TABLE sensor_data ADD COLUMN IF NOT EXISTS region_id uuid",
+            "ALTER TABLE sensor_data ADD COLUMN IF NOT EXISTS city_id uuid");
+    private static final String COLUMNS = "id, sensor_id, \"timestamp\", type, \"value\", location_id, region_id, city_id";
+    private static final List<String> PARENT_INDEXES_SQL = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_sensor_data_sensor_timestamp ON sensor_data (sensor_id, \"timestamp\")",
+            "CREATE INDEX IF NOT EXISTS idx_sensor_data_timestamp ON sensor_data (\"timestamp\")",
+            "CREATE INDEX IF NOT EXISTS idx_sensor_data_region_type_timestamp ON sensor_data (region_id, type, \"timestamp\", \"value\")");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Granularity granularity;
+    private final int premake;
+    private final int retentionDays;
+
+    private volatile LocalDate legacyEnd;
+    private volatile int partitionCount;
+    private final Counter partitionsDroppedCounter;
+    private final Counter rowsMovedCounter;
+    private final Counter maintenanceFailedCounter;
+
+    public SensorDataPartitions(DataSource dataSource,
+                                MeterRegistry meterRegistry,
+                                @Value("${airpulse.partitions.enabled:true}") boolean enabled,
+                                @Value("${airpulse.partitions.granularity:DAILY}") Granularity granularity,
+                                @Value("${airpulse.partitions.premake:3}") int premake,
+                                @Value("${airpulse.partitions.retention-days:0}") int retentionDays) {
+        // Plain JDBC transactions: this runs before the JPA transaction manager exists
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.enabled = enabled;
+        this.granularity = granularity;
+        this.premake = premake;
+        this.retentionDays = retentionDays;
+
+        Gauge.builder("airpulse.partitions.count", this, partitions -> partitions.partitionCount)
+                .description("Number of managed sensor_data partitions")
+                .register(meterRegistry);
+        this.partitionsDroppedCounter = Counter.builder("airpulse.partitions.dropped")
+                .description("Number of sensor_data partitions dropped by retention")
+                .register(meterRegistry);
+        this.rowsMovedCounter = Counter.builder("airpulse.partitions.default.rows.moved")
+                .description("Number of readings moved from the default partition into a new partition")
+                .register(meterRegistry);
+        this.maintenanceFailedCounter = Counter.builder("airpulse.partitions.maintenance.failed")
+                .description("Number of partition creations, moves and drops that failed and will be retried")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            String relkind = jdbcTemplate.query(
+                    "SELECT relkind FROM pg_class WHERE oid = to_regclass('sensor_data')",
+                    resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+            if (relkind != null) {
+                ADD_COLUMNS_SQL.forEach(jdbcTemplate::execute);
+            }
+            if ("r".equals(relkind)) {
+                convertHeapTable();
+            } else if (relkind == null) {
+                jdbcTemplate.execute(CREATE_PARENT_SQL);
+                LOGGER.info("Created sensor_data partitioned by {} range of timestamp", granularity);
+            }
+            PARENT_INDEXES_SQL.forEach(jdbcTemplate::execute);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sensor_data_default PARTITION OF sensor_data DEFAULT");
+        });
+        legacyEnd = findLegacyEnd();
+        maintain();
+    }
+
+    @Scheduled(fixedDelayString = "${airpulse.partitions.maintenance-interval-ms:3600000}",
+               initialDelayString = "${airpulse.partitions.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate cutoff = retentionDays > 0 ? LocalDate.now().minusDays(retentionDays) : null;
+        LocalDate current = granularity.periodStart(LocalDate.now());
+        Set<LocalDate> periods = new TreeSet<>();
+        for (int i = 0; i <= premake; i++) {
+            periods.add(current.plus(i, granularity.unit));
+        }
+        try {
+            periods.addAll(defaultPartitionPeriods());
+        } catch (Exception e) {
+            maintenanceFailedCounter.increment();
+            LOGGER.warn("Could not list the periods held by sensor_data_default: {}", e.getMessage());
+        }
+        for (LocalDate start : periods) {
+            // Periods up to the legacy partition's bound are in the legacy partition, expired ones are not kept
+            boolean expired = cutoff != null && !start.plus(1, granularity.unit).isAfter(cutoff);
+            if ((legacyEnd == null || !start.isBefore(legacyEnd)) && !expired) {
+                createPartition(start);
+            }
+        }
+        if (cutoff != null) {
+            dropExpiredPartitions(cutoff);
+            deleteExpiredDefaultRows(cutoff);
+        }
+        partitionCount = managedPartitions().size();
+    }
+
+    private void convertHeapTable() {
+        LOGGER.info("Converting sensor_data into a partitioned table; existing rows become sensor_data_legacy");
+        // The legacy partition ends at the period after its newest row, or at the current one if that is later
+        Timestamp newest = jdbcTemplate.queryForObject("SELECT MAX(\"timestamp\") FROM sensor_data", Timestamp.class);
+        LocalDate end = granularity.periodStart(LocalDate.now());
+        if (newest != null && !newest.toLocalDateTime().toLocalDate().isBefore(end)) {
+            end = granularity.periodStart(newest.toLocalDateTime().toLocalDate()).plus(1, granularity.unit);
+        }
+        jdbcTemplate.execute("ALTER TABLE sensor_data RENAME TO sensor_data_legacy");
+        jdbcTemplate.execute("ALTER TABLE sensor_data_legacy RENAME CONSTRAINT sensor_data_pkey TO sensor_data_legacy_pkey");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_sensor_data_sensor_timestamp RENAME TO sensor_data_legacy_sensor_timestamp_idx");
+        jdbcTemplate.execute(CREATE_PARENT_SQL);
+        // Validates the bound with one scan and builds the parent's indexes on the legacy rows
+        jdbcTemplate.execute("ALTER TABLE sensor_data ATTACH PARTITION sensor_data_legacy "
+                + "FOR VALUES FROM (MINVALUE) TO ('" + end + "')");
+    }
+
+    private LocalDate findLegacyEnd() {
+        String bound = jdbcTemplate.query(
+                "SELECT pg_get_expr(relpartbound, oid) FROM pg_class WHERE oid = to_regclass('sensor_data_legacy')",
+                resultSet -> resultSet.next() ? resultSet.getString(1) : null);
+        Matcher matcher = bound != null ? UPPER_BOUND.matcher(bound) : null;
+        return matcher != null && matcher.find() ? LocalDate.parse(matcher.group(1)) : null;
+    }
+
+    private void createPartition(LocalDate start) {
+        String name = "sensor_data_p" + granularity.suffix.format(start);
+        LocalDate end = start.plus(1, granularity.unit);
+        try {
+            if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name)) {
+                return;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                // Keeps readings of the period from landing in the default partition while it is split
+                jdbcTemplate.execute("LOCK TABLE sensor_data_default IN ACCESS EXCLUSIVE MODE");
+                Boolean inDefault = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM sensor_data_default "
+                        + "WHERE \"timestamp\" >= ? AND \"timestamp\" < ?)", Boolean.class, start, end);
+                if (!Boolean.TRUE.equals(inDefault)) {
+                    jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF sensor_data "
+                            + "FOR VALUES FROM ('" + start + "') TO ('" + end + "')");
+                    return;
+                }
+                jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE sensor_data INCLUDING DEFAULTS)");
+                int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM sensor_data_default "
+                        + "WHERE \"timestamp\" >= ? AND \"timestamp\" < ? RETURNING " + COLUMNS + ") "
+                        + "INSERT INTO " + name + " (" + COLUMNS + ") SELECT " + COLUMNS + " FROM moved", start, end);
+                // Builds the parent's indexes on the new partition
+                jdbcTemplate.execute("ALTER TABLE sensor_data ATTACH PARTITION " + name
+                        + " FOR VALUES FROM ('" + start + "') TO ('" + end + "')");
+                rowsMovedCounter.increment(moved);
+                LOGGER.info("Created partition {} with {} readings moved from sensor_data_default", name, moved);
+            });
+        } catch (Exception e) {
+            // E.g. overlaps the legacy partition; retried on the next run
+            maintenanceFailedCounter.increment();
+            LOGGER.warn("Could not create partition {}: {}", name, e.getMessage());
+        }
+    }
+
+    // Start of every period with readings in the default partition, which is expected to stay small
+    private List<LocalDate> defaultPartitionPeriods() {
+        String field = granularity == Granularity.MONTHLY ? "month" : "day";
+        return jdbcTemplate.queryForList("SELECT DISTINCT CAST(date_trunc('" + field + "', \"timestamp\") AS date) "
+                + "FROM sensor_data_default", LocalDate.class);
+    }
+
+    private void deleteExpiredDefaultRows(LocalDate cutoff) {
+        try {
+            int deleted = jdbcTemplate.update("DELETE FROM sensor_data_default WHERE \"timestamp\" < ?", cutoff);
+            if (deleted > 0) {
+                LOGGER.info("Deleted {} readings older than {} days from sensor_data_default", deleted, retentionDays);
+            }
+        } catch (Exception e) {
+            maintenanceFailedCounter.increment();
+            LOGGER.warn("Could not delete expired readings from sensor_data_default: {}", e.getMessage());
+        }
+    }
+
+    private void dropExpiredPartitions(LocalDate cutoff) {
+        for (String name : managedPartitions()) {
+            LocalDate start = partitionStart(name);
+            if (start == null || start.plus(1, granularity.unit).isAfter(cutoff)) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.execute("ALTER TABLE sensor_data DETACH PARTITION " + name);
+                    jdbcTemplate.execute("DROP TABLE " + name);
+                });
+                partitionsDroppedCounter.increment();
+                LOGGER.info("Dropped partition {} (older than {} days)", name, retentionDays);
+            } catch (Exception e) {
+                maintenanceFailedCounter.increment();
+                LOGGER.warn("Could not drop partition {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private List<String> managedPartitions() {
+        return jdbcTemplate.queryForList(
+                        "SELECT child.relname FROM pg_inherits "
+                                + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+                                + "WHERE pg_inherits.inhparent = to_regclass('sensor_data')", String.class)
+                .stream()
+                .filter(name -> PARTITION_NAME.matcher(name).matches())
+                .toList();
+    }
+
+    // Only partitions of the configured granularity; those of a previous setting are left alone
+    private LocalDate partitionStart(String name) {
+        Matcher matcher = PARTITION_NAME.matcher(name);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String suffix = matcher.group(1);
+        if (granularity == Granularity.DAILY && suffix.length() == 8) {
+            return LocalDate.parse(suffix, granularity.suffix);
+        }
+        if (granularity == Granularity.MONTHLY && suffix.length() == 6) {
+            return LocalDate.parse(suffix + "01", Granularity.DAILY.suffix);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.airpulse.repository;
+
+import com.example.airpulse.model.Anomaly;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface AnomalyRepository extends JpaRepository<Anomaly, UUID> {
+}
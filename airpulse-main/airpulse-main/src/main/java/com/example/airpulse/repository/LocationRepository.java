@@ -2,6 +2,7 @@ package com.example.airpulse.repository;
 
 import com.example.airpulse.model.Location;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,4 +11,8 @@ import java.util.UUID;
 @Repository
 public interface LocationRepository extends JpaRepository<Location, UUID> {
     List<Location> findByRegionId(UUID regionId);
+
+    /** Every location with its region and city fetched in the same query. */
+    @Query("SELECT l FROM Location l JOIN FETCH l.region r JOIN FETCH r.city")
+    List<Location> findAllWithHierarchy();
 } 
\ No newline at end of file
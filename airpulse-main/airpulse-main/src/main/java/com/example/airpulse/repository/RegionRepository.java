@@ -2,6 +2,7 @@ package com.example.airpulse.repository;
 
 import com.example.airpulse.model.Region;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,4 +11,8 @@ import java.util.UUID;
 @Repository
 public interface RegionRepository extends JpaRepository<Region, UUID> {
     List<Region> findByCityId(UUID cityId);
+
+    /** Every region with its city fetched in the same query. */
+    @Query("SELECT r FROM Region r JOIN FETCH r.city")
+    List<Region> findAllWithCity();
 } 
\ No newline at end of file
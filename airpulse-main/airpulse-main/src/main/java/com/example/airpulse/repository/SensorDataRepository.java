@@ -17,20 +17,101 @@ import java.util.UUID;
 public interface SensorDataRepository extends JpaRepository<SensorData, UUID> {
     List<SensorData> findAllByOrderByTimestampDesc(Pageable pageable);
 
+    // Region filters use the denormalized regionId, which is set only once the reading is backfilled
+    // (see SensorDataTopologyBackfill); windows reaching further back select the region's sensors instead
     @Query("SELECT AVG(sd.value) FROM SensorData sd " +
-           "JOIN Sensor s ON sd.sensorId = s.id " +
-           "JOIN Location loc ON s.location.id = loc.id " +
-           "JOIN Region r ON loc.region.id = r.id " +
-           "WHERE sd.type = :sensorType AND r.name = :regionName AND sd.timestamp BETWEEN :startTime AND :endTime")
+           "WHERE sd.regionId = :regionId AND sd.type = :sensorType AND sd.timestamp BETWEEN :startTime AND :endTime")
     Double findAverageValueBySensorTypeAndRegionInTimeRange(
             @Param("sensorType") SensorType sensorType,
-            @Param("regionName") String regionName,
+            @Param("regionId") UUID regionId,
             @Param("startTime") LocalDateTime startTime,
             @Param("endTime") LocalDateTime endTime);
 
-    @Query("SELECT sd FROM SensorData sd " +
-           "JOIN Sensor s ON sd.sensorId = s.id " +
-           "JOIN Location loc ON s.location.id = loc.id " +
-           "WHERE loc.region.id = :regionId ORDER BY sd.timestamp DESC LIMIT 1")
-    Optional<SensorData> findTopBySensorLocationRegionIdOrderByTimestampDesc(@Param("regionId") UUID regionId);
+    @Query("SELECT AVG(sd.value) FROM SensorData sd " +
+           "WHERE sd.sensorId IN :sensorIds AND sd.timestamp BETWEEN :startTime AND :endTime")
+    Double findAverageValueBySensorsInTimeRange(
+            @Param("sensorIds") List<UUID> sensorIds,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
+    // Totals over [startTime, endTime), from raw readings and from the rollups; combined by AnalyticsService
+    @Query("SELECT SUM(sd.value) AS total, COUNT(sd) AS readings FROM SensorData sd " +
+           "WHERE sd.regionId = :regionId AND sd.type = :sensorType " +
+           "AND sd.timestamp >= :startTime AND sd.timestamp < :endTime")
+    WindowTotals findTotalsBySensorTypeAndRegionInTimeRange(
+            @Param("sensorType") SensorType sensorType,
+            @Param("regionId") UUID regionId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
+    @Query("SELECT SUM(r.valueSum) AS total, SUM(r.readingCount) AS readings FROM SensorDataMinuteRollup r " +
+           "WHERE r.type = :sensorType AND r.regionId = :regionId " +
+           "AND r.bucketStart >= :startTime AND r.bucketStart < :endTime")
+    WindowTotals findMinuteRollupTotals(
+            @Param("sensorType") SensorType sensorType,
+            @Param("regionId") UUID regionId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
+    @Query("SELECT SUM(r.valueSum) AS total, SUM(r.readingCount) AS readings FROM SensorDataHourRollup r " +
+           "WHERE r.type = :sensorType AND r.regionId = :regionId " +
+           "AND r.bucketStart >= :startTime AND r.bucketStart < :endTime")
+    WindowTotals findHourRollupTotals(
+            @Param("sensorType") SensorType sensorType,
+            @Param("regionId") UUID regionId,
+            @Param("startTime") LocalDateTime startTime,
+            @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * Latest reading of every sensor: sensor_id, timestamp, value. One backward probe of
+     * idx_sensor_data_sensor_timestamp per registered sensor, instead of sorting all of sensor_data.
+     */
+    @Query(value = "SELECT s.id, latest.\"timestamp\", latest.\"value\" FROM sensors s " +
+                   "CROSS JOIN LATERAL (SELECT sd.\"timestamp\", sd.\"value\" FROM sensor_data sd " +
+                   "WHERE sd.sensor_id = s.id ORDER BY sd.\"timestamp\" DESC LIMIT 1) latest", nativeQuery = true)
+    List<Object[]> findLatestPerSensor();
+
+    @Query("SELECT MIN(sd.timestamp) FROM SensorData sd")
+    Optional<LocalDateTime> findEarliestTimestamp();
+
+    @Query("SELECT MIN(r.bucketStart) FROM SensorDataMinuteRollup r")
+    Optional<LocalDateTime> findEarliestMinuteRollup();
+
+    /** Per sensor and hour since {@code since}: sensor_id, hours since the epoch, sum of values, count. */
+    @Query(value = "SELECT sensor_id, CAST(FLOOR(EXTRACT(EPOCH FROM \"timestamp\") / 3600) AS BIGINT) AS hour, " +
+                   "SUM(\"value\"), COUNT(*) FROM sensor_data " +
+                   "WHERE \"timestamp\" >= :since GROUP BY sensor_id, hour", nativeQuery = true)
+    List<Object[]> findHourlyTotalsSince(@Param("since") LocalDateTime since);
+
+    /** Per sensor and time bucket since {@code since}: sensor_id, bucket since the epoch, sum of values, count. */
+    @Query(value = "SELECT sensor_id, CAST(FLOOR(EXTRACT(EPOCH FROM \"timestamp\") * 1000 / :bucketMillis) AS BIGINT) AS bucket, " +
+                   "SUM(\"value\"), COUNT(*) FROM sensor_data " +
+                   "WHERE \"timestamp\" >= :since GROUP BY sensor_id, bucket", nativeQuery = true)
+    List<Object[]> findBucketTotalsSince(@Param("since") LocalDateTime since, @Param("bucketMillis") long bucketMillis);
+
+    /**
+     * Quantile sketch bins per sensor and time bucket since {@code since}: sensor_id, bucket since the epoch,
+     * sign (0 below {@code minMagnitude}), bin index {@code ceil(ln|value| / logGamma)}, count, min, max.
+     */
+    @Query(value = "SELECT sensor_id, CAST(FLOOR(EXTRACT(EPOCH FROM \"timestamp\") / :bucketSeconds) AS BIGINT) AS bucket, " +
+                   "CAST(CASE WHEN ABS(\"value\") < :minMagnitude THEN 0 ELSE SIGN(\"value\") END AS INTEGER) AS sign, " +
+                   "CAST(CASE WHEN ABS(\"value\") < :minMagnitude THEN 0 ELSE CEIL(LN(ABS(\"value\")) / :logGamma) END AS INTEGER) AS bin, " +
+                   "COUNT(*), MIN(\"value\"), MAX(\"value\") FROM sensor_data " +
+                   "WHERE \"timestamp\" >= :since GROUP BY sensor_id, bucket, sign, bin", nativeQuery = true)
+    List<Object[]> findSketchBinsSince(@Param("since") LocalDateTime since,
+                                       @Param("bucketSeconds") long bucketSeconds,
+                                       @Param("minMagnitude") double minMagnitude,
+                                       @Param("logGamma") double logGamma);
+
+    /** Quantile sketch bins of the sensors' readings in {@code [startTime, endTime]}: sign, bin index, count, min, max. */
+    @Query(value = "SELECT CAST(CASE WHEN ABS(\"value\") < :minMagnitude THEN 0 ELSE SIGN(\"value\") END AS INTEGER) AS sign, " +
+                   "CAST(CASE WHEN ABS(\"value\") < :minMagnitude THEN 0 ELSE CEIL(LN(ABS(\"value\")) / :logGamma) END AS INTEGER) AS bin, " +
+                   "COUNT(*), MIN(\"value\"), MAX(\"value\") FROM sensor_data " +
+                   "WHERE sensor_id IN (:sensorIds) AND \"timestamp\" BETWEEN :startTime AND :endTime " +
+                   "GROUP BY sign, bin", nativeQuery = true)
+    List<Object[]> findSketchBinsOfSensorsInTimeRange(@Param("sensorIds") List<UUID> sensorIds,
+                                                      @Param("startTime") LocalDateTime startTime,
+                                                      @Param("endTime") LocalDateTime endTime,
+                                                      @Param("minMagnitude") double minMagnitude,
+                                                      @Param("logGamma") double logGamma);
 } 
\ No newline at end of file
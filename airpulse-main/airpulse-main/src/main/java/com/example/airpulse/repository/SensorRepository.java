@@ -2,6 +2,7 @@ package com.example.airpulse.repository;
 
 import com.example.airpulse.model.Sensor;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,4 +11,8 @@ import java.util.UUID;
 @Repository
 public interface SensorRepository extends JpaRepository<Sensor, UUID> {
     List<Sensor> findByLocationId(UUID locationId);
+
+    /** Every sensor with its location, region and city fetched in the same query. */
+    @Query("SELECT s FROM Sensor s JOIN FETCH s.location l JOIN FETCH l.region r JOIN FETCH r.city")
+    List<Sensor> findAllWithHierarchy();
 } 
\ No newline at end of file
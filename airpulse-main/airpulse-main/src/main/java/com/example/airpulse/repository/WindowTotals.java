@@ -0,0 +1,8 @@
+package com.example.airpulse.repository;
+
+/** Sum and count of the readings in a time window, for combining partial windows into one average. */
+public interface WindowTotals {
+    Double getTotal(); // null when the window has no readings
+
+    Long getReadings();
+}
@@ -0,0 +1,158 @@
+package com.example.airpulse.rollup;
+
+import java.util.Arrays;
+
+/**
+ * Reusable table of reading totals per sensor and time bucket, used to pre-aggregate an ingested chunk
+ * before it is upserted into a rollup.
+ * <p>
+ * Buckets live in the primitive columns of an open-addressing hash table keyed by sensor ordinal and bucket
+ * number, so once the table has grown to the largest chunk seen, aggregating a chunk allocates nothing.
+ * After {@link #sort()} the buckets are read by position in sensor and bucket order, the order rows are
+ * upserted in. Not thread-safe; each ingest thread keeps its own.
+ */
+public final class BucketTotals {
+
+    // Keys carry a non-negative sensor ordinal in their upper half, so no key is negative
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private long[] counts;
+    private double[] sums;
+    private double[] mins;
+    private double[] maxs;
+    private int[] slots; // Slot of each bucket, by position
+    private long[] sortedKeys;
+    private int size;
+
+    public BucketTotals() {
+        allocate(16);
+    }
+
+    /** Empties the table, making room for at least {@code buckets} buckets. */
+    public void reset(int buckets) {
+        int capacity = capacityFor(buckets);
+        if (capacity > keys.length) {
+            allocate(capacity);
+        } else {
+            for (int i = 0; i < size; i++) {
+                keys[slots[i]] = EMPTY;
+            }
+        }
+        size = 0;
+    }
+
+    /** Adds {@code count} readings with the given sum, minimum and maximum to the sensor's bucket. */
+    public void add(int sensor, long bucket, long count, double sum, double min, double max) {
+        long key = ((long) sensor << 32) | (bucket & 0xFFFFFFFFL);
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            if (2 * (size + 1) > keys.length) {
+                rehash(keys.length * 2);
+                slot = slotOf(key);
+            }
+            keys[slot] = key;
+            counts[slot] = 0;
+            sums[slot] = 0;
+            mins[slot] = Double.POSITIVE_INFINITY;
+            maxs[slot] = Double.NEGATIVE_INFINITY;
+            slots[size++] = slot;
+        }
+        counts[slot] += count;
+        sums[slot] += sum;
+        mins[slot] = Math.min(mins[slot], min);
+        maxs[slot] = Math.max(maxs[slot], max);
+    }
+
+    /** Orders the buckets by sensor ordinal, then bucket. */
+    public void sort() {
+        for (int i = 0; i < size; i++) {
+            sortedKeys[i] = keys[slots[i]];
+        }
+        Arrays.sort(sortedKeys, 0, size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotOf(sortedKeys[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int sensor(int position) {
+        return (int) (keys[slots[position]] >>> 32);
+    }
+
+    public long bucket(int position) {
+        return (int) keys[slots[position]];
+    }
+
+    public long count(int position) {
+        return counts[slots[position]];
+    }
+
+    public double sum(int position) {
+        return sums[slots[position]];
+    }
+
+    public double min(int position) {
+        return mins[slots[position]];
+    }
+
+    public double max(int position) {
+        return maxs[slots[position]];
+    }
+
+    // Slot holding the key, or the empty slot where it belongs
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        double[] oldSums = sums;
+        double[] oldMins = mins;
+        double[] oldMaxs = maxs;
+        int[] oldSlots = slots;
+        int oldSize = size;
+        allocate(capacity);
+        for (int i = 0; i < oldSize; i++) {
+            int old = oldSlots[i];
+            int slot = slotOf(oldKeys[old]);
+            keys[slot] = oldKeys[old];
+            counts[slot] = oldCounts[old];
+            sums[slot] = oldSums[old];
+            mins[slot] = oldMins[old];
+            maxs[slot] = oldMaxs[old];
+            slots[i] = slot;
+        }
+        size = oldSize;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new long[capacity];
+        sums = new double[capacity];
+        mins = new double[capacity];
+        maxs = new double[capacity];
+        slots = new int[capacity];
+        sortedKeys = new long[capacity];
+        size = 0;
+    }
+
+    // A power of two at least twice the number of buckets, keeping probe sequences short
+    private static int capacityFor(int buckets) {
+        int capacity = 16;
+        while (capacity < 2 * buckets) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
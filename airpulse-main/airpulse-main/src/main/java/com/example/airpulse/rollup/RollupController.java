@@ -0,0 +1,36 @@
+package com.example.airpulse.rollup;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/admin/rollups")
+public class RollupController {
+
+    private final RollupService rollupService;
+
+    public RollupController(RollupService rollupService) {
+        this.rollupService = rollupService;
+    }
+
+    @PostMapping("/backfill")
+    public ResponseEntity<String> startBackfill(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().body("'from' must be before 'to'.");
+        }
+        if (!rollupService.startBackfill(from, to)) {
+            // 409 if a backfill is already running or rollups are disabled
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Rollup backfill not started.");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body("Rollup backfill from " + from + " to " + to + " started.");
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.airpulse.rollup;
+
+import com.example.airpulse.consumer.ReadingBatch;
+import com.example.airpulse.repository.SensorDataRepository;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains the per-minute and per-hour rollups of {@code sensor_data}
+ * ({@link com.example.airpulse.model.SensorDataMinuteRollup}, {@link com.example.airpulse.model.SensorDataHourRollup}).
+ * <p>
+ * Each ingested chunk is pre-aggregated per sensor and bucket in memory and upserted with one batched
+ * {@code INSERT ... ON CONFLICT DO UPDATE} per table, in one transaction. Rows are sent in key order so
+ * concurrent chunks lock them in the same order. The aggregation runs in per-thread {@link BucketTotals}
+ * tables and the statement parameters are bound straight from them, so it allocates nothing per reading. A failed upsert is logged and counted but does not fail
+ * the readings, which are already persisted. Instead coverage moves past the failed chunk's newest minute, so
+ * windows including it are answered from raw readings until the range is rebuilt with a backfill.
+ * <p>
+ * A backfill recomputes the rollups of a time range from {@code sensor_data}, one day per transaction,
+ * replacing existing rows. It is meant for history from before rollups were enabled: buckets that are
+ * still receiving live readings while they are backfilled can lose the concurrent increments.
+ * <p>
+ * {@link #covers} tells analytics from when the rollups hold every reading. That is estimated at startup
+ * from the earliest raw reading and the earliest rollup, and extended by backfills.
+ */
+@Service
+public class RollupService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupService.class);
+    private static final String MINUTE_TABLE = "sensor_data_rollup_minute";
+    private static final String HOUR_TABLE = "sensor_data_rollup_hour";
+
+    private static final String UPSERT_SQL = "INSERT INTO %s AS r "
+            + "(sensor_id, type, bucket_start, region_id, reading_count, value_sum, value_min, value_max) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (sensor_id, type, bucket_start) DO UPDATE SET "
+            + "reading_count = r.reading_count + EXCLUDED.reading_count, "
+            + "value_sum = r.value_sum + EXCLUDED.value_sum, "
+            + "value_min = LEAST(r.value_min, EXCLUDED.value_min), "
+            + "value_max = GREATEST(r.value_max, EXCLUDED.value_max)";
+    private static final String MINUTE_UPSERT_SQL = String.format(UPSERT_SQL, MINUTE_TABLE);
+    private static final String HOUR_UPSERT_SQL = String.format(UPSERT_SQL, HOUR_TABLE);
+
+    private static final String REPLACE_ON_CONFLICT = "ON CONFLICT (sensor_id, type, bucket_start) DO UPDATE SET "
+            + "region_id = EXCLUDED.region_id, reading_count = EXCLUDED.reading_count, value_sum = EXCLUDED.value_sum, "
+            + "value_min = EXCLUDED.value_min, value_max = EXCLUDED.value_max";
+
+    private static final String BACKFILL_MINUTE_SQL = "INSERT INTO " + MINUTE_TABLE + " "
+            + "(sensor_id, type, bucket_start, region_id, reading_count, value_sum, value_min, value_max) "
+            + "SELECT sd.sensor_id, sd.type, date_trunc('minute', sd.\"timestamp\"), l.region_id, "
+            + "COUNT(*), SUM(sd.\"value\"), MIN(sd.\"value\"), MAX(sd.\"value\") "
+            + "FROM sensor_data sd JOIN sensors s ON s.id = sd.sensor_id JOIN locations l ON l.id = s.location_id "
+            + "WHERE sd.\"timestamp\" >= ? AND sd.\"timestamp\" < ? "
+            + "GROUP BY sd.sensor_id, sd.type, date_trunc('minute', sd.\"timestamp\"), l.region_id "
+            + REPLACE_ON_CONFLICT;
+
+    private static final String BACKFILL_HOUR_SQL = "INSERT INTO " + HOUR_TABLE + " "
+            + "(sensor_id, type, bucket_start, region_id, reading_count, value_sum, value_min, value_max) "
+            + "SELECT sensor_id, type, date_trunc('hour', bucket_start), region_id, "
+            + "SUM(reading_count), SUM(value_sum), MIN(value_min), MAX(value_max) "
+            + "FROM " + MINUTE_TABLE + " WHERE bucket_start >= ? AND bucket_start < ? "
+            + "GROUP BY sensor_id, type, date_trunc('hour', bucket_start), region_id "
+            + REPLACE_ON_CONFLICT;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SensorTopologyCache topologyCache;
+    private final SensorDataRepository sensorDataRepository;
+    private final boolean enabled;
+    private final boolean serveQueries;
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("airpulse-rollup-backfill-"));
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+    private final ThreadLocal<BucketTotals> minuteTotals = ThreadLocal.withInitial(BucketTotals::new);
+    private final ThreadLocal<BucketTotals> hourTotals = ThreadLocal.withInitial(BucketTotals::new);
+
+    private volatile LocalDateTime coveredSince = LocalDateTime.MAX;
+
+    private final Timer upsertTimer;
+    private final Counter upsertFailedCounter;
+
+    public RollupService(JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         SensorTopologyCache topologyCache,
+                         SensorDataRepository sensorDataRepository,
+                         MeterRegistry meterRegistry,
+                         @Value("${airpulse.rollups.enabled:true}") boolean enabled,
+                         @Value("${airpulse.rollups.serve-queries:true}") boolean serveQueries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.topologyCache = topologyCache;
+        this.sensorDataRepository = sensorDataRepository;
+        this.enabled = enabled;
+        this.serveQueries = serveQueries;
+
+        this.upsertTimer = Timer.builder("airpulse.rollups.upsert")
+                .description("Time spent upserting the rollups of a consumed batch")
+                .register(meterRegistry);
+        this.upsertFailedCounter = Counter.builder("airpulse.rollups.upsert.failed")
+                .description("Number of consumed batches whose rollup upsert failed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void loadCoverage() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Optional<LocalDateTime> earliestReading = sensorDataRepository.findEarliestTimestamp();
+            Optional<LocalDateTime> earliestRollup = sensorDataRepository.findEarliestMinuteRollup();
+            if (earliestReading.isEmpty()
+                    || (earliestRollup.isPresent() && !earliestRollup.get().isAfter(earliestReading.get()))) {
+                coveredSince = LocalDateTime.MIN;
+            } else {
+                // The first rolled-up minute may only be partially covered
+                coveredSince = earliestRollup.map(minute -> minute.plusMinutes(1))
+                        .orElseGet(() -> LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).plusMinutes(1));
+            }
+            LOGGER.info("Rollups cover readings since {}", coveredSince);
+        } catch (Exception e) {
+            LOGGER.warn("Could not determine rollup coverage, analytics will read raw readings: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+
+    /** Whether analytics can answer a window starting at {@code start} from the rollups. */
+    public boolean covers(LocalDateTime start) {
+        return enabled && serveQueries && !start.isBefore(coveredSince);
+    }
+
+    /** Upserts the batch's readings, except the rows in {@code skippedRows}, into both rollups. */
+    public void record(ReadingBatch batch, BitSet skippedRows) {
+        if (!enabled || batch.isEmpty()) {
+            return;
+        }
+        BucketTotals minutes = minuteTotals.get();
+        minutes.reset(batch.size());
+        long lastMinute = Long.MIN_VALUE;
+        for (int row = 0; row < batch.size(); row++) {
+            if (skippedRows.get(row)) {
+                continue;
+            }
+            long minute = Math.floorDiv(batch.timestamp(row).toEpochSecond(ZoneOffset.UTC), 60);
+            lastMinute = Math.max(lastMinute, minute);
+            double value = batch.value(row);
+            minutes.add(batch.sensorOrdinal(row), minute, 1, value, value, value);
+        }
+        if (minutes.size() == 0) {
+            return;
+        }
+        minutes.sort();
+        BucketTotals hours = hourTotals.get();
+        hours.reset(minutes.size());
+        for (int i = 0; i < minutes.size(); i++) {
+            hours.add(minutes.sensor(i), Math.floorDiv(minutes.bucket(i), 60),
+                    minutes.count(i), minutes.sum(i), minutes.min(i), minutes.max(i));
+        }
+        hours.sort();
+
+        SensorTopology topology = topologyCache.current();
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(MINUTE_UPSERT_SQL, new BucketRows(minutes, topology, 60));
+                jdbcTemplate.batchUpdate(HOUR_UPSERT_SQL, new BucketRows(hours, topology, 3600));
+            });
+            upsertTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            upsertFailedCounter.increment();
+            // The rollups now miss these readings; stop serving windows that include them until a backfill
+            LocalDateTime missingUntil = LocalDateTime.ofEpochSecond((lastMinute + 1) * 60, 0, ZoneOffset.UTC);
+            uncover(missingUntil);
+            LOGGER.error("Upserting rollups of {} readings failed; analytics read raw readings for windows starting "
+                            + "before {} until the range is backfilled: {}",
+                    batch.size() - skippedRows.cardinality(), coveredSince, e.getMessage());
+        }
+    }
+
+    // Moves the start of coverage forward to at least the given time
+    private synchronized void uncover(LocalDateTime missingUntil) {
+        if (missingUntil.isAfter(coveredSince)) {
+            coveredSince = missingUntil;
+        }
+    }
+
+    /** Starts a backfill of {@code [from, to)}, widened to whole hours. Returns false if one is already running. */
+    public boolean startBackfill(LocalDateTime from, LocalDateTime to) {
+        if (!enabled || !backfillRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        backfillExecutor.execute(() -> {
+            try {
+                backfill(from.truncatedTo(ChronoUnit.HOURS), ceilHour(to));
+            } catch (Exception e) {
+                LOGGER.error("Rollup backfill of {} to {} failed: {}", from, to, e.getMessage(), e);
+            } finally {
+                backfillRunning.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void backfill(LocalDateTime start, LocalDateTime end) {
+        LOGGER.info("Backfilling rollups from {} to {}", start, end);
+        LocalDateTime chunkStart = start;
+        while (chunkStart.isBefore(end) && !Thread.currentThread().isInterrupted()) {
+            LocalDateTime from = chunkStart;
+            LocalDateTime to = chunkStart.plusDays(1).isBefore(end) ? chunkStart.plusDays(1) : end;
+            transactionTemplate.executeWithoutResult(status -> {
+                int minuteRows = jdbcTemplate.update(BACKFILL_MINUTE_SQL, from, to);
+                int hourRows = jdbcTemplate.update(BACKFILL_HOUR_SQL, from, to);
+                LOGGER.debug("Backfilled {} minute and {} hour rollups from {} to {}", minuteRows, hourRows, from, to);
+            });
+            chunkStart = to;
+        }
+
+        Optional<LocalDateTime> earliestReading = sensorDataRepository.findEarliestTimestamp();
+        extendCoverage(start, end, earliestReading);
+        LOGGER.info("Rollup backfill from {} to {} finished; rollups cover readings since {}", start, end, coveredSince);
+    }
+
+    // Coverage only grows if the backfilled range reaches the range already covered
+    private synchronized void extendCoverage(LocalDateTime start, LocalDateTime end, Optional<LocalDateTime> earliestReading) {
+        if (!end.isBefore(coveredSince)) {
+            if (earliestReading.isEmpty() || !start.isAfter(earliestReading.get())) {
+                coveredSince = LocalDateTime.MIN;
+            } else if (start.isBefore(coveredSince)) {
+                coveredSince = start;
+            }
+        }
+    }
+
+    private static LocalDateTime ceilHour(LocalDateTime timestamp) {
+        LocalDateTime hour = timestamp.truncatedTo(ChronoUnit.HOURS);
+        return hour.equals(timestamp) ? hour : hour.plusHours(1);
+    }
+
+    /** Binds the buckets of a {@link BucketTotals}, in its sorted order, as upsert rows. */
+    private record BucketRows(BucketTotals buckets, SensorTopology topology, long bucketSeconds)
+            implements BatchPreparedStatementSetter {
+
+        @Override
+        public void setValues(PreparedStatement statement, int position) throws SQLException {
+            int sensor = buckets.sensor(position);
+            statement.setObject(1, topology.sensorId(sensor));
+            statement.setString(2, topology.sensorType(sensor).name());
+            statement.setObject(3, LocalDateTime.ofEpochSecond(buckets.bucket(position) * bucketSeconds, 0, ZoneOffset.UTC));
+            statement.setObject(4, topology.regionId(topology.regionOf(sensor)));
+            statement.setLong(5, buckets.count(position));
+            statement.setDouble(6, buckets.sum(position));
+            statement.setDouble(7, buckets.min(position));
+            statement.setDouble(8, buckets.max(position));
+        }
+
+        @Override
+        public int getBatchSize() {
+            return buckets.size();
+        }
+    }
+}
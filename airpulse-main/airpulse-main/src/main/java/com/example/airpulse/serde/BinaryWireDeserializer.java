@@ -0,0 +1,57 @@
+package com.example.airpulse.serde;
+
+import com.example.airpulse.service.SensorTopologyCache;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Kafka value deserializer that accepts both {@link BinaryWireFormat} and JSON payloads, so producers can
+ * be switched between formats while consumers keep reading both. Payloads that do not start with the
+ * binary magic byte are handed to a {@link JsonDeserializer} configured from the regular consumer
+ * properties.
+ */
+public class BinaryWireDeserializer implements Deserializer<Object> {
+
+    private final SensorTopologyCache topologyCache;
+    private final JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+    private volatile LocationDictionary dictionary;
+
+    public BinaryWireDeserializer(SensorTopologyCache topologyCache) {
+        this.topologyCache = topologyCache;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (BinaryWireFormat.isBinary(data)) {
+            return BinaryWireFormat.decode(data, dictionary());
+        }
+        return jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (BinaryWireFormat.isBinary(data)) {
+            return BinaryWireFormat.decode(data, dictionary());
+        }
+        return jsonDeserializer.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+
+    private LocationDictionary dictionary() {
+        LocationDictionary current = LocationDictionary.forTopology(dictionary, topologyCache.current());
+        dictionary = current;
+        return current;
+    }
+}
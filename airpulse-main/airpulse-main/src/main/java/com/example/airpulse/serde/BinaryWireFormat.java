@@ -0,0 +1,285 @@
+package com.example.airpulse.serde;
+
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.dto.AlertDto;
+import com.example.airpulse.dto.SensorReadingDto;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.SensorType;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Fixed-layout binary encoding of {@link SensorReadingDto} and {@link AlertDto}.
+ * <pre>
+ * header   magic(1) version(1) recordType(1) dictionaryFingerprint(4)
+ * reading  presence(1) sensorId(16) epochMicros(8) value(8) type(1) unit(1) locationCode(1) region(ref) city(ref)
+ * alert    presence(1) sensorId(16) epochMicros(8) value(8) type(1) severity(1) locationCode(1) region(ref) city(ref)
+ * </pre>
+ * The UUID is written as two longs and the timestamp as microseconds since the epoch (the
+ * {@link LocalDateTime} read as UTC). Enums are written as ordinals, the location code as the
+ * {@link LocationType} ordinal and the unit as an index into {@link #KNOWN_UNITS}; -1 means null.
+ * Region and city are written as {@link LocationDictionary} IDs, again -1 for null. Any value that
+ * has no code is written inline: the marker -2, a short length and the UTF-8 bytes.
+ * Absent sensor ID, timestamp or value fields are flagged in the presence byte and skipped.
+ * <p>
+ * Every payload starts with {@link #MAGIC}, which can never start a JSON document, so readers can tell
+ * the two formats apart during a migration. {@link #VERSION} must be bumped for any layout change.
+ */
+final class BinaryWireFormat {
+
+    static final byte MAGIC = (byte) 0xAF;
+    static final byte VERSION = 1;
+    static final byte RECORD_READING = 1;
+    static final byte RECORD_ALERT = 2;
+
+    private static final String[] KNOWN_UNITS = {"µg/m³", "ppb", "ppm", "°C", "%"};
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+    private static final LocationType[] LOCATION_TYPES = LocationType.values();
+    private static final AqiSeverity[] SEVERITIES = AqiSeverity.values();
+
+    private static final int HAS_SENSOR_ID = 1;
+    private static final int HAS_TIMESTAMP = 1 << 1;
+    private static final int HAS_VALUE = 1 << 2;
+
+    private static final int NULL_CODE = -1;
+    private static final int INLINE_CODE = -2;
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+    private BinaryWireFormat() {
+    }
+
+    static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    static byte[] encodeReading(SensorReadingDto reading, LocationDictionary dictionary) {
+        ByteBuffer buffer = scratch(inlineLength(reading.getUnit()) + inlineLength(reading.getRegion())
+                + inlineLength(reading.getCity()) + inlineLength(reading.getLocationCode()));
+        writeHeader(buffer, RECORD_READING, dictionary);
+        writeCommon(buffer, reading.getSensorId(), reading.getTimestamp(), reading.getValue());
+        buffer.put(ordinalOf(reading.getType()));
+        writeByteCode(buffer, unitCode(reading.getUnit()), reading.getUnit());
+        writeByteCode(buffer, locationTypeCode(reading.getLocationCode()), reading.getLocationCode());
+        writeDictionaryRef(buffer, reading.getRegion(), dictionary);
+        writeDictionaryRef(buffer, reading.getCity(), dictionary);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    static byte[] encodeAlert(AlertDto alert, LocationDictionary dictionary) {
+        ByteBuffer buffer = scratch(inlineLength(alert.getSeverity()) + inlineLength(alert.getRegion())
+                + inlineLength(alert.getCity()) + inlineLength(alert.getLocationCode()));
+        writeHeader(buffer, RECORD_ALERT, dictionary);
+        writeCommon(buffer, alert.getSensorId(), alert.getTimestamp(), alert.getValue());
+        buffer.put(ordinalOf(alert.getType()));
+        writeByteCode(buffer, severityCode(alert.getSeverity()), alert.getSeverity());
+        writeByteCode(buffer, locationTypeCode(alert.getLocationCode()), alert.getLocationCode());
+        writeDictionaryRef(buffer, alert.getRegion(), dictionary);
+        writeDictionaryRef(buffer, alert.getCity(), dictionary);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /** Decodes a binary payload into a {@link SensorReadingDto} or {@link AlertDto}. */
+    static Object decode(byte[] data, LocationDictionary dictionary) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.get(); // magic
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new SerializationException("Unsupported AirPulse wire format version " + version);
+        }
+        byte recordType = buffer.get();
+        // Dictionary IDs are only meaningful if the writer used the same dictionary
+        LocationDictionary names = buffer.getInt() == dictionary.fingerprint() ? dictionary : null;
+
+        int presence = buffer.get();
+        UUID sensorId = (presence & HAS_SENSOR_ID) != 0 ? new UUID(buffer.getLong(), buffer.getLong()) : null;
+        LocalDateTime timestamp = (presence & HAS_TIMESTAMP) != 0 ? fromEpochMicros(buffer.getLong()) : null;
+        Double value = (presence & HAS_VALUE) != 0 ? buffer.getDouble() : null;
+        SensorType type = lookup(SENSOR_TYPES, buffer.get());
+
+        switch (recordType) {
+            case RECORD_READING: {
+                String unit = readByteCode(buffer, KNOWN_UNITS);
+                String locationCode = readLocationCode(buffer);
+                String region = readDictionaryRef(buffer, names);
+                String city = readDictionaryRef(buffer, names);
+                return new SensorReadingDto(sensorId, timestamp, value, unit, type, locationCode, city, region);
+            }
+            case RECORD_ALERT: {
+                String severity = readSeverity(buffer);
+                String locationCode = readLocationCode(buffer);
+                String region = readDictionaryRef(buffer, names);
+                String city = readDictionaryRef(buffer, names);
+                return new AlertDto(sensorId, value, type, locationCode, severity, timestamp, city, region);
+            }
+            default:
+                throw new SerializationException("Unknown AirPulse record type " + recordType);
+        }
+    }
+
+    private static ByteBuffer scratch(int inlineBytes) {
+        // Fixed part is at most 7 + 1 + 16 + 8 + 8 + 4 + 2 * 4 bytes; each inline value adds 3 + its bytes
+        int required = 64 + inlineBytes;
+        ByteBuffer buffer = SCRATCH.get();
+        if (buffer.capacity() < required) {
+            buffer = ByteBuffer.allocate(required);
+            SCRATCH.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static int inlineLength(String value) {
+        return value == null ? 0 : 3 + value.length() * 3; // Worst case UTF-8 expansion
+    }
+
+    private static void writeHeader(ByteBuffer buffer, byte recordType, LocationDictionary dictionary) {
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(recordType);
+        buffer.putInt(dictionary.fingerprint());
+    }
+
+    private static void writeCommon(ByteBuffer buffer, UUID sensorId, LocalDateTime timestamp, Double value) {
+        int presence = (sensorId != null ? HAS_SENSOR_ID : 0)
+                | (timestamp != null ? HAS_TIMESTAMP : 0)
+                | (value != null ? HAS_VALUE : 0);
+        buffer.put((byte) presence);
+        if (sensorId != null) {
+            buffer.putLong(sensorId.getMostSignificantBits());
+            buffer.putLong(sensorId.getLeastSignificantBits());
+        }
+        if (timestamp != null) {
+            buffer.putLong(toEpochMicros(timestamp));
+        }
+        if (value != null) {
+            buffer.putDouble(value);
+        }
+    }
+
+    private static void writeByteCode(ByteBuffer buffer, int code, String value) {
+        buffer.put((byte) code);
+        if (code == INLINE_CODE) {
+            writeInline(buffer, value);
+        }
+    }
+
+    private static void writeDictionaryRef(ByteBuffer buffer, String value, LocationDictionary dictionary) {
+        if (value == null) {
+            buffer.putInt(NULL_CODE);
+            return;
+        }
+        int id = dictionary.idOf(value);
+        if (id >= 0) {
+            buffer.putInt(id);
+        } else {
+            buffer.putInt(INLINE_CODE);
+            writeInline(buffer, value);
+        }
+    }
+
+    private static void writeInline(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readInline(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readByteCode(ByteBuffer buffer, String[] table) {
+        int code = buffer.get();
+        if (code == INLINE_CODE) {
+            return readInline(buffer);
+        }
+        return code >= 0 && code < table.length ? table[code] : null;
+    }
+
+    private static String readLocationCode(ByteBuffer buffer) {
+        int code = buffer.get();
+        if (code == INLINE_CODE) {
+            return readInline(buffer);
+        }
+        LocationType type = lookup(LOCATION_TYPES, code);
+        return type != null ? type.getCodePrefix() : null;
+    }
+
+    private static String readSeverity(ByteBuffer buffer) {
+        int code = buffer.get();
+        if (code == INLINE_CODE) {
+            return readInline(buffer);
+        }
+        AqiSeverity severity = lookup(SEVERITIES, code);
+        return severity != null ? severity.name() : null;
+    }
+
+    private static String readDictionaryRef(ByteBuffer buffer, LocationDictionary dictionary) {
+        int id = buffer.getInt();
+        if (id == INLINE_CODE) {
+            return readInline(buffer);
+        }
+        return dictionary != null ? dictionary.nameOf(id) : null;
+    }
+
+    private static byte ordinalOf(Enum<?> value) {
+        return (byte) (value != null ? value.ordinal() : NULL_CODE);
+    }
+
+    private static <E> E lookup(E[] values, int code) {
+        return code >= 0 && code < values.length ? values[code] : null;
+    }
+
+    private static int unitCode(String unit) {
+        if (unit == null) {
+            return NULL_CODE;
+        }
+        for (int i = 0; i < KNOWN_UNITS.length; i++) {
+            if (KNOWN_UNITS[i].equals(unit)) {
+                return i;
+            }
+        }
+        return INLINE_CODE;
+    }
+
+    private static int locationTypeCode(String locationCode) {
+        if (locationCode == null) {
+            return NULL_CODE;
+        }
+        for (LocationType type : LOCATION_TYPES) {
+            if (type.getCodePrefix().equals(locationCode)) {
+                return type.ordinal();
+            }
+        }
+        return INLINE_CODE;
+    }
+
+    private static int severityCode(String severity) {
+        if (severity == null) {
+            return NULL_CODE;
+        }
+        for (AqiSeverity candidate : SEVERITIES) {
+            if (candidate.name().equals(severity)) {
+                return candidate.ordinal();
+            }
+        }
+        return INLINE_CODE;
+    }
+
+    private static long toEpochMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+}
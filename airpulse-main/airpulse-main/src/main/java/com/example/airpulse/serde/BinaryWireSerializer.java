@@ -0,0 +1,41 @@
+package com.example.airpulse.serde;
+
+import com.example.airpulse.dto.AlertDto;
+import com.example.airpulse.dto.SensorReadingDto;
+import com.example.airpulse.service.SensorTopologyCache;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Kafka value serializer writing {@link SensorReadingDto} and {@link AlertDto} in {@link BinaryWireFormat}.
+ * Enabled for all producers with {@code airpulse.kafka.wire-format=binary}.
+ */
+public class BinaryWireSerializer implements Serializer<Object> {
+
+    private final SensorTopologyCache topologyCache;
+    private volatile LocationDictionary dictionary;
+
+    public BinaryWireSerializer(SensorTopologyCache topologyCache) {
+        this.topologyCache = topologyCache;
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null) {
+            return null;
+        }
+        if (data instanceof SensorReadingDto reading) {
+            return BinaryWireFormat.encodeReading(reading, dictionary());
+        }
+        if (data instanceof AlertDto alert) {
+            return BinaryWireFormat.encodeAlert(alert, dictionary());
+        }
+        throw new SerializationException("Cannot encode " + data.getClass().getName() + " in the AirPulse wire format");
+    }
+
+    private LocationDictionary dictionary() {
+        LocationDictionary current = LocationDictionary.forTopology(dictionary, topologyCache.current());
+        dictionary = current;
+        return current;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.airpulse.serde;
+
+import com.example.airpulse.service.SensorTopology;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Maps region and city names to small integer IDs for the binary wire format.
+ * <p>
+ * IDs are positions in the sorted set of names, so every instance that sees the same names assigns the
+ * same IDs regardless of load order. The fingerprint identifies that set; a reader whose fingerprint
+ * differs from the writer's cannot trust the IDs and leaves the names unresolved (the consumer re-derives
+ * them from the sensor ID anyway).
+ */
+final class LocationDictionary {
+
+    private final SensorTopology source;
+    private final String[] names;
+    private final Map<String, Integer> ids;
+    private final int fingerprint;
+
+    private LocationDictionary(SensorTopology source) {
+        TreeSet<String> sorted = new TreeSet<>();
+        for (int region = 0; region < source.regionCount(); region++) {
+            sorted.add(source.regionName(region));
+        }
+        for (int city = 0; city < source.cityCount(); city++) {
+            sorted.add(source.cityName(city));
+        }
+        this.source = source;
+        this.names = sorted.toArray(new String[0]);
+        this.ids = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        this.fingerprint = Arrays.hashCode(names);
+    }
+
+    /** Returns {@code cached} if it was built from {@code topology}, otherwise a dictionary for the new snapshot. */
+    static LocationDictionary forTopology(LocationDictionary cached, SensorTopology topology) {
+        return cached != null && cached.source == topology ? cached : new LocationDictionary(topology);
+    }
+
+    int fingerprint() {
+        return fingerprint;
+    }
+
+    /** Returns the name's ID, or -1 if the name is not in the dictionary. */
+    int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    String nameOf(int id) {
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+}
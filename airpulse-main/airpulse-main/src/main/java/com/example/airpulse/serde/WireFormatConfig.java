@@ -0,0 +1,36 @@
+package com.example.airpulse.serde;
+
+import com.example.airpulse.service.SensorTopologyCache;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+/**
+ * Wires the AirPulse binary wire format into the Boot-configured Kafka factories. Consumers always read
+ * both binary and JSON; producers write binary only with {@code airpulse.kafka.wire-format=binary}, so
+ * the switch can be made once every consumer runs a version that understands it.
+ */
+@Configuration
+public class WireFormatConfig {
+
+    @Bean
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaConsumerFactoryCustomizer binaryWireDeserializerCustomizer(SensorTopologyCache topologyCache) {
+        return factory -> ((DefaultKafkaConsumerFactory<Object, Object>) factory)
+                .setValueDeserializerSupplier(() -> (Deserializer<Object>) new BinaryWireDeserializer(topologyCache));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "airpulse.kafka.wire-format", havingValue = "binary")
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaProducerFactoryCustomizer binaryWireSerializerCustomizer(SensorTopologyCache topologyCache) {
+        return factory -> ((DefaultKafkaProducerFactory<Object, Object>) factory)
+                .setValueSerializerSupplier(() -> (Serializer<Object>) new BinaryWireSerializer(topologyCache));
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.airpulse.service;
+
+import com.example.airpulse.consumer.ReadingBatch;
+import com.example.airpulse.repository.SensorDataRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * Latest ingested reading per sensor, per location and per region, addressed by {@link SensorTopology}
+ * ordinal. Each level keeps the reporting sensor's ordinal, value and timestamp in primitive columns, in
+ * fixed-size pages like {@link com.example.airpulse.consumer.AlertDebouncer}, so recording a reading
+ * allocates nothing; a {@link Reading} is only built when one is read.
+ * <p>
+ * Slots only move forward in reading time, so concurrent ingest threads and late or replayed readings never
+ * overwrite a newer reading. Updates and reads lock the slot's page for the few field accesses involved.
+ * The state is rebuilt at startup with one index probe of {@code sensor_data} per registered sensor.
+ * <p>
+ * Like the other in-memory views it only reflects readings ingested by this instance.
+ */
+@Service
+public class LatestReadings {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatestReadings.class);
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** Latest reading of a sensor, as returned to readers. */
+    public record Reading(int sensor, double value, LocalDateTime timestamp) {
+    }
+
+    private final SensorTopologyCache topologyCache;
+    private final SensorDataRepository sensorDataRepository;
+
+    private final Slots bySensor = new Slots();
+    private final Slots byLocation = new Slots();
+    private final Slots byRegion = new Slots();
+
+    public LatestReadings(SensorTopologyCache topologyCache, SensorDataRepository sensorDataRepository) {
+        this.topologyCache = topologyCache;
+        this.sensorDataRepository = sensorDataRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            SensorTopology topology = topologyCache.current();
+            int sensors = 0;
+            for (Object[] row : sensorDataRepository.findLatestPerSensor()) {
+                int sensor = topology.sensorOrdinal((UUID) row[0]);
+                if (sensor >= 0) {
+                    update(topology, sensor, ((Number) row[2]).doubleValue(), toEpochNanos(toLocalDateTime(row[1])));
+                    sensors++;
+                }
+            }
+            LOGGER.info("Loaded latest readings of {} sensors", sensors);
+        } catch (Exception e) {
+            LOGGER.warn("Could not load latest readings, starting empty: {}", e.getMessage());
+        }
+    }
+
+    /** Records the batch's readings, except the rows in {@code skippedRows}. */
+    public void record(ReadingBatch batch, BitSet skippedRows) {
+        SensorTopology topology = topologyCache.current();
+        for (int row = 0; row < batch.size(); row++) {
+            if (!skippedRows.get(row)) {
+                update(topology, batch.sensorOrdinal(row), batch.value(row), toEpochNanos(batch.timestamp(row)));
+            }
+        }
+    }
+
+    public Reading latestOfSensor(int sensor) {
+        return bySensor.get(sensor);
+    }
+
+    public Reading latestOfLocation(int location) {
+        return byLocation.get(location);
+    }
+
+    public Reading latestOfRegion(int region) {
+        return byRegion.get(region);
+    }
+
+    private void update(SensorTopology topology, int sensor, double value, long epochNanos) {
+        // A reading that is not the sensor's latest cannot be its location's or region's latest either
+        if (bySensor.advance(sensor, sensor, value, epochNanos)) {
+            int location = topology.locationOf(sensor);
+            byLocation.advance(location, sensor, value, epochNanos);
+            byRegion.advance(topology.regionOfLocation(location), sensor, value, epochNanos);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) value;
+    }
+
+    // Reading timestamps are UTC; nanosecond precision fits a long until 2262
+    private static long toEpochNanos(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + timestamp.getNano();
+    }
+
+    private static LocalDateTime fromEpochNanos(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    /** Growable, paged slots; pages are never replaced, so updates to them are never lost when growing. */
+    private static final class Slots {
+        private volatile Page[] pages = new Page[0];
+
+        private Reading get(int ordinal) {
+            Page[] current = pages;
+            int index = ordinal >>> PAGE_BITS;
+            if (index >= current.length) {
+                return null;
+            }
+            Page page = current[index];
+            int i = ordinal & (PAGE_SIZE - 1);
+            synchronized (page) {
+                return page.sensors[i] < 0 ? null
+                        : new Reading(page.sensors[i], page.values[i], fromEpochNanos(page.epochNanos[i]));
+            }
+        }
+
+        // Returns whether the slot moved to the reading, i.e. it was newer than the slot's
+        private boolean advance(int ordinal, int sensor, double value, long epochNanos) {
+            Page page = page(ordinal >>> PAGE_BITS);
+            int i = ordinal & (PAGE_SIZE - 1);
+            synchronized (page) {
+                if (page.sensors[i] >= 0 && epochNanos <= page.epochNanos[i]) {
+                    return false;
+                }
+                page.sensors[i] = sensor;
+                page.values[i] = value;
+                page.epochNanos[i] = epochNanos;
+                return true;
+            }
+        }
+
+        private Page page(int index) {
+            Page[] current = pages;
+            return index < current.length ? current[index] : addPages(index);
+        }
+
+        private synchronized Page addPages(int index) {
+            Page[] current = pages;
+            if (index >= current.length) {
+                Page[] grown = Arrays.copyOf(current, index + 1);
+                for (int p = current.length; p < grown.length; p++) {
+                    grown[p] = new Page();
+                }
+                pages = grown;
+                current = grown;
+            }
+            return current[index];
+        }
+    }
+
+    /** Latest reading of {@value #PAGE_SIZE} consecutive ordinals; the sensor is -1 while there is none. */
+    private static final class Page {
+        private final int[] sensors = new int[PAGE_SIZE];
+        private final double[] values = new double[PAGE_SIZE];
+        private final long[] epochNanos = new long[PAGE_SIZE];
+
+        private Page() {
+            Arrays.fill(sensors, -1);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.airpulse.service;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with relative-error guarantees, in the style of DDSketch: values are counted
+ * in logarithmic bins {@code (gamma^(i-1), gamma^i]} with {@code gamma = (1 + a) / (1 - a)}, so any quantile
+ * is estimated within relative accuracy {@code a} of a value of the right rank. Merging adds bin counts, so
+ * sketches of adjacent time buckets combine into the exact sketch of the whole window.
+ * <p>
+ * Magnitudes below {@value #MIN_MAGNITUDE} count as zero and those above {@value #MAX_MAGNITUDE} fall in the
+ * top bin, which bounds a sketch to a few thousand bins however many values it holds. Bins are stored
+ * densely between the lowest and highest ones seen, and readings of one pollutant in one region rarely span
+ * more than a few dozen. The exact minimum and maximum are tracked separately.
+ * <p>
+ * Not thread-safe.
+ */
+public final class QuantileSketch {
+
+    static final double MIN_MAGNITUDE = 1e-3;
+    static final double MAX_MAGNITUDE = 1e7;
+
+    private final double gamma;
+    private final double logGamma;
+    private final int minIndex;
+    private final int maxIndex;
+
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndex = rawIndex(MIN_MAGNITUDE);
+        this.maxIndex = rawIndex(MAX_MAGNITUDE);
+    }
+
+    public void add(double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude < MIN_MAGNITUDE) {
+            zeroCount++;
+        } else if (value > 0) {
+            positive.add(index(magnitude), 1);
+        } else {
+            negative.add(index(magnitude), 1);
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds {@code binCount} values with the given sign and bin index, as computed by {@link #logGamma()},
+     * whose extremes were {@code binMin} and {@code binMax}. Used to load sketches from bins aggregated in SQL.
+     */
+    void addBin(int sign, int rawIndex, long binCount, double binMin, double binMax) {
+        if (sign == 0) {
+            zeroCount += binCount;
+        } else {
+            int index = Math.max(minIndex, Math.min(maxIndex, rawIndex));
+            (sign > 0 ? positive : negative).add(index, binCount);
+        }
+        count += binCount;
+        min = Math.min(min, binMin);
+        max = Math.max(max, binMax);
+    }
+
+    /** Adds the other sketch's values; both must have the same relative accuracy. */
+    public void merge(QuantileSketch other) {
+        if (other.gamma != gamma) {
+            throw new IllegalArgumentException("Cannot merge sketches of different relative accuracy");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** Estimated value at quantile {@code q} (0-1), or {@link Double#NaN} if the sketch is empty. */
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.max(0, Math.min(1, q)) * (count - 1);
+        long seen = 0;
+        // Negative values in ascending order are their bins in descending magnitude
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return clamp(-binValue(negative.offset + i));
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return clamp(0);
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return clamp(binValue(positive.offset + i));
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /** Exact minimum, or {@link Double#NaN} if the sketch is empty. */
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /** Exact maximum, or {@link Double#NaN} if the sketch is empty. */
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public void clear() {
+        positive.clear();
+        negative.clear();
+        zeroCount = 0;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Natural log of the bin growth factor; the bin index of magnitude {@code m} is {@code ceil(ln(m) / logGamma)}. */
+    double logGamma() {
+        return logGamma;
+    }
+
+    private int index(double magnitude) {
+        return Math.max(minIndex, Math.min(maxIndex, rawIndex(magnitude)));
+    }
+
+    private int rawIndex(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    // The value with equal relative distance to both ends of the bin
+    private double binValue(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /** Dense bin counts; {@code counts[i]} is the count of bin {@code offset + i}. */
+    private static final class Bins {
+        private static final long[] EMPTY = new long[0];
+        private static final int HEADROOM = 8;
+
+        private long[] counts = EMPTY;
+        private int offset;
+
+        private void add(int index, long n) {
+            if (counts.length == 0) {
+                counts = new long[2 * HEADROOM];
+                offset = index - HEADROOM;
+            } else if (index < offset) {
+                int newOffset = index - HEADROOM;
+                long[] grown = new long[counts.length + offset - newOffset];
+                System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+                counts = grown;
+                offset = newOffset;
+            } else if (index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, index - offset + 1 + HEADROOM);
+            }
+            counts[index - offset] += n;
+        }
+
+        private void merge(Bins other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        private void clear() {
+            // Keeps the array, as a reused time bucket usually sees the same range of values again
+            Arrays.fill(counts, 0);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.airpulse.service;
+
+import com.example.airpulse.consumer.ReadingBatch;
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.repository.SensorDataRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory {@link QuantileSketch}es of ingested readings per (region, {@link SensorType}) and time bucket of
+ * {@code airpulse.analytics.percentiles.bucket-minutes}, kept for {@code horizon-hours}. The distribution of
+ * any window within the horizon is the merge of its buckets' sketches, so percentiles never sort or even
+ * read raw rows. Windows are bucket-aligned like those of {@link SlidingWindowAggregates}.
+ * <p>
+ * At startup the horizon is loaded from sketch bins aggregated by Postgres, one row per sensor, bucket and
+ * bin. Like {@link SlidingWindowAggregates} the sketches only answer windows they cover: within the horizon
+ * and starting after the oldest data seen (since startup, or since {@code now - horizon} after the warm-up).
+ * Until then {@link #sketchFromDatabase} bins the window's readings in Postgres instead. Like the other
+ * in-memory views the sketches only contain the readings ingested by this instance.
+ */
+@Service
+public class QuantileSketches {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuantileSketches.class);
+    private static final int SENSOR_TYPES = SensorType.values().length;
+
+    private final SensorTopologyCache topologyCache;
+    private final SensorDataRepository sensorDataRepository;
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final long horizonHours;
+    private final double relativeAccuracy;
+    private final boolean warmUp;
+    private final int ringSize;
+
+    private volatile Series[] series = new Series[0];
+    private volatile long coveredSinceMillis = Long.MAX_VALUE;
+
+    public QuantileSketches(SensorTopologyCache topologyCache,
+                            SensorDataRepository sensorDataRepository,
+                            @Value("${airpulse.analytics.percentiles.enabled:true}") boolean enabled,
+                            @Value("${airpulse.analytics.percentiles.bucket-minutes:5}") long bucketMinutes,
+                            @Value("${airpulse.analytics.percentiles.horizon-hours:24}") long horizonHours,
+                            @Value("${airpulse.analytics.percentiles.relative-accuracy:0.01}") double relativeAccuracy,
+                            @Value("${airpulse.analytics.percentiles.warm-up:true}") boolean warmUp) {
+        this.topologyCache = topologyCache;
+        this.sensorDataRepository = sensorDataRepository;
+        this.enabled = enabled;
+        this.bucketMillis = TimeUnit.MINUTES.toMillis(bucketMinutes);
+        this.horizonHours = horizonHours;
+        this.relativeAccuracy = relativeAccuracy;
+        this.warmUp = warmUp;
+        // One extra bucket for the partially elapsed current one
+        this.ringSize = (int) (TimeUnit.HOURS.toMillis(horizonHours) / bucketMillis) + 1;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        coveredSinceMillis = toEpochMillis(LocalDateTime.now());
+        if (!warmUp) {
+            return;
+        }
+        try {
+            LocalDateTime since = LocalDateTime.now().minusHours(horizonHours);
+            SensorTopology topology = topologyCache.current();
+            double logGamma = new QuantileSketch(relativeAccuracy).logGamma();
+            int bins = 0;
+            for (Object[] row : sensorDataRepository.findSketchBinsSince(since, bucketMillis / 1000,
+                    QuantileSketch.MIN_MAGNITUDE, logGamma)) {
+                int sensor = topology.sensorOrdinal((UUID) row[0]);
+                if (sensor < 0) {
+                    continue;
+                }
+                Series target = series(topology.regionOf(sensor), topology.sensorType(sensor));
+                synchronized (target) {
+                    QuantileSketch sketch = target.sketch(((Number) row[1]).longValue());
+                    if (sketch != null) {
+                        sketch.addBin(((Number) row[2]).intValue(), ((Number) row[3]).intValue(), ((Number) row[4]).longValue(),
+                                ((Number) row[5]).doubleValue(), ((Number) row[6]).doubleValue());
+                    }
+                }
+                bins++;
+            }
+            coveredSinceMillis = toEpochMillis(since);
+            LOGGER.info("Warmed quantile sketches with {} bins over the last {} hours", bins, horizonHours);
+        } catch (Exception e) {
+            LOGGER.warn("Could not warm quantile sketches, covering readings from now on: {}", e.getMessage());
+        }
+    }
+
+    /** Whether a window of the given length ending now is within the horizon. */
+    public boolean withinHorizon(long minutes) {
+        return enabled && minutes <= TimeUnit.HOURS.toMinutes(horizonHours);
+    }
+
+    /** Whether a window of the given length ending now can be answered from memory. */
+    public boolean covers(long minutes) {
+        return withinHorizon(minutes)
+                && toEpochMillis(LocalDateTime.now().minusMinutes(minutes)) >= coveredSinceMillis;
+    }
+
+    /**
+     * Sketch of the sensors' readings with timestamps in {@code [from, to]}, binned by Postgres with the
+     * same accuracy as the in-memory sketches; for windows they do not cover yet.
+     */
+    public QuantileSketch sketchFromDatabase(List<UUID> sensorIds, LocalDateTime from, LocalDateTime to) {
+        QuantileSketch sketch = new QuantileSketch(relativeAccuracy);
+        if (sensorIds.isEmpty()) {
+            return sketch;
+        }
+        for (Object[] row : sensorDataRepository.findSketchBinsOfSensorsInTimeRange(sensorIds, from, to,
+                QuantileSketch.MIN_MAGNITUDE, sketch.logGamma())) {
+            sketch.addBin(((Number) row[0]).intValue(), ((Number) row[1]).intValue(), ((Number) row[2]).longValue(),
+                    ((Number) row[3]).doubleValue(), ((Number) row[4]).doubleValue());
+        }
+        return sketch;
+    }
+
+    /** Adds the batch's readings, except the rows in {@code skippedRows}, to their region's sketches. */
+    public void record(ReadingBatch batch, BitSet skippedRows) {
+        if (!enabled) {
+            return;
+        }
+        SensorTopology topology = topologyCache.current();
+        for (int row = 0; row < batch.size(); row++) {
+            if (skippedRows.get(row)) {
+                continue;
+            }
+            Series target = series(topology.regionOf(batch.sensorOrdinal(row)), batch.type(row));
+            long bucket = Math.floorDiv(toEpochMillis(batch.timestamp(row)), bucketMillis);
+            synchronized (target) {
+                QuantileSketch sketch = target.sketch(bucket);
+                if (sketch != null) {
+                    sketch.add(batch.value(row));
+                }
+            }
+        }
+    }
+
+    /**
+     * Merged sketch of the region's readings of the type with timestamps in {@code [from, to]}; empty if there
+     * are none. Callers should check {@link #covers} first.
+     */
+    public QuantileSketch sketch(int region, SensorType type, LocalDateTime from, LocalDateTime to) {
+        QuantileSketch merged = new QuantileSketch(relativeAccuracy);
+        Series[] current = series;
+        int index = region * SENSOR_TYPES + type.ordinal();
+        Series target = index < current.length ? current[index] : null;
+        if (target == null) {
+            return merged;
+        }
+        long fromBucket = Math.floorDiv(toEpochMillis(from), bucketMillis);
+        long toBucket = Math.floorDiv(toEpochMillis(to), bucketMillis);
+        synchronized (target) {
+            target.mergeInto(merged, fromBucket, toBucket);
+        }
+        return merged;
+    }
+
+    private Series series(int region, SensorType type) {
+        Series[] current = series;
+        int index = region * SENSOR_TYPES + type.ordinal();
+        Series existing = index < current.length ? current[index] : null;
+        return existing != null ? existing : createSeries(index);
+    }
+
+    private synchronized Series createSeries(int index) {
+        Series[] current = series;
+        if (index >= current.length) {
+            int regions = Math.max(index / SENSOR_TYPES + 1, topologyCache.current().regionCount());
+            current = Arrays.copyOf(current, regions * SENSOR_TYPES);
+        }
+        if (current[index] == null) {
+            current[index] = new Series(ringSize, relativeAccuracy);
+        }
+        series = current;
+        return current[index];
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+    }
+
+    /**
+     * Bucket ring of one (region, type) series; a bucket's sketch is created on its first reading and reused
+     * when the ring wraps. All methods must be called while synchronized on it.
+     */
+    private static final class Series {
+        private final long[] buckets;
+        private final QuantileSketch[] sketches;
+        private final double relativeAccuracy;
+
+        private Series(int ringSize, double relativeAccuracy) {
+            this.buckets = new long[ringSize];
+            this.sketches = new QuantileSketch[ringSize];
+            this.relativeAccuracy = relativeAccuracy;
+            Arrays.fill(buckets, Long.MIN_VALUE);
+        }
+
+        /** The bucket's sketch, or null if the bucket is older than the horizon. */
+        private QuantileSketch sketch(long bucket) {
+            int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+            if (buckets[slot] != bucket) {
+                if (buckets[slot] > bucket) {
+                    return null;
+                }
+                buckets[slot] = bucket;
+                if (sketches[slot] == null) {
+                    sketches[slot] = new QuantileSketch(relativeAccuracy);
+                } else {
+                    sketches[slot].clear();
+                }
+            }
+            return sketches[slot];
+        }
+
+        private void mergeInto(QuantileSketch merged, long fromBucket, long toBucket) {
+            for (long bucket = Math.max(fromBucket, toBucket - buckets.length + 1); bucket <= toBucket; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+                if (buckets[slot] == bucket) {
+                    merged.merge(sketches[slot]);
+                }
+            }
+        }
+    }
+}
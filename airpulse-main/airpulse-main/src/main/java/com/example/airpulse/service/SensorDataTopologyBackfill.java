@@ -0,0 +1,109 @@
+package com.example.airpulse.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fills the denormalized {@code location_id}, {@code region_id} and {@code city_id} columns of readings
+ * stored before the ingest writers set them, so region analytics can filter {@code sensor_data} on its own
+ * instead of joining through sensors and locations.
+ * <p>
+ * At startup a background thread updates the rows still missing them one day per statement, newest day
+ * first, finding those days through a partial index on the rows without a region. Once backfilled the
+ * index stays empty, so a restart finds nothing to do with one index probe. {@link #covers} tells which
+ * windows the columns can answer; older ones must select readings by sensor instead.
+ */
+// After Hibernate's schema update, which adds the columns when sensor_data is not partitioned
+@DependsOn("entityManagerFactory")
+@Service
+public class SensorDataTopologyBackfill {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SensorDataTopologyBackfill.class);
+
+    private static final String MISSING_INDEX_SQL = "CREATE INDEX IF NOT EXISTS idx_sensor_data_missing_topology "
+            + "ON sensor_data (\"timestamp\") WHERE region_id IS NULL";
+
+    private static final String NEWEST_MISSING_SQL = "SELECT MAX(\"timestamp\") FROM sensor_data "
+            + "WHERE region_id IS NULL AND \"timestamp\" < ?";
+
+    private static final String BACKFILL_SQL = "UPDATE sensor_data sd "
+            + "SET location_id = s.location_id, region_id = l.region_id, city_id = r.city_id "
+            + "FROM sensors s JOIN locations l ON l.id = s.location_id JOIN regions r ON r.id = l.region_id "
+            + "WHERE s.id = sd.sensor_id AND sd.region_id IS NULL "
+            + "AND sd.\"timestamp\" >= ? AND sd.\"timestamp\" < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("airpulse-topology-backfill-"));
+
+    private volatile LocalDateTime coveredSince = LocalDateTime.MAX;
+
+    public SensorDataTopologyBackfill(JdbcTemplate jdbcTemplate,
+                                      @Value("${airpulse.topology.backfill-columns:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            // Without a backfill only readings ingested from now on are known to have the columns
+            coveredSince = LocalDateTime.now();
+            return;
+        }
+        backfillExecutor.submit(this::backfill);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+
+    /** Whether every reading since {@code start} has its location, region and city columns set. */
+    public boolean covers(LocalDateTime start) {
+        return !start.isBefore(coveredSince);
+    }
+
+    private void backfill() {
+        try {
+            jdbcTemplate.execute(MISSING_INDEX_SQL);
+            // Readings from now on are written with the columns
+            LocalDateTime before = LocalDateTime.now();
+            coveredSince = before;
+            long rows = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                Timestamp newest = jdbcTemplate.queryForObject(NEWEST_MISSING_SQL, Timestamp.class, Timestamp.valueOf(before));
+                if (newest == null) {
+                    break;
+                }
+                LocalDateTime day = newest.toLocalDateTime().truncatedTo(ChronoUnit.DAYS);
+                rows += jdbcTemplate.update(BACKFILL_SQL, day, before);
+                // Rows of sensors that no longer exist stay without a region; skip past them
+                before = day;
+                coveredSince = day;
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                coveredSince = LocalDateTime.MIN;
+                if (rows > 0) {
+                    LOGGER.info("Backfilled location, region and city of {} readings", rows);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Topology column backfill stopped, readings before {} are selected by sensor: {}",
+                    coveredSince, e.getMessage());
+        }
+    }
+}
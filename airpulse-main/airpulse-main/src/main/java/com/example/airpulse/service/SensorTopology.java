@@ -0,0 +1,380 @@
+package com.example.airpulse.service;
+
+import com.example.airpulse.model.City;
+import com.example.airpulse.model.Location;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.Region;
+import com.example.airpulse.model.Sensor;
+import com.example.airpulse.model.SensorType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of the {@code City -> Region -> Location -> Sensor} hierarchy.
+ * <p>
+ * Every entity gets a dense ordinal and the hierarchy is kept in parallel primitive arrays indexed by
+ * those ordinals, so resolving a sensor to its location, region and city is a few array loads. Ordinals
+ * are stable across refreshes (new entities are appended, changed ones are updated in place and removed
+ * sensors merely stop resolving), which lets other components size per-sensor or per-region arrays by
+ * them. Names are interned, so readings enriched from the snapshot share one String instance per name.
+ */
+public final class SensorTopology {
+
+    public static final SensorTopology EMPTY = new Builder(null).build();
+
+    private final Map<UUID, Integer> sensorOrdinals;
+    private final UUID[] sensorIds;
+    private final SensorType[] sensorTypes;
+    private final int[] sensorLocations;
+
+    private final Map<UUID, Integer> locationOrdinals;
+    private final UUID[] locationIds;
+    private final String[] locationNames;
+    private final LocationType[] locationTypes;
+    private final String[] locationCodes;
+    private final int[] locationRegions;
+
+    private final Map<UUID, Integer> regionOrdinals;
+    private final Map<String, Integer> regionOrdinalsByName;
+    private final UUID[] regionIds;
+    private final String[] regionNames;
+    private final int[] regionCities;
+
+    private final Map<UUID, Integer> cityOrdinals;
+    private final Map<String, Integer> cityOrdinalsByName;
+    private final UUID[] cityIds;
+    private final String[] cityNames;
+    private final int[][] cityRegions;
+
+    private SensorTopology(Builder builder) {
+        this.sensorOrdinals = Collections.unmodifiableMap(new HashMap<>(builder.sensorOrdinals));
+        this.sensorIds = builder.sensorIds.toArray(new UUID[0]);
+        this.sensorTypes = builder.sensorTypes.toArray(new SensorType[0]);
+        this.sensorLocations = toIntArray(builder.sensorLocations);
+
+        this.locationOrdinals = Collections.unmodifiableMap(new HashMap<>(builder.locationOrdinals));
+        this.locationIds = builder.locationIds.toArray(new UUID[0]);
+        this.locationNames = builder.locationNames.toArray(new String[0]);
+        this.locationTypes = builder.locationTypes.toArray(new LocationType[0]);
+        this.locationCodes = builder.locationCodes.toArray(new String[0]);
+        this.locationRegions = toIntArray(builder.locationRegions);
+
+        this.regionOrdinals = Collections.unmodifiableMap(new HashMap<>(builder.regionOrdinals));
+        this.regionIds = builder.regionIds.toArray(new UUID[0]);
+        this.regionNames = builder.regionNames.toArray(new String[0]);
+        this.regionCities = toIntArray(builder.regionCities);
+
+        this.cityOrdinals = Collections.unmodifiableMap(new HashMap<>(builder.cityOrdinals));
+        this.cityIds = builder.cityIds.toArray(new UUID[0]);
+        this.cityNames = builder.cityNames.toArray(new String[0]);
+
+        Map<String, Integer> regionsByName = new HashMap<>();
+        for (int region = 0; region < regionNames.length; region++) {
+            regionsByName.putIfAbsent(regionNames[region], region); // Region names are assumed unique
+        }
+        this.regionOrdinalsByName = Collections.unmodifiableMap(regionsByName);
+
+        Map<String, Integer> citiesByName = new HashMap<>();
+        int[] regionCountPerCity = new int[cityNames.length];
+        for (int city = 0; city < cityNames.length; city++) {
+            citiesByName.put(cityNames[city], city);
+        }
+        for (int regionCity : regionCities) {
+            regionCountPerCity[regionCity]++;
+        }
+        this.cityOrdinalsByName = Collections.unmodifiableMap(citiesByName);
+        this.cityRegions = new int[cityNames.length][];
+        for (int city = 0; city < cityNames.length; city++) {
+            cityRegions[city] = new int[regionCountPerCity[city]];
+            regionCountPerCity[city] = 0;
+        }
+        for (int region = 0; region < regionCities.length; region++) {
+            int city = regionCities[region];
+            cityRegions[city][regionCountPerCity[city]++] = region;
+        }
+    }
+
+    /** Returns the sensor's ordinal, or -1 if the sensor is unknown. */
+    public int sensorOrdinal(UUID sensorId) {
+        Integer ordinal = sensorOrdinals.get(sensorId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /** Returns the region's ordinal, or -1 if no region has that name. */
+    public int regionOrdinal(String regionName) {
+        Integer ordinal = regionOrdinalsByName.get(regionName);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public int regionOrdinal(UUID regionId) {
+        Integer ordinal = regionOrdinals.get(regionId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public int locationOrdinal(UUID locationId) {
+        Integer ordinal = locationOrdinals.get(locationId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /** Returns the city's ordinal, or -1 if no city has that name. */
+    public int cityOrdinal(String cityName) {
+        Integer ordinal = cityOrdinalsByName.get(cityName);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public int sensorCount() {
+        return sensorIds.length;
+    }
+
+    public int locationCount() {
+        return locationIds.length;
+    }
+
+    public int regionCount() {
+        return regionIds.length;
+    }
+
+    public int cityCount() {
+        return cityIds.length;
+    }
+
+    public UUID sensorId(int sensor) {
+        return sensorIds[sensor];
+    }
+
+    public SensorType sensorType(int sensor) {
+        return sensorTypes[sensor];
+    }
+
+    public int locationOf(int sensor) {
+        return sensorLocations[sensor];
+    }
+
+    public int regionOf(int sensor) {
+        return locationRegions[sensorLocations[sensor]];
+    }
+
+    public int cityOf(int sensor) {
+        return regionCities[locationRegions[sensorLocations[sensor]]];
+    }
+
+    public UUID locationId(int location) {
+        return locationIds[location];
+    }
+
+    public String locationName(int location) {
+        return locationNames[location];
+    }
+
+    public LocationType locationType(int location) {
+        return locationTypes[location];
+    }
+
+    public String locationCode(int location) {
+        return locationCodes[location];
+    }
+
+    public int regionOfLocation(int location) {
+        return locationRegions[location];
+    }
+
+    public UUID regionId(int region) {
+        return regionIds[region];
+    }
+
+    public String regionName(int region) {
+        return regionNames[region];
+    }
+
+    public int cityOfRegion(int region) {
+        return regionCities[region];
+    }
+
+    public UUID cityId(int city) {
+        return cityIds[city];
+    }
+
+    public String cityName(int city) {
+        return cityNames[city];
+    }
+
+    /** Returns the ordinals of the city's regions. The array must not be modified. */
+    public int[] regionsOf(int city) {
+        return cityRegions[city];
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Accumulates entities on top of an existing snapshot. Entities already present keep their ordinal and
+     * take the attributes and parent of the entity added last; new ones are appended.
+     */
+    public static final class Builder {
+
+        private final Map<UUID, Integer> sensorOrdinals = new HashMap<>();
+        private final List<UUID> sensorIds = new ArrayList<>();
+        private final List<SensorType> sensorTypes = new ArrayList<>();
+        private final List<Integer> sensorLocations = new ArrayList<>();
+
+        private final Map<UUID, Integer> locationOrdinals = new HashMap<>();
+        private final List<UUID> locationIds = new ArrayList<>();
+        private final List<String> locationNames = new ArrayList<>();
+        private final List<LocationType> locationTypes = new ArrayList<>();
+        private final List<String> locationCodes = new ArrayList<>();
+        private final List<Integer> locationRegions = new ArrayList<>();
+
+        private final Map<UUID, Integer> regionOrdinals = new HashMap<>();
+        private final List<UUID> regionIds = new ArrayList<>();
+        private final List<String> regionNames = new ArrayList<>();
+        private final List<Integer> regionCities = new ArrayList<>();
+
+        private final Map<UUID, Integer> cityOrdinals = new HashMap<>();
+        private final List<UUID> cityIds = new ArrayList<>();
+        private final List<String> cityNames = new ArrayList<>();
+
+        private boolean changed;
+
+        private Builder(SensorTopology base) {
+            if (base == null) {
+                return;
+            }
+            sensorOrdinals.putAll(base.sensorOrdinals);
+            sensorIds.addAll(List.of(base.sensorIds));
+            sensorTypes.addAll(List.of(base.sensorTypes));
+            for (int location : base.sensorLocations) {
+                sensorLocations.add(location);
+            }
+            locationOrdinals.putAll(base.locationOrdinals);
+            locationIds.addAll(List.of(base.locationIds));
+            locationNames.addAll(List.of(base.locationNames));
+            locationTypes.addAll(List.of(base.locationTypes));
+            locationCodes.addAll(List.of(base.locationCodes));
+            for (int region : base.locationRegions) {
+                locationRegions.add(region);
+            }
+            regionOrdinals.putAll(base.regionOrdinals);
+            regionIds.addAll(List.of(base.regionIds));
+            regionNames.addAll(List.of(base.regionNames));
+            for (int city : base.regionCities) {
+                regionCities.add(city);
+            }
+            cityOrdinals.putAll(base.cityOrdinals);
+            cityIds.addAll(List.of(base.cityIds));
+            cityNames.addAll(List.of(base.cityNames));
+        }
+
+        public boolean containsSensor(UUID sensorId) {
+            return sensorOrdinals.containsKey(sensorId);
+        }
+
+        public int addSensor(Sensor sensor) {
+            int location = addLocation(sensor.getLocation());
+            Integer existing = sensorOrdinals.get(sensor.getId());
+            if (existing != null) {
+                update(sensorTypes, existing, sensor.getType());
+                update(sensorLocations, existing, location);
+                return existing;
+            }
+            int ordinal = sensorIds.size();
+            sensorOrdinals.put(sensor.getId(), ordinal);
+            sensorIds.add(sensor.getId());
+            sensorTypes.add(sensor.getType());
+            sensorLocations.add(location);
+            changed = true;
+            return ordinal;
+        }
+
+        public int addLocation(Location location) {
+            int region = addRegion(location.getRegion());
+            Integer existing = locationOrdinals.get(location.getId());
+            if (existing != null) {
+                update(locationNames, existing, location.getName().intern());
+                update(locationTypes, existing, location.getType());
+                update(locationCodes, existing, location.getCodePrefix().intern());
+                update(locationRegions, existing, region);
+                return existing;
+            }
+            int ordinal = locationIds.size();
+            locationOrdinals.put(location.getId(), ordinal);
+            locationIds.add(location.getId());
+            locationNames.add(location.getName().intern());
+            locationTypes.add(location.getType());
+            locationCodes.add(location.getCodePrefix().intern());
+            locationRegions.add(region);
+            changed = true;
+            return ordinal;
+        }
+
+        public int addRegion(Region region) {
+            int city = addCity(region.getCity());
+            Integer existing = regionOrdinals.get(region.getId());
+            if (existing != null) {
+                update(regionNames, existing, region.getName().intern());
+                update(regionCities, existing, city);
+                return existing;
+            }
+            int ordinal = regionIds.size();
+            regionOrdinals.put(region.getId(), ordinal);
+            regionIds.add(region.getId());
+            regionNames.add(region.getName().intern());
+            regionCities.add(city);
+            changed = true;
+            return ordinal;
+        }
+
+        public int addCity(City city) {
+            Integer existing = cityOrdinals.get(city.getId());
+            if (existing != null) {
+                update(cityNames, existing, city.getName().intern());
+                return existing;
+            }
+            int ordinal = cityIds.size();
+            cityOrdinals.put(city.getId(), ordinal);
+            cityIds.add(city.getId());
+            cityNames.add(city.getName().intern());
+            changed = true;
+            return ordinal;
+        }
+
+        /**
+         * Makes sensors not in {@code sensorIds} unknown. Their ordinals stay reserved, so arrays sized by
+         * ordinal remain valid; a sensor that comes back later gets a new ordinal.
+         */
+        public void retainSensors(Set<UUID> sensorIds) {
+            changed |= sensorOrdinals.keySet().retainAll(sensorIds);
+        }
+
+        /** Whether anything was added, updated or removed since the builder was created. */
+        public boolean changed() {
+            return changed;
+        }
+
+        public SensorTopology build() {
+            return new SensorTopology(this);
+        }
+
+        private <T> void update(List<T> values, int ordinal, T value) {
+            if (!Objects.equals(values.get(ordinal), value)) {
+                values.set(ordinal, value);
+                changed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.airpulse.service;
+
+import com.example.airpulse.model.Location;
+import com.example.airpulse.model.Region;
+import com.example.airpulse.model.Sensor;
+import com.example.airpulse.repository.LocationRepository;
+import com.example.airpulse.repository.RegionRepository;
+import com.example.airpulse.repository.SensorRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the current {@link SensorTopology} so the consumer and analytics can resolve sensors, locations,
+ * regions and cities without touching the database.
+ * <p>
+ * The full hierarchy is loaded at startup and reloaded every {@code airpulse.topology.refresh-interval-ms}
+ * (three fetch-join queries) and reconciled with the current snapshot: new entities are appended, moved or
+ * renamed ones are updated under their existing ordinal, and deleted sensors stop resolving, so their
+ * readings go to the DLQ instead of being stored with a stale location or region. A new snapshot is only
+ * published when something changed.
+ * <p>
+ * A lookup of an unknown sensor schedules the same reload on a background thread, at most once per
+ * {@code airpulse.topology.on-demand-refresh-ms}, and does not wait for it: the consumer thread never runs
+ * database queries for the topology, and the reading is rejected like any other unknown sensor's.
+ */
+@Service
+public class SensorTopologyCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SensorTopologyCache.class);
+
+    private final SensorRepository sensorRepository;
+    private final LocationRepository locationRepository;
+    private final RegionRepository regionRepository;
+    private final long onDemandRefreshMs;
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("airpulse-topology-refresh-"));
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+    private volatile SensorTopology topology = SensorTopology.EMPTY;
+    private volatile long lastRefreshMillis;
+
+    public SensorTopologyCache(SensorRepository sensorRepository,
+                               LocationRepository locationRepository,
+                               RegionRepository regionRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${airpulse.topology.on-demand-refresh-ms:5000}") long onDemandRefreshMs) {
+        this.sensorRepository = sensorRepository;
+        this.locationRepository = locationRepository;
+        this.regionRepository = regionRepository;
+        this.onDemandRefreshMs = onDemandRefreshMs;
+
+        Gauge.builder("airpulse.topology.sensors", this, cache -> cache.topology.sensorCount())
+                .description("Number of sensors in the in-memory topology")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        refresh();
+        LOGGER.info("Loaded sensor topology: {} cities, {} regions, {} locations, {} sensors",
+                topology.cityCount(), topology.regionCount(), topology.locationCount(), topology.sensorCount());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /** Reloads the hierarchy, picking up added, moved, renamed and deleted entities. */
+    @Scheduled(fixedDelayString = "${airpulse.topology.refresh-interval-ms:60000}",
+               initialDelayString = "${airpulse.topology.refresh-interval-ms:60000}")
+    public synchronized void refresh() {
+        lastRefreshMillis = System.currentTimeMillis();
+        SensorTopology current = topology;
+        SensorTopology.Builder builder = current.toBuilder();
+        for (Region region : regionRepository.findAllWithCity()) {
+            builder.addRegion(region);
+        }
+        for (Location location : locationRepository.findAllWithHierarchy()) {
+            builder.addLocation(location);
+        }
+        Set<UUID> sensorIds = new HashSet<>();
+        for (Sensor sensor : sensorRepository.findAllWithHierarchy()) {
+            builder.addSensor(sensor);
+            sensorIds.add(sensor.getId());
+        }
+        builder.retainSensors(sensorIds);
+        if (!builder.changed()) {
+            return;
+        }
+        topology = builder.build();
+        if (current != SensorTopology.EMPTY) {
+            LOGGER.info("Sensor topology changed: {} cities, {} regions, {} locations, {} of {} sensor ordinals in use",
+                    topology.cityCount(), topology.regionCount(), topology.locationCount(), sensorIds.size(),
+                    topology.sensorCount());
+        }
+    }
+
+    public SensorTopology current() {
+        return topology;
+    }
+
+    /**
+     * Returns the sensor's ordinal, or -1 if the sensor is unknown. An unknown sensor schedules a refresh
+     * in the background unless one happened recently, so a sensor registered since the last refresh
+     * resolves shortly after.
+     */
+    public int resolveSensor(UUID sensorId) {
+        int ordinal = topology.sensorOrdinal(sensorId);
+        if (ordinal < 0 && System.currentTimeMillis() - lastRefreshMillis >= onDemandRefreshMs
+                && refreshPending.compareAndSet(false, true)) {
+            try {
+                refreshExecutor.execute(() -> refreshOnDemand(sensorId));
+            } catch (RejectedExecutionException e) {
+                refreshPending.set(false); // Shutting down
+            }
+        }
+        return ordinal;
+    }
+
+    private void refreshOnDemand(UUID sensorId) {
+        try {
+            if (System.currentTimeMillis() - lastRefreshMillis >= onDemandRefreshMs) {
+                refresh();
+            }
+        } catch (Exception e) {
+            LOGGER.error("Topology refresh for unknown sensor ID {} failed: {}", sensorId, e.getMessage());
+        } finally {
+            refreshPending.set(false);
+        }
+    }
+}
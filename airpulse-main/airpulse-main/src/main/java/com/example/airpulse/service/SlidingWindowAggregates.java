@@ -0,0 +1,250 @@
+package com.example.airpulse.service;
+
+import com.example.airpulse.consumer.ReadingBatch;
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.repository.SensorDataRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory sum/count aggregates of ingested readings per (region, {@link SensorType}), in time buckets of
+ * {@code airpulse.analytics.aggregates.bucket-ms}, kept for {@code horizon-minutes}. Each series is a ring of
+ * buckets in primitive arrays indexed by the region's {@link SensorTopology} ordinal, so recording a reading
+ * touches one bucket and an average over a window sums at most one ring.
+ * <p>
+ * Windows are bucket-aligned: the oldest bucket is included whole, so an average may cover up to one
+ * bucket more than requested. A window can only be answered once the aggregates cover all of it, i.e.
+ * it is within the horizon and starts after the oldest data seen (since startup, or since
+ * {@code now - horizon} after the startup warm-up query).
+ * <p>
+ * The aggregates only contain the readings ingested by this instance. With several consumer instances in
+ * the group each one sees only its own partitions, and the aggregates must be disabled with
+ * {@code airpulse.analytics.aggregates.enabled=false}.
+ */
+@Service
+public class SlidingWindowAggregates {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlidingWindowAggregates.class);
+    private static final int SENSOR_TYPES = SensorType.values().length;
+
+    private final SensorTopologyCache topologyCache;
+    private final SensorDataRepository sensorDataRepository;
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final long horizonMinutes;
+    private final boolean warmUp;
+    private final int ringSize;
+
+    private volatile Series[] series = new Series[0];
+    private volatile long coveredSinceMillis = Long.MAX_VALUE;
+
+    public SlidingWindowAggregates(SensorTopologyCache topologyCache,
+                                   SensorDataRepository sensorDataRepository,
+                                   @Value("${airpulse.analytics.aggregates.enabled:true}") boolean enabled,
+                                   @Value("${airpulse.analytics.aggregates.bucket-ms:10000}") long bucketMillis,
+                                   @Value("${airpulse.analytics.aggregates.horizon-minutes:60}") long horizonMinutes,
+                                   @Value("${airpulse.analytics.aggregates.warm-up:true}") boolean warmUp) {
+        this.topologyCache = topologyCache;
+        this.sensorDataRepository = sensorDataRepository;
+        this.enabled = enabled;
+        this.bucketMillis = bucketMillis;
+        this.horizonMinutes = horizonMinutes;
+        this.warmUp = warmUp;
+        // One extra bucket for the partially elapsed current one
+        this.ringSize = (int) (TimeUnit.MINUTES.toMillis(horizonMinutes) / bucketMillis) + 1;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        long now = toEpochMillis(LocalDateTime.now());
+        coveredSinceMillis = now;
+        if (!warmUp) {
+            return;
+        }
+        try {
+            LocalDateTime since = LocalDateTime.now().minusMinutes(horizonMinutes);
+            SensorTopology topology = topologyCache.current();
+            int buckets = 0;
+            for (Object[] row : sensorDataRepository.findBucketTotalsSince(since, bucketMillis)) {
+                int sensor = topology.sensorOrdinal((UUID) row[0]);
+                if (sensor < 0) {
+                    continue;
+                }
+                Series target = series(topology.regionOf(sensor), topology.sensorType(sensor));
+                synchronized (target) {
+                    target.add(((Number) row[1]).longValue(), ((Number) row[2]).doubleValue(), ((Number) row[3]).longValue());
+                }
+                buckets++;
+            }
+            coveredSinceMillis = toEpochMillis(since);
+            LOGGER.info("Warmed sliding-window aggregates with {} buckets over the last {} minutes", buckets, horizonMinutes);
+        } catch (Exception e) {
+            LOGGER.warn("Could not warm sliding-window aggregates, covering readings from now on: {}", e.getMessage());
+        }
+    }
+
+    /** Whether a window of the given length ending now can be answered from memory. */
+    public boolean covers(long minutes) {
+        return enabled && minutes <= horizonMinutes
+                && toEpochMillis(LocalDateTime.now().minusMinutes(minutes)) >= coveredSinceMillis;
+    }
+
+    /** Adds the batch's readings, except the rows in {@code skippedRows}, to their region's series. */
+    public void record(ReadingBatch batch, BitSet skippedRows) {
+        if (!enabled) {
+            return;
+        }
+        SensorTopology topology = topologyCache.current();
+        for (int row = 0; row < batch.size(); row++) {
+            if (skippedRows.get(row)) {
+                continue;
+            }
+            Series target = series(topology.regionOf(batch.sensorOrdinal(row)), batch.type(row));
+            long bucket = Math.floorDiv(toEpochMillis(batch.timestamp(row)), bucketMillis);
+            synchronized (target) {
+                target.add(bucket, batch.value(row), 1);
+            }
+        }
+    }
+
+    /**
+     * Average of the region's readings of the type with timestamps in {@code [from, to]}, or
+     * {@link Double#NaN} if there are none. Callers should check {@link #covers} first.
+     */
+    public double average(int region, SensorType type, LocalDateTime from, LocalDateTime to) {
+        Series[] current = series;
+        int index = region * SENSOR_TYPES + type.ordinal();
+        Series target = index < current.length ? current[index] : null;
+        if (target == null) {
+            return Double.NaN;
+        }
+        long fromBucket = Math.floorDiv(toEpochMillis(from), bucketMillis);
+        long toBucket = Math.floorDiv(toEpochMillis(to), bucketMillis);
+        synchronized (target) {
+            return target.average(fromBucket, toBucket);
+        }
+    }
+
+    /**
+     * Averages over each of the windows {@code [from[i], to]} into {@code out}, in one pass over the series
+     * for all windows; {@link Double#NaN} for windows without readings. Callers should check {@link #covers}.
+     */
+    public void averages(int region, SensorType type, LocalDateTime[] from, LocalDateTime to, double[] out) {
+        Arrays.fill(out, 0, from.length, Double.NaN);
+        Series[] current = series;
+        int index = region * SENSOR_TYPES + type.ordinal();
+        Series target = index < current.length ? current[index] : null;
+        if (target == null) {
+            return;
+        }
+        long[] fromBuckets = new long[from.length];
+        for (int i = 0; i < from.length; i++) {
+            fromBuckets[i] = Math.floorDiv(toEpochMillis(from[i]), bucketMillis);
+        }
+        long toBucket = Math.floorDiv(toEpochMillis(to), bucketMillis);
+        synchronized (target) {
+            target.averages(fromBuckets, toBucket, out);
+        }
+    }
+
+    private Series series(int region, SensorType type) {
+        Series[] current = series;
+        int index = region * SENSOR_TYPES + type.ordinal();
+        Series existing = index < current.length ? current[index] : null;
+        return existing != null ? existing : createSeries(index);
+    }
+
+    private synchronized Series createSeries(int index) {
+        Series[] current = series;
+        if (index >= current.length) {
+            int regions = Math.max(index / SENSOR_TYPES + 1, topologyCache.current().regionCount());
+            current = Arrays.copyOf(current, regions * SENSOR_TYPES);
+        }
+        if (current[index] == null) {
+            current[index] = new Series(ringSize);
+        }
+        series = current;
+        return current[index];
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+    }
+
+    /** Bucket ring of one (region, type) series. All methods must be called while synchronized on it. */
+    private static final class Series {
+        private final long[] buckets;
+        private final double[] sums;
+        private final long[] counts;
+
+        private Series(int ringSize) {
+            buckets = new long[ringSize];
+            sums = new double[ringSize];
+            counts = new long[ringSize];
+            Arrays.fill(buckets, Long.MIN_VALUE);
+        }
+
+        private void add(long bucket, double sum, long count) {
+            int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+            if (buckets[slot] != bucket) {
+                if (buckets[slot] > bucket) {
+                    return; // Older than the horizon
+                }
+                buckets[slot] = bucket;
+                sums[slot] = 0;
+                counts[slot] = 0;
+            }
+            sums[slot] += sum;
+            counts[slot] += count;
+        }
+
+        private double average(long fromBucket, long toBucket) {
+            double sum = 0;
+            long count = 0;
+            for (long bucket = Math.max(fromBucket, toBucket - buckets.length + 1); bucket <= toBucket; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+                if (buckets[slot] == bucket) {
+                    sum += sums[slot];
+                    count += counts[slot];
+                }
+            }
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        // Walks back from the newest bucket once, taking each window's average when reaching its first bucket
+        private void averages(long[] fromBuckets, long toBucket, double[] out) {
+            long oldest = toBucket;
+            for (long fromBucket : fromBuckets) {
+                oldest = Math.min(oldest, fromBucket);
+            }
+            oldest = Math.max(oldest, toBucket - buckets.length + 1);
+            double sum = 0;
+            long count = 0;
+            for (long bucket = toBucket; bucket >= oldest; bucket--) {
+                int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+                if (buckets[slot] == bucket) {
+                    sum += sums[slot];
+                    count += counts[slot];
+                }
+                for (int i = 0; i < fromBuckets.length; i++) {
+                    if (fromBuckets[i] == bucket || (bucket == oldest && fromBuckets[i] < oldest)) {
+                        out[i] = count == 0 ? Double.NaN : sum / count;
+                    }
+                }
+            }
+        }
+    }
+}
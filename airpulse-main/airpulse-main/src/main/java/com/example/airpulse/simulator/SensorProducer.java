@@ -29,8 +29,10 @@ public class SensorProducer {
             // Using sensorId as key for partitioning, ensuring readings from the same sensor go to the same partition
             kafkaTemplate.send(TOPIC_NAME, reading.getSensorId().toString(), reading);
             messagesSentCounter.increment(); // Increment counter on successful send
-            LOGGER.info("Sent sensor reading to Kafka: Sensor ID {}, Type {}, Value {}, Location {}",
-                    reading.getSensorId(), reading.getType(), reading.getValue(), reading.getLocationCode());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Sent sensor reading to Kafka: Sensor ID {}, Type {}, Value {}, Location {}",
+                        reading.getSensorId(), reading.getType(), reading.getValue(), reading.getLocationCode());
+            }
         } catch (Exception e) {
             LOGGER.error("Error sending sensor reading to Kafka for sensor ID {}: {}", reading.getSensorId(), e.getMessage());
             // Optionally, could add a counter for send failures here
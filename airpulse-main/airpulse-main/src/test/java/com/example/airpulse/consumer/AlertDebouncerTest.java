@@ -0,0 +1,54 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.SensorType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlertDebouncerTest {
+
+    private static final long MINUTE = 60_000;
+    private static final int SENSOR = 3;
+
+    private final AlertDebouncer debouncer =
+            new AlertDebouncer(new AqiEvaluator(), new SimpleMeterRegistry(), true, 15 * MINUTE, 0.05);
+
+    @Test
+    void replayedReadingsAlertWithoutTouchingTheLiveState() {
+        assertThat(live(AqiSeverity.UNHEALTHY, 100 * MINUTE)).isEqualTo(AqiSeverity.UNHEALTHY);
+
+        // Older than the live readings: ignored live, but a replayed incident alerts once per renotify interval
+        assertThat(live(AqiSeverity.HAZARDOUS, 10 * MINUTE)).isNull();
+        assertThat(replayed(AqiSeverity.HAZARDOUS, 10 * MINUTE, false)).isEqualTo(AqiSeverity.HAZARDOUS);
+        assertThat(replayed(AqiSeverity.HAZARDOUS, 11 * MINUTE, false)).isNull();
+        assertThat(replayed(AqiSeverity.HAZARDOUS, 30 * MINUTE, false)).isEqualTo(AqiSeverity.HAZARDOUS);
+
+        // The live incident is still within its renotify interval
+        assertThat(live(AqiSeverity.UNHEALTHY, 101 * MINUTE)).isNull();
+    }
+
+    @Test
+    void olderReplayedReadingsStartANewSequenceUnlessAlreadyStored() {
+        assertThat(replayed(AqiSeverity.UNHEALTHY, 20 * MINUTE, false)).isEqualTo(AqiSeverity.UNHEALTHY);
+
+        // A redelivery of a replayed reading whose alert went out
+        assertThat(replayed(AqiSeverity.UNHEALTHY, 20 * MINUTE, true)).isNull();
+        // A message re-queued by an earlier run, replayed again
+        assertThat(replayed(AqiSeverity.UNHEALTHY, 5 * MINUTE, false)).isEqualTo(AqiSeverity.UNHEALTHY);
+
+        debouncer.resetReplayed(SENSOR);
+        assertThat(replayed(AqiSeverity.UNHEALTHY, 5 * MINUTE, true)).isEqualTo(AqiSeverity.UNHEALTHY);
+    }
+
+    private AqiSeverity live(AqiSeverity severity, long readingMillis) {
+        return debouncer.onReading(SENSOR, LocationType.APARTMENT, SensorType.PM25, 0, severity, readingMillis);
+    }
+
+    private AqiSeverity replayed(AqiSeverity severity, long readingMillis, boolean stored) {
+        return debouncer.onReplayedReading(SENSOR, LocationType.APARTMENT, SensorType.PM25, 0, severity,
+                readingMillis, stored);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.ReadingUuidGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the rows per second of the two {@link IngestWriter} paths into {@code sensor_data}: JDBC insert
+ * batches as {@link JpaIngestWriter} has Hibernate send them, and binary {@code COPY} as
+ * {@link CopyIngestWriter} streams it, both for a single consumer poll per commit and for the polls of four
+ * lanes group-committed together.
+ * <p>
+ * Needs a PostgreSQL and is skipped unless {@code AIRPULSE_BENCHMARK_JDBC_URL} is set, e.g. against the
+ * database from docker-compose.yml:
+ * <pre>
+ * AIRPULSE_BENCHMARK_JDBC_URL=jdbc:postgresql://localhost:5432/airpulse_db mvn test -Dtest=CopyIngestBenchmarkTest
+ * </pre>
+ * {@code AIRPULSE_BENCHMARK_USER} and {@code AIRPULSE_BENCHMARK_PASSWORD} default to postgres/postgres, and
+ * {@code AIRPULSE_BENCHMARK_ROWS} to 1,000,000. Each variant fills a fresh scratch table, shaped and indexed
+ * like {@code sensor_data} but unpartitioned, after a warm-up run of both paths. The table is dropped
+ * afterwards. Only the database round trips are measured; the Hibernate entity overhead of the JPA writer
+ * comes on top of the insert numbers.
+ */
+@EnabledIfEnvironmentVariable(named = "AIRPULSE_BENCHMARK_JDBC_URL", matches = ".+")
+class CopyIngestBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyIngestBenchmarkTest.class);
+    private static final int POLL = 500; // max-poll-records
+    private static final int LANES = 4; // airpulse.kafka.workers
+    private static final int SENSORS = 1_000;
+    private static final String TABLE = "bench_ingest";
+
+    private final int rows = Integer.parseInt(System.getenv().getOrDefault("AIRPULSE_BENCHMARK_ROWS", "1000000"));
+    private final UUID[] sensorIds = new UUID[SENSORS];
+    private final UUID locationId = UUID.randomUUID();
+    private final UUID regionId = UUID.randomUUID();
+    private final UUID cityId = UUID.randomUUID();
+    private Connection connection;
+
+    @BeforeEach
+    void connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getenv().getOrDefault("AIRPULSE_BENCHMARK_USER", "postgres"));
+        properties.setProperty("password", System.getenv().getOrDefault("AIRPULSE_BENCHMARK_PASSWORD", "postgres"));
+        properties.setProperty("reWriteBatchedInserts", "true"); // As in application.yml
+        connection = DriverManager.getConnection(System.getenv("AIRPULSE_BENCHMARK_JDBC_URL"), properties);
+        for (int i = 0; i < SENSORS; i++) {
+            sensorIds[i] = UUID.randomUUID();
+        }
+        dropTable();
+    }
+
+    @AfterEach
+    void dropTableAndDisconnect() throws SQLException {
+        dropTable();
+        connection.close();
+    }
+
+    @Test
+    void comparesCopyWithBatchedInserts() throws Exception {
+        // Warms up the JIT, the driver and the server before anything is measured
+        insert(rows / 4);
+        copy(rows / 4, POLL);
+
+        double inserts = insert(rows);
+        double copyPerPoll = copy(rows, POLL);
+        double copyGrouped = copy(rows, POLL * LANES);
+
+        LOGGER.info("{} rows into a table indexed like sensor_data:", rows);
+        LOGGER.info(String.format("  insert batches of %,5d rows per commit  %,9.0f rows/s", POLL, inserts));
+        LOGGER.info(String.format("  COPY of %,5d rows per commit           %,9.0f rows/s (%.1fx)", POLL, copyPerPoll,
+                copyPerPoll / inserts));
+        LOGGER.info(String.format("  COPY of %,5d rows per commit           %,9.0f rows/s (%.1fx)", POLL * LANES,
+                copyGrouped, copyGrouped / inserts));
+        assertThat(copyPerPoll).isGreaterThan(inserts);
+    }
+
+    private double insert(int rows) throws SQLException {
+        createTable();
+        connection.setAutoCommit(false);
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        long begin = System.nanoTime();
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE + " (id, sensor_id, "
+                + "\"timestamp\", type, \"value\", location_id, region_id, city_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int row = 0; row < rows; row++) {
+                UUID sensorId = sensorIds[row % SENSORS];
+                LocalDateTime timestamp = start.plusNanos(row * 1_000_000L);
+                insert.setObject(1, ReadingUuidGenerator.of(sensorId, timestamp));
+                insert.setObject(2, sensorId);
+                insert.setTimestamp(3, Timestamp.valueOf(timestamp));
+                insert.setString(4, "PM25");
+                insert.setDouble(5, row % 500 / 10.0);
+                insert.setObject(6, locationId);
+                insert.setObject(7, regionId);
+                insert.setObject(8, cityId);
+                insert.addBatch();
+                if ((row + 1) % POLL == 0 || row + 1 == rows) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return rows * 1e9 / (System.nanoTime() - begin);
+    }
+
+    private double copy(int rows, int rowsPerCopy) throws SQLException {
+        createTable();
+        PgBinaryCopyBuffer buffer = new PgBinaryCopyBuffer(1 << 20);
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        long begin = System.nanoTime();
+        for (int first = 0; first < rows; first += rowsPerCopy) {
+            // Autocommit: each COPY commits on its own, as the writer's flushes do
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY " + TABLE
+                    + " (id, sensor_id, \"timestamp\", type, \"value\", location_id, region_id, city_id) "
+                    + "FROM STDIN (FORMAT BINARY)");
+            buffer.reset();
+            buffer.writeHeader();
+            for (int row = first; row < Math.min(first + rowsPerCopy, rows); row++) {
+                UUID sensorId = sensorIds[row % SENSORS];
+                LocalDateTime timestamp = start.plusNanos(row * 1_000_000L);
+                buffer.startRow(8);
+                buffer.writeUuid(ReadingUuidGenerator.mostSignificantBits(timestamp),
+                        ReadingUuidGenerator.leastSignificantBits(sensorId, timestamp));
+                buffer.writeUuid(sensorId);
+                buffer.writeTimestamp(timestamp);
+                buffer.writeText("PM25");
+                buffer.writeFloat8(row % 500 / 10.0);
+                buffer.writeUuid(locationId);
+                buffer.writeUuid(regionId);
+                buffer.writeUuid(cityId);
+            }
+            buffer.writeTrailer();
+            copyIn.writeToCopy(buffer.array(), 0, buffer.size());
+            copyIn.endCopy();
+        }
+        return rows * 1e9 / (System.nanoTime() - begin);
+    }
+
+    private void createTable() throws SQLException {
+        dropTable();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + TABLE + " (id uuid NOT NULL, sensor_id uuid NOT NULL, "
+                    + "\"timestamp\" timestamp NOT NULL, type varchar(255) NOT NULL, \"value\" float8 NOT NULL, "
+                    + "location_id uuid, region_id uuid, city_id uuid, PRIMARY KEY (id, \"timestamp\"))");
+            statement.execute("CREATE INDEX ON " + TABLE + " (sensor_id, \"timestamp\")");
+            statement.execute("CREATE INDEX ON " + TABLE + " (\"timestamp\")");
+            statement.execute("CREATE INDEX ON " + TABLE + " (region_id, type, \"timestamp\", \"value\")");
+        }
+    }
+
+    private void dropTable() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.cache.AnalyticsCacheInvalidation;
+import com.example.airpulse.consumer.model.AqiSeverity;
+import com.example.airpulse.dto.SensorReadingDto;
+import com.example.airpulse.model.City;
+import com.example.airpulse.model.Location;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.Region;
+import com.example.airpulse.model.Sensor;
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.rollup.BucketTotals;
+import com.example.airpulse.service.LatestReadings;
+import com.example.airpulse.service.QuantileSketches;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import com.example.airpulse.service.SlidingWindowAggregates;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the in-memory steps {@link SensorIngestPipeline} applies to every accepted reading allocate
+ * (next to) nothing per reading once warmed up: batching, AQI scoring, debouncing, anomaly detection, the
+ * latest-reading, sliding-window, quantile and rolling-AQI views, cache invalidation and the rollup
+ * pre-aggregation. Persistence and the Kafka sends are not covered; the JPA writer builds an entity per
+ * reading by design.
+ */
+class IngestHotPathAllocationTest {
+
+    private static final int SENSORS = 200;
+    private static final int CHUNK = 500;
+    private static final int WARM_UP_CHUNKS = 400;
+    private static final int MEASURED_CHUNKS = 100;
+    private static final double MAX_BYTES_PER_READING = 1.0;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReadingBatch batch = new ReadingBatch(CHUNK);
+    private final BitSet skipped = new BitSet();
+    private final BucketTotals minutes = new BucketTotals();
+
+    private SensorTopology topology;
+    private int events; // Alerts and anomalies, which are allowed to allocate but should not occur here
+    private AqiEvaluator aqiEvaluator;
+    private AlertDebouncer alertDebouncer;
+    private AnomalyDetector anomalyDetector;
+    private RollingAqiWindows rollingWindows;
+    private SlidingWindowAggregates windowAggregates;
+    private QuantileSketches quantileSketches;
+    private LatestReadings latestReadings;
+    private AnalyticsCacheInvalidation cacheInvalidation;
+
+    @BeforeEach
+    void setUp() {
+        City city = City.builder().id(UUID.randomUUID()).name("Springfield").build();
+        Region region = Region.builder().id(UUID.randomUUID()).name("North").city(city).build();
+        Location location = Location.builder().id(UUID.randomUUID()).name("Main St").type(LocationType.APARTMENT)
+                .codePrefix("00").region(region).build();
+        SensorTopology.Builder builder = SensorTopology.EMPTY.toBuilder();
+        SensorType[] types = {SensorType.PM25, SensorType.NO2, SensorType.TEMPERATURE};
+        for (int i = 0; i < SENSORS; i++) {
+            builder.addSensor(Sensor.builder().id(UUID.randomUUID()).type(types[i % types.length]).location(location).build());
+        }
+        topology = builder.build();
+        SensorTopologyCache topologyCache = new SensorTopologyCache(null, null, null, meterRegistry, Long.MAX_VALUE) {
+            @Override
+            public SensorTopology current() {
+                return topology;
+            }
+        };
+
+        aqiEvaluator = new AqiEvaluator();
+        alertDebouncer = new AlertDebouncer(aqiEvaluator, meterRegistry, true, 900_000, 0.05);
+        anomalyDetector = new AnomalyDetector(meterRegistry, true, 0.05, 0.002, 4, 3, 60, 50, 900_000);
+        rollingWindows = new RollingAqiWindows(topologyCache, null, true);
+        windowAggregates = new SlidingWindowAggregates(topologyCache, null, true, 10_000, 60, false);
+        quantileSketches = new QuantileSketches(topologyCache, null, true, 5, 24, 0.01, false);
+        latestReadings = new LatestReadings(topologyCache, null);
+        cacheInvalidation = new AnalyticsCacheInvalidation(topologyCache, null, meterRegistry, false);
+    }
+
+    @Test
+    void steadyStateIngestAllocatesNearlyNothingPerReading() {
+        LocalDateTime start = LocalDateTime.of(2026, 1, 1, 0, 0);
+        // Readings are built up front so the measurement only sees the ingest steps
+        List<List<SensorReadingDto>> warmUp = chunks(start, WARM_UP_CHUNKS);
+        List<List<SensorReadingDto>> measured = chunks(start.plusSeconds(WARM_UP_CHUNKS), MEASURED_CHUNKS);
+
+        for (List<SensorReadingDto> chunk : warmUp) {
+            ingest(chunk);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (List<SensorReadingDto> chunk : measured) {
+            ingest(chunk);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        double bytesPerReading = (double) allocated / (MEASURED_CHUNKS * CHUNK);
+        assertThat(bytesPerReading)
+                .as("bytes allocated per reading (%d bytes for %d readings)", allocated, MEASURED_CHUNKS * CHUNK)
+                .isLessThan(MAX_BYTES_PER_READING);
+        assertThat(events).isZero();
+    }
+
+    // Mirrors the per-reading steps of SensorIngestPipeline#process, without persistence and publishing
+    private void ingest(List<SensorReadingDto> readings) {
+        try {
+            for (int i = 0; i < readings.size(); i++) {
+                SensorReadingDto reading = readings.get(i);
+                int sensor = topology.sensorOrdinal(reading.getSensorId());
+                batch.add(i, sensor, reading.getSensorId(), reading.getTimestamp(),
+                        topology.locationType(topology.locationOf(sensor)), reading.getType(), reading.getValue());
+            }
+            windowAggregates.record(batch, skipped);
+            aggregateMinutes();
+            latestReadings.record(batch, skipped);
+            quantileSketches.record(batch, skipped);
+            cacheInvalidation.readingsIngested(batch, skipped);
+            rollingWindows.record(batch, skipped);
+            aqiEvaluator.evaluateAqi(batch);
+            for (int row = 0; row < batch.size(); row++) {
+                AqiSeverity severity = alertDebouncer.onReading(batch.sensorOrdinal(row), batch.locationType(row),
+                        batch.type(row), batch.aqiInput(row), batch.severity(row), batch.timestampMillis(row));
+                if (severity != null || anomalyDetector.onReading(batch.sensorOrdinal(row), batch.value(row),
+                        batch.timestampMillis(row)) != null) {
+                    events++;
+                }
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    // The aggregation RollupService#record runs before binding the upsert rows
+    private void aggregateMinutes() {
+        minutes.reset(batch.size());
+        for (int row = 0; row < batch.size(); row++) {
+            double value = batch.value(row);
+            minutes.add(batch.sensorOrdinal(row), Math.floorDiv(batch.timestamp(row).toEpochSecond(ZoneOffset.UTC), 60),
+                    1, value, value, value);
+        }
+        minutes.sort();
+    }
+
+    // Each chunk holds every sensor's reading for one second, with values that stay healthy and unremarkable
+    private List<List<SensorReadingDto>> chunks(LocalDateTime start, int count) {
+        List<List<SensorReadingDto>> chunks = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            List<SensorReadingDto> chunk = new ArrayList<>(CHUNK);
+            LocalDateTime second = start.plusSeconds(c);
+            for (int i = 0; i < CHUNK; i++) {
+                int sensor = i % SENSORS;
+                chunk.add(SensorReadingDto.builder()
+                        .sensorId(topology.sensorId(sensor))
+                        .type(topology.sensorType(sensor))
+                        .timestamp(second.plusNanos(i * 1_000_000L))
+                        .value(5 + ((c * 7 + i) % 10) * 0.1)
+                        .build());
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
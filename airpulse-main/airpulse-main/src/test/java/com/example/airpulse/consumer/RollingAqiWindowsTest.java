@@ -0,0 +1,75 @@
+package com.example.airpulse.consumer;
+
+import com.example.airpulse.model.City;
+import com.example.airpulse.model.Location;
+import com.example.airpulse.model.LocationType;
+import com.example.airpulse.model.Region;
+import com.example.airpulse.model.Sensor;
+import com.example.airpulse.model.SensorType;
+import com.example.airpulse.service.SensorTopology;
+import com.example.airpulse.service.SensorTopologyCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollingAqiWindowsTest {
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2026, 1, 1, 10, 0);
+
+    private final ReadingBatch batch = new ReadingBatch(16);
+    private SensorTopology topology;
+    private RollingAqiWindows windows;
+
+    @BeforeEach
+    void setUp() {
+        City city = City.builder().id(UUID.randomUUID()).name("Springfield").build();
+        Region region = Region.builder().id(UUID.randomUUID()).name("North").city(city).build();
+        Location location = Location.builder().id(UUID.randomUUID()).name("Main St").type(LocationType.APARTMENT)
+                .codePrefix("00").region(region).build();
+        SensorTopology.Builder builder = SensorTopology.EMPTY.toBuilder();
+        builder.addSensor(Sensor.builder().id(UUID.randomUUID()).type(SensorType.NO2).location(location).build());
+        topology = builder.build();
+        SensorTopologyCache topologyCache = new SensorTopologyCache(null, null, null, new SimpleMeterRegistry(), Long.MAX_VALUE) {
+            @Override
+            public SensorTopology current() {
+                return topology;
+            }
+        };
+        windows = new RollingAqiWindows(topologyCache, null, true);
+    }
+
+    @Test
+    void readingsAreScoredAgainstTheWindowEndingAtTheirHour() {
+        assertThat(record(HOUR.plusMinutes(10), 10, false)).isEqualTo(10);
+        assertThat(record(HOUR.plusMinutes(20), 20, false)).isEqualTo(15);
+        assertThat(record(HOUR.plusHours(1), 40, false)).isEqualTo(40);
+    }
+
+    @Test
+    void aRedeliveredReadingIsScoredAsBeforeWithoutBeingAddedAgain() {
+        record(HOUR.plusMinutes(10), 10, false);
+        double first = record(HOUR.plusMinutes(20), 20, false);
+        record(HOUR.plusHours(1), 40, false);
+
+        assertThat(record(HOUR.plusMinutes(20), 20, true)).isEqualTo(first);
+        assertThat(record(HOUR.plusMinutes(20), 20, true)).isEqualTo(first);
+        assertThat(windows.windowedValue(0, SensorType.NO2)).isEqualTo(40);
+    }
+
+    // Records one reading of the sensor, as a duplicate or not, and returns the AQI input it is scored with
+    private double record(LocalDateTime timestamp, double value, boolean duplicate) {
+        batch.clear();
+        int row = batch.add(0, 0, topology.sensorId(0), timestamp, LocationType.APARTMENT, SensorType.NO2, value);
+        if (duplicate) {
+            batch.markDuplicate(row);
+        }
+        windows.record(batch, batch.skipped());
+        return batch.aqiInput(row);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.airpulse.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadingUuidGeneratorTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2026, 1, 1, 12, 0, 0, 123_456_789);
+
+    @Test
+    void idsAreVersion7WithTheRfcVariant() {
+        UUID id = ReadingUuidGenerator.of(UUID.randomUUID(), TIMESTAMP);
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void aRedeliveredReadingGetsTheSameId() {
+        UUID sensorId = UUID.randomUUID();
+
+        assertThat(ReadingUuidGenerator.of(sensorId, TIMESTAMP)).isEqualTo(ReadingUuidGenerator.of(sensorId, TIMESTAMP));
+        assertThat(ReadingUuidGenerator.of(UUID.randomUUID(), TIMESTAMP)).isNotEqualTo(ReadingUuidGenerator.of(sensorId, TIMESTAMP));
+    }
+
+    @Test
+    void idsSortByReadingTime() {
+        assertThat(Long.compareUnsigned(ReadingUuidGenerator.mostSignificantBits(TIMESTAMP.plusNanos(1_000)),
+                ReadingUuidGenerator.mostSignificantBits(TIMESTAMP))).isPositive();
+        assertThat(Long.compareUnsigned(ReadingUuidGenerator.mostSignificantBits(TIMESTAMP.plusNanos(1_000_000)),
+                ReadingUuidGenerator.mostSignificantBits(TIMESTAMP.plusNanos(999_000)))).isPositive();
+    }
+}
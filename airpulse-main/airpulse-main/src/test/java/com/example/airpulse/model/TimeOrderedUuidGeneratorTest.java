@@ -0,0 +1,52 @@
+package com.example.airpulse.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedUuidGeneratorTest {
+
+    private static final int IDS = 10_000;
+
+    @Test
+    void idsAreVersion7WithTheRfcVariant() {
+        for (int i = 0; i < IDS; i++) {
+            UUID id = TimeOrderedUuidGenerator.next();
+            assertThat(id.version()).isEqualTo(7);
+            assertThat(id.variant()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void idsCarryTheCurrentMillisecondUnlessTheCounterCarriedIntoIt() {
+        // Earlier tests on this thread may have generated over 4096 ids in a millisecond, carrying the
+        // timestamp ahead of the clock; the next id is then at most one millisecond past the previous one
+        long previous = TimeOrderedUuidGenerator.nextMostSignificantBits() >>> 16;
+        long before = System.currentTimeMillis();
+        UUID id = TimeOrderedUuidGenerator.next();
+        long after = System.currentTimeMillis();
+
+        assertThat(id.getMostSignificantBits() >>> 16).isBetween(before, Math.max(after, previous + 1));
+    }
+
+    @Test
+    void idsOfOneThreadAreStrictlyIncreasingWithinAMillisecond() {
+        long[] ids = new long[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = TimeOrderedUuidGenerator.nextMostSignificantBits();
+        }
+
+        int sameMillisecond = 0;
+        for (int i = 1; i < IDS; i++) {
+            assertThat(Long.compareUnsigned(ids[i], ids[i - 1])).as("id %d after id %d", i, i - 1).isPositive();
+            if (ids[i] >>> 16 == ids[i - 1] >>> 16) {
+                sameMillisecond++;
+                assertThat(ids[i] & 0xFFF).isEqualTo((ids[i - 1] & 0xFFF) + 1);
+            }
+        }
+        // Back-to-back generation puts many ids in one millisecond, so the counter is what orders them
+        assertThat(sameMillisecond).isPositive();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.airpulse.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares random (version 4) primary keys, what {@code @GeneratedValue} produced before, with the version 7
+ * ids of {@link TimeOrderedUuidGenerator} (alerts, anomalies) and {@link ReadingUuidGenerator} (readings):
+ * insert throughput and the size of the primary key index afterwards.
+ * <p>
+ * Needs a PostgreSQL and is skipped unless {@code AIRPULSE_BENCHMARK_JDBC_URL} is set, e.g. against the
+ * database from docker-compose.yml:
+ * <pre>
+ * AIRPULSE_BENCHMARK_JDBC_URL=jdbc:postgresql://localhost:5432/airpulse_db mvn test -Dtest=UuidInsertBenchmarkTest
+ * </pre>
+ * {@code AIRPULSE_BENCHMARK_USER} and {@code AIRPULSE_BENCHMARK_PASSWORD} default to postgres/postgres, and
+ * {@code AIRPULSE_BENCHMARK_ROWS} to 2,000,000. After a warm-up, each generator fills its own scratch table,
+ * shaped like {@code sensor_data} but unpartitioned, in committed JDBC batches of 500 rows as the JPA writer
+ * does. The tables are dropped afterwards.
+ */
+@EnabledIfEnvironmentVariable(named = "AIRPULSE_BENCHMARK_JDBC_URL", matches = ".+")
+class UuidInsertBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UuidInsertBenchmarkTest.class);
+    private static final int BATCH = 500;
+    private static final int SENSORS = 1_000;
+    private static final String[] TABLES =
+            {"bench_ids_warm_up", "bench_ids_random", "bench_ids_time_ordered", "bench_ids_reading"};
+
+    private final int rows = Integer.parseInt(System.getenv().getOrDefault("AIRPULSE_BENCHMARK_ROWS", "2000000"));
+    private final UUID[] sensorIds = new UUID[SENSORS];
+    private Connection connection;
+
+    @BeforeEach
+    void connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getenv().getOrDefault("AIRPULSE_BENCHMARK_USER", "postgres"));
+        properties.setProperty("password", System.getenv().getOrDefault("AIRPULSE_BENCHMARK_PASSWORD", "postgres"));
+        properties.setProperty("reWriteBatchedInserts", "true"); // As in application.yml
+        connection = DriverManager.getConnection(System.getenv("AIRPULSE_BENCHMARK_JDBC_URL"), properties);
+        for (int i = 0; i < SENSORS; i++) {
+            sensorIds[i] = UUID.randomUUID();
+        }
+        dropTables();
+    }
+
+    @AfterEach
+    void dropTablesAndDisconnect() throws SQLException {
+        dropTables();
+        connection.close();
+    }
+
+    @Test
+    void comparesInsertThroughputAndIndexSize() throws SQLException {
+        // Warms up the JIT, the driver and the server before anything is measured
+        fill(TABLES[0], rows / 4, (sensorId, timestamp) -> UUID.randomUUID());
+        Result random = fill(TABLES[1], rows, (sensorId, timestamp) -> UUID.randomUUID());
+        Result timeOrdered = fill(TABLES[2], rows, (sensorId, timestamp) -> TimeOrderedUuidGenerator.next());
+        Result reading = fill(TABLES[3], rows, ReadingUuidGenerator::of);
+
+        LOGGER.info("{} rows, batches of {}:", rows, BATCH);
+        for (Result result : new Result[]{random, timeOrdered, reading}) {
+            LOGGER.info(String.format("  %-22s %,9.0f rows/s (last 10%%: %,9.0f rows/s)   pkey %,7d KiB   heap %,7d KiB",
+                    result.table(), result.rowsPerSecond(), result.lastTenthRowsPerSecond(),
+                    result.indexBytes() / 1024, result.tableBytes() / 1024));
+        }
+        assertThat(timeOrdered.indexBytes()).isLessThan(random.indexBytes());
+        assertThat(reading.indexBytes()).isLessThan(random.indexBytes());
+    }
+
+    private Result fill(String table, int rows, BiFunction<UUID, LocalDateTime, UUID> ids) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + table + " (id uuid PRIMARY KEY, sensor_id uuid NOT NULL, "
+                    + "\"timestamp\" timestamp NOT NULL, type varchar(255) NOT NULL, \"value\" float8 NOT NULL)");
+        }
+        connection.setAutoCommit(false);
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        int lastTenth = rows - rows / 10;
+        long begin = System.nanoTime();
+        long lastTenthBegin = begin;
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table
+                + " (id, sensor_id, \"timestamp\", type, \"value\") VALUES (?, ?, ?, ?, ?)")) {
+            for (int row = 0; row < rows; row++) {
+                if (row == lastTenth) {
+                    lastTenthBegin = System.nanoTime();
+                }
+                UUID sensorId = sensorIds[row % SENSORS];
+                LocalDateTime timestamp = start.plusNanos(row * 1_000_000L);
+                insert.setObject(1, ids.apply(sensorId, timestamp));
+                insert.setObject(2, sensorId);
+                insert.setTimestamp(3, Timestamp.valueOf(timestamp));
+                insert.setString(4, "PM25");
+                insert.setDouble(5, row % 500 / 10.0);
+                insert.addBatch();
+                if ((row + 1) % BATCH == 0 || row + 1 == rows) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        long end = System.nanoTime();
+        return new Result(table, rows * 1e9 / (end - begin), (rows - lastTenth) * 1e9 / (end - lastTenthBegin),
+                size("pg_relation_size('" + table + "_pkey')"), size("pg_relation_size('" + table + "')"));
+    }
+
+    private long size(String expression) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT " + expression)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    private void dropTables() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : TABLES) {
+                statement.execute("DROP TABLE IF EXISTS " + table);
+            }
+        }
+    }
+
+    private record Result(String table, double rowsPerSecond, double lastTenthRowsPerSecond, long indexBytes,
+                          long tableBytes) {
+    }
+}